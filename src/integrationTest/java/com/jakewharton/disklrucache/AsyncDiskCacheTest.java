@@ -0,0 +1,567 @@
+package com.jakewharton.disklrucache;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class AsyncDiskCacheTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private DiskLruCache<SimpleMeta> cache;
+    private File base;
+
+    @Before
+    public void setUp() throws Exception {
+        base = new File("tests");
+        FileUtils.deleteDirectory(base);
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testServeDuringWarmUp() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache();
+        cache = asyncCache;
+        Future<Void> ready = asyncCache.initAsync();
+        assertFalse(ready.isDone());
+
+        verifyExists("c10", "Content 10");
+        assertTrue(cache.contains("c11"));
+        assertFalse(cache.contains("c30"));
+        verifyNotExists("c30");
+
+        assertTrue(putString("c20", "Content 20"));
+        assertTrue(cache.remove("c12"));
+        assertFalse(cache.remove("c12"));
+        verifyExists("c20", "Content 20");
+        verifyNotExists("c12");
+
+        runTasks();
+        assertTrue(ready.isDone());
+        ready.get();
+        assertEquals(100, cache.getWeight());
+
+        // c10 was read during the warm-up, so c11 is the oldest one
+        putString("c21", "Content 21");
+        runTasks();
+        verifyNotExists("c11");
+        verifyExists("c10", "Content 10");
+
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+
+        verifyNotExists("c11");
+        verifyNotExists("c12");
+        verifyExists("c10", "Content 10");
+        for (int i = 13; i <= 21; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+    }
+
+    @Test
+    public void testRenewMetaDuringWarmUp() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache();
+        cache = asyncCache;
+        asyncCache.initAsync();
+
+        cache.renewMeta("c15", new SimpleMeta(5));
+        try {
+            cache.renewMeta("c30", new SimpleMeta(5));
+            fail("Missing file shouldn't be renewed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        runTasks();
+        assertEquals(95, cache.getWeight());
+    }
+
+    @Test
+    public void testPutDuringWarmUpDiscardsCrashBackup() throws Exception {
+        // a crash between moving the old file aside and moving the new one in
+        File backup = new File(base, "backup");
+        FileUtils.forceMkdir(backup);
+        FileUtils.moveFile(new File(new File(base, "files"), "c15"), new File(backup, "c15"));
+
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache();
+        cache = asyncCache;
+        asyncCache.initAsync();
+        assertTrue(putString("c15", "Fresh 15"));
+
+        runTasks();
+        verifyExists("c15", "Fresh 15");
+        assertFalse(new File(backup, "c15").exists());
+    }
+
+    @Test
+    public void testMigrateLayoutBeforeServing() throws Exception {
+        CacheOptions options = new CacheOptions().setFileLayout(2, 256);
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.Async, options);
+        cache = asyncCache;
+        asyncCache.initAsync();
+
+        // the files are found in the new layout without running the replay task
+        verifyExists("c10", "Content 10");
+        assertTrue(cache.remove("c12"));
+        verifyNotExists("c12");
+        assertFalse(new File(base, "files/c11").exists());
+
+        runTasks();
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        verifyNotExists("c12");
+        verifyExists("c11", "Content 11");
+    }
+
+    @Test
+    public void testFutures() throws Exception {
+        // the sync mode would block on the queued executor, the futures never do
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.SyncForModify);
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        FileUtils.writeStringToFile(new File("tmp"), "Content 20");
+        CacheFuture<Boolean> put = asyncCache.putAsync(new File("tmp"), "c20", new SimpleMeta(10));
+        final List<Object> results = new CopyOnWriteArrayList<>();
+        put.addListener(new CacheFuture.Listener<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onFailure(@NotNull IOException e) {
+                results.add(e);
+            }
+        });
+        CacheFuture<Boolean> remove = asyncCache.removeAsync("c11");
+        CacheFuture<Void> renew = asyncCache.renewMetaAsync("c12", new SimpleMeta(5));
+        CacheFuture<File> find = asyncCache.findAsync("c13");
+        assertFalse("Completes after the journal write", put.isDone());
+        assertFalse(remove.isDone());
+        assertFalse(renew.isDone());
+        assertFalse(find.isDone());
+        assertTrue(results.isEmpty());
+
+        runTasks();
+        assertTrue(put.get());
+        assertEquals(1, results.size());
+        assertEquals(true, results.get(0));
+        assertTrue(remove.get());
+        assertNull(renew.get());
+        assertEquals("Content 13", FileUtils.readFileToString(find.get()));
+        assertFalse(asyncCache.removeAsync("c11").isDone());
+        runTasks();
+        assertEquals(95, cache.getWeight());
+
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        verifyExists("c20", "Content 20");
+        verifyNotExists("c11");
+        assertEquals(95, cache.getWeight());
+    }
+
+    @Test
+    public void testFailedFuture() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.Async);
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        CacheFuture<Boolean> put = asyncCache.putAsync(new File("missing"), "c20", new SimpleMeta(10));
+        assertTrue(put.isDone());
+        final List<IOException> failures = new CopyOnWriteArrayList<>();
+        put.addListener(new CacheFuture.Listener<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                fail("Put of a missing file shouldn't succeed");
+            }
+
+            @Override
+            public void onFailure(@NotNull IOException e) {
+                failures.add(e);
+            }
+        });
+        assertEquals(1, failures.size());
+        try {
+            put.get();
+            fail("Failure expected");
+        } catch (ExecutionException e) {
+            assertSame(failures.get(0), e.getCause());
+        }
+    }
+
+    @Test
+    public void testFailFastQueue() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.Async,
+                new CacheOptions().setJournalQueue(2, QueueOverflow.FailFast));
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        assertTrue(putString("c20", "Content 20"));
+        assertTrue(cache.remove("c10"));
+        try {
+            putString("c21", "Content 21");
+            fail("Full queue should reject the put");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue("The rejected file is left where it is", new File("tmp").exists());
+        assertFalse(cache.contains("c21"));
+        assertTrue(asyncCache.removeAsync("c11").isDone());
+        assertTrue(cache.contains("c11"));
+        verifyExists("c12", "Content 12");
+
+        JournalQueueStats stats = asyncCache.getJournalQueueStats();
+        assertEquals(2, stats.getDepth());
+        assertEquals(2, stats.getRejectedWrites());
+        assertEquals(1, stats.getDroppedAccesses());
+
+        runTasks();
+        assertEquals(0, asyncCache.getJournalQueueStats().getDepth());
+        assertTrue(putString("c21", "Content 21"));
+        runTasks();
+        assertEquals(4, asyncCache.getJournalQueueStats().getCompletedTasks());
+    }
+
+    @Test
+    public void testBlockingQueue() throws Exception {
+        final AsyncDiskLruCache<SimpleMeta> asyncCache = new AsyncDiskLruCache<>(base, 100,
+                AsyncDiskLruCache.SyncMode.Async, new CacheOptions().setJournalQueue(1, QueueOverflow.Block));
+        cache = asyncCache;
+        asyncCache.initAsync().get();
+
+        // a stalled disk
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch stall = new CountDownLatch(1);
+        asyncCache.executeAsync(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    stall.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.await();
+        FileUtils.writeStringToFile(new File("tmp"), "Content 20");
+        final List<Object> results = new CopyOnWriteArrayList<>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    results.add(asyncCache.put(new File("tmp"), "c20", new SimpleMeta(10)));
+                } catch (IOException e) {
+                    results.add(e);
+                }
+            }
+        };
+        writer.start();
+        writer.join(200);
+        assertTrue("The put should wait for a free slot", writer.isAlive());
+        assertEquals(1, asyncCache.getJournalQueueStats().getDepth());
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                results.add(asyncCache.getJournalStats());
+            }
+        };
+        reader.start();
+        reader.join(1000);
+        assertFalse("The waiting put shouldn't hold the cache lock", reader.isAlive());
+        results.clear();
+
+        stall.countDown();
+        writer.join();
+        assertEquals(1, results.size());
+        assertEquals(true, results.get(0));
+        asyncCache.findAsync("c20").get();
+        JournalQueueStats stats = asyncCache.getJournalQueueStats();
+        assertTrue(stats.getCompletedTasks() >= 4);
+        assertTrue(stats.getMaxLatencyNanos() >= stats.getMeanLatencyNanos());
+
+        cache.close();
+        final CountDownLatch closed = new CountDownLatch(1);
+        asyncCache.executeAsync(new Runnable() {
+            @Override
+            public void run() {
+                closed.countDown();
+            }
+        });
+        closed.await();
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        verifyExists("c20", "Content 20");
+    }
+
+    @Test
+    public void testQueueCapacityHolds() throws Exception {
+        final AsyncDiskLruCache<SimpleMeta> asyncCache = new AsyncDiskLruCache<>(base, 100,
+                AsyncDiskLruCache.SyncMode.Async, new CacheOptions().setJournalQueue(2, QueueOverflow.DropAccess));
+        cache = asyncCache;
+        asyncCache.initAsync().get();
+
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String name = "c" + (10 + t);
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            asyncCache.renewMetaAsync(name, new SimpleMeta(10));
+                            asyncCache.find(name);
+                            asyncCache.findAsync(name);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty());
+        assertTrue("Every task counts against the capacity", asyncCache.getJournalQueueStats().getPeakDepth() <= 2);
+        asyncCache.findAsync("c10").get();
+    }
+
+    @Test
+    public void testDropAccessQueue() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.Async,
+                new CacheOptions().setJournalQueue(1, QueueOverflow.DropAccess));
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        verifyExists("c10", "Content 10");
+        verifyExists("c11", "Content 11");
+        assertEquals(1, asyncCache.getJournalQueueStats().getDroppedAccesses());
+        runTasks();
+
+        cache.close();
+        runTasks();
+
+        // only the access of c10 was logged, so after the replay c11 is the oldest one
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        putString("c20", "Content 20");
+        verifyNotExists("c11");
+        verifyExists("c10", "Content 10");
+        verifyExists("c12", "Content 12");
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache();
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        assertEquals(2, cache.removeAll(Arrays.asList("c10", "c11", "c30"), true));
+        assertEquals("One task for the whole batch", 1, tasks.size());
+        DiskLruCache.PutBatch<SimpleMeta> batch = new DiskLruCache.PutBatch<>();
+        for (int i = 20; i < 22; i++) {
+            File file = new File("tmp" + i);
+            FileUtils.writeStringToFile(file, "Content " + i);
+            batch.add(file, "c" + i, new SimpleMeta(10));
+        }
+        assertTrue(cache.putAll(batch, true).isEmpty());
+        assertEquals(2, tasks.size());
+        assertEquals(2, cache.findAll(Arrays.asList("c12", "c13", "c30")).size());
+        verifyNotExists("c10");
+        verifyExists("c20", "Content 20");
+
+        runTasks();
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+
+        verifyNotExists("c10");
+        verifyNotExists("c11");
+        verifyExists("c20", "Content 20");
+        verifyExists("c21", "Content 21");
+    }
+
+    @Test
+    public void testBatchEvictsOnExecutor() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache();
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        DiskLruCache.PutBatch<SimpleMeta> batch = new DiskLruCache.PutBatch<>();
+        for (int i = 20; i < 22; i++) {
+            File file = new File("tmp" + i);
+            FileUtils.writeStringToFile(file, "Content " + i);
+            batch.add(file, "c" + i, new SimpleMeta(10));
+        }
+        assertTrue(cache.putAll(batch, false).isEmpty());
+        assertEquals("The batch task evicts", 120, cache.getWeight());
+        assertTrue(cache.contains("c10"));
+        runTasks();
+        assertEquals(100, cache.getWeight());
+        verifyNotExists("c10");
+        verifyNotExists("c11");
+        verifyExists("c21", "Content 21");
+    }
+
+    @Test
+    public void testRejectOnExecutor() throws Exception {
+        CacheOptions options = new CacheOptions().setAdmissionFilter(100, 0.1);
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.Async, options);
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        for (int i = 10; i < 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+        runTasks();
+
+        assertFalse(putString("scan", "Content 00"));
+        assertEquals("The rejection is logged by the executor", 1, tasks.size());
+        runTasks();
+
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        verifyNotExists("scan");
+        assertFalse("Frequencies should be restored from the journal", putString("scan", "Content 00"));
+    }
+
+    @Test
+    public void testLockFreeReadsOnExecutor() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache(AsyncDiskLruCache.SyncMode.Async,
+                new CacheOptions().setLockFreeReads(true));
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        for (int i = 0; i < ReadBuffer.STRIPE_SIZE; i++) {
+            verifyExists("c10", "Content 10");
+        }
+        assertEquals("The drained accesses are logged by the executor", 1, tasks.size());
+        runTasks();
+
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        putString("c20", "Content 20");
+        verifyExists("c10", "Content 10");
+        verifyNotExists("c11");
+    }
+
+    @Test
+    public void testShrinkOnExecutor() throws Exception {
+        AsyncDiskLruCache<SimpleMeta> asyncCache = createAsyncCache();
+        cache = asyncCache;
+        asyncCache.initAsync();
+        runTasks();
+
+        cache.setMaxWeight(50);
+        assertEquals("The evictions are logged by the executor", 1, tasks.size());
+        runTasks();
+        assertEquals(50, cache.getWeight());
+
+        cache.close();
+        runTasks();
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        verifyNotExists("c14");
+        for (int i = 15; i < 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+    }
+
+    private AsyncDiskLruCache<SimpleMeta> createAsyncCache() {
+        return createAsyncCache(AsyncDiskLruCache.SyncMode.Async);
+    }
+
+    private AsyncDiskLruCache<SimpleMeta> createAsyncCache(AsyncDiskLruCache.SyncMode mode) {
+        return createAsyncCache(mode, new CacheOptions());
+    }
+
+    private AsyncDiskLruCache<SimpleMeta> createAsyncCache(AsyncDiskLruCache.SyncMode mode, CacheOptions options) {
+        return new AsyncDiskLruCache<SimpleMeta>(base, 100, mode, options) {
+            @Override
+            Executor createExecutor() {
+                return new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        tasks.add(command);
+                    }
+                };
+            }
+        };
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private boolean putString(String name, String content) throws IOException {
+        File tmp = new File("tmp");
+        FileUtils.writeStringToFile(tmp, content);
+        return cache.put(tmp, name, new SimpleMeta(content.length()));
+    }
+
+    private void verifyNotExists(String name) throws IOException {
+        assertNull("File exists, but shouldn't", cache.find(name));
+    }
+
+    private void verifyExists(String name, String content) throws IOException {
+        File file = cache.find(name);
+        assertNotNull("File not exists", file);
+        assertEquals("Wrong file content", content, FileUtils.readFileToString(file));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        runTasks();
+        FileUtils.deleteDirectory(base);
+    }
+}
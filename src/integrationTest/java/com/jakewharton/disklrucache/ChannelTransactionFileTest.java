@@ -0,0 +1,151 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ChannelTransactionFileTest extends TransactionFileTest {
+
+    @Override
+    protected VirtualFile createRealFile(File file) {
+        return new RealFile(file, new CacheOptions().setJournalDurability(DurabilityPolicy.forceOnCommit()));
+    }
+
+    @Test
+    public void testForceOnCommit() throws Exception {
+        CountingFile counting = new CountingFile(DurabilityPolicy.forceOnCommit());
+        counting.createEmpty();
+        counting.forces = 0;
+
+        counting.write(new byte[]{1, 2, 3});
+        counting.commit();
+
+        assertEquals("Data and header should be forced", 2, counting.forces);
+        assertEquals(TransactionalVirtualFile.HEADER_SIZE + 3, readHeader());
+        counting.close();
+    }
+
+    @Test
+    public void testOsOnly() throws Exception {
+        CountingFile counting = new CountingFile(DurabilityPolicy.osOnly());
+        counting.createEmpty();
+        counting.commit();
+        counting.forces = 0;
+
+        counting.write(new byte[]{1, 2, 3});
+        counting.commit();
+
+        assertEquals("Nothing should be forced", 0, counting.forces);
+        assertEquals("Header should be written anyway", TransactionalVirtualFile.HEADER_SIZE + 3, readHeader());
+        counting.close();
+    }
+
+    @Test
+    public void testFirstCommitIsForced() throws Exception {
+        CountingFile counting = new CountingFile(DurabilityPolicy.osOnly());
+        counting.createEmpty();
+
+        counting.write(new byte[]{1, 2, 3});
+        counting.commit();
+
+        assertEquals("Data and header should be forced", 2, counting.forces);
+        counting.close();
+    }
+
+    @Test
+    public void testPeriodicByBytes() throws Exception {
+        CountingFile counting = new CountingFile(DurabilityPolicy.forcePeriodically(1, TimeUnit.HOURS, 100));
+        counting.createEmpty();
+        counting.write(new byte[1]);
+        counting.commit();
+        counting.forces = 0;
+
+        counting.write(new byte[10]);
+        counting.commit();
+        assertEquals("Commit shouldn't be forced yet", 0, counting.forces);
+        assertEquals("Header should point to the last forced commit",
+                TransactionalVirtualFile.HEADER_SIZE + 1, readHeader());
+
+        counting.write(new byte[100]);
+        counting.commit();
+        assertEquals("Commit should be forced", 2, counting.forces);
+        assertEquals(TransactionalVirtualFile.HEADER_SIZE + 111, readHeader());
+        counting.close();
+    }
+
+    @Test
+    public void testPeriodicByTime() throws Exception {
+        CountingFile counting = new CountingFile(DurabilityPolicy.forcePeriodically(0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE));
+        counting.createEmpty();
+        counting.forces = 0;
+
+        counting.write(new byte[10]);
+        counting.commit();
+        assertEquals("Commit should be forced", 2, counting.forces);
+        counting.close();
+    }
+
+    @Test
+    public void testCrashLosesOnlyUnforcedCommits() throws Exception {
+        TransactionalVirtualFile crashed = new ChannelTransactionalFile(file,
+                DurabilityPolicy.forcePeriodically(1, TimeUnit.HOURS, 100));
+        crashed.createEmpty();
+        crashed.commit();
+        crashed.write(new byte[200]);
+        crashed.commit();
+        crashed.write(new byte[10]);
+        crashed.commit();
+
+        TransactionalVirtualFile restored = new ChannelTransactionalFile(file, DurabilityPolicy.forceOnCommit());
+        restored.init();
+        assertEquals(TransactionalVirtualFile.HEADER_SIZE + 200, restored.length());
+        restored.close();
+        crashed.close();
+    }
+
+    @Test
+    public void testCloseWritesHeader() throws Exception {
+        TransactionalVirtualFile periodic = new ChannelTransactionalFile(file,
+                DurabilityPolicy.forcePeriodically(1, TimeUnit.HOURS, 100));
+        periodic.createEmpty();
+        periodic.commit();
+        periodic.write(new byte[10]);
+        periodic.commit();
+        periodic.write(new byte[5]);
+        periodic.close();
+
+        assertEquals(TransactionalVirtualFile.HEADER_SIZE + 10, readHeader());
+    }
+
+    private long readHeader() throws IOException {
+        RandomAccessFile raw = new RandomAccessFile(file, "r");
+        try {
+            long size = raw.readLong();
+            assertEquals("Header is inconsistent", size, raw.readLong());
+            return size;
+        } finally {
+            raw.close();
+        }
+    }
+
+    private class CountingFile extends ChannelTransactionalFile {
+
+        int forces;
+
+        CountingFile(DurabilityPolicy policy) throws IOException {
+            super(file, policy);
+        }
+
+        @Override
+        public void force() throws IOException {
+            forces++;
+            super.force();
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package com.jakewharton.disklrucache;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -105,10 +115,618 @@ public class DiskCacheTest {
         }
     }
 
-    private void putString(String name, String content) throws IOException {
+    @Test
+    public void testReloadWithPeriodicDurability() throws Exception {
+        testReload(new CacheOptions()
+                .setJournalDurability(DurabilityPolicy.forcePeriodically(1, TimeUnit.HOURS, 1024 * 1024)));
+    }
+
+    @Test
+    public void testReloadWithMappedJournal() throws Exception {
+        testReload(new CacheOptions().setMappedJournal(4096));
+    }
+
+    @Test
+    public void testReloadWithFramedJournal() throws Exception {
+        testReload(new CacheOptions().setFramedJournal(true));
+    }
+
+    @Test
+    public void testReloadWithFramedMappedJournal() throws Exception {
+        testReload(new CacheOptions().setFramedJournal(true).setMappedJournal(4096)
+                .setJournalDurability(DurabilityPolicy.osOnly()));
+    }
+
+    @Test
+    public void testLockFreeReadsKeepRecency() throws Exception {
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setLockFreeReads(true));
+        cache.init();
+
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        verifyExists("c10", "Content 10");
+        assertTrue(cache.contains("c10"));
+        assertFalse(cache.contains("c20"));
+
+        putString("c20", "Content 20");
+
+        verifyExists("c10", "Content 10");
+        verifyNotExists("c11");
+        assertFalse(cache.contains("c11"));
+        verifyExists("c20", "Content 20");
+    }
+
+    @Test
+    public void testLockFreeReadsAndReload() throws Exception {
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setLockFreeReads(true));
+        cache.init();
+
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        cache.find("c10");
+        cache.remove("c15");
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 80, new CacheOptions().setLockFreeReads(true));
+        cache.init();
+
+        verifyNotExists("c11");
+        verifyNotExists("c15");
+        verifyExists("c10", "Content 10");
+        for (int i = 12; i < 20; i++) {
+            if (i != 15) {
+                verifyExists("c" + i, "Content " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testClockEviction() throws Exception {
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setEvictionPolicy(EvictionPolicy.clock()));
+        cache.init();
+
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        verifyExists("c10", "Content 10");
+        putString("c20", "Content 20");
+
+        verifyExists("c10", "Content 10");
+        verifyNotExists("c11");
+        verifyExists("c20", "Content 20");
+    }
+
+    @Test
+    public void testReloadClock() throws Exception {
+        testReload(new CacheOptions().setEvictionPolicy(EvictionPolicy.clock()));
+    }
+
+    @Test
+    public void testReloadCompactLru() throws Exception {
+        testReload(new CacheOptions().setEvictionPolicy(EvictionPolicy.compactLru(true)));
+    }
+
+    @Test
+    public void testAdmissionFilter() throws Exception {
+        CacheOptions options = new CacheOptions().setAdmissionFilter(100, 0.1);
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        for (int i = 10; i < 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+
+        assertFalse(putString("scan", "Content 00"));
+        verifyNotExists("scan");
+        assertTrue("Rejected file should stay in place", new File("tmp").exists());
+        for (int i = 10; i < 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+
+        cache.close();
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        verifyNotExists("scan");
+        assertFalse("Frequencies should be restored from the journal", putString("scan", "Content 00"));
+        for (int i = 0; i < 5; i++) {
+            cache.find("scan");
+        }
+        assertTrue(putString("scan", "Content 00"));
+        verifyExists("scan", "Content 00");
+        assertEquals(100, cache.getWeight());
+    }
+
+    @Test
+    public void testReloadWithCheckpoint() throws Exception {
+        CacheOptions options = new CacheOptions().setCheckpoint(0.1);
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            cache.renewMeta("c15", new SimpleMeta(10));
+        }
+        cache.remove("c12");
+        assertTrue(new File(base, "journal/" + Journal.CHECKPOINT_FILE_PREFIX + 1).exists());
+
+        cache.close();
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        verifyNotExists("c12");
+        for (int i = 10; i < 20; i++) {
+            if (i != 12) {
+                verifyExists("c" + i, "Content " + i);
+            }
+        }
+        assertEquals(90, cache.getWeight());
+    }
+
+    @Test
+    public void testSalvageDropsMissingFiles() throws Exception {
+        cache.init();
+        for (int i = 10; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        cache.remove("c12");
+        cache.close();
+
+        // corrupts the key of the remove record, so that the replay skips it
+        File journalFile = new File(base, "journal/" + Journal.JOURNAL_FILE_NAME);
+        byte[] bytes = FileUtils.readFileToByteArray(journalFile);
+        byte[] remove = {2, 3, 'c', '1', '2'};
+        int index = lastIndexOf(bytes, remove);
+        assertTrue("No remove record", index > 0);
+        bytes[index + 4] = 'X';
+        FileUtils.writeByteArrayToFile(journalFile, bytes);
+
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        assertEquals(1, cache.getJournalStats().getDroppedRecords());
+        verifyNotExists("c12");
+        assertEquals(90, cache.getWeight());
+        for (int i = 10; i < 20; i++) {
+            if (i != 12) {
+                verifyExists("c" + i, "Content " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testEditAndReload() throws Exception {
+        cache.init();
+        DiskLruCache<SimpleMeta>.Editor editor = cache.edit("c1");
+        editor.getOutputStream().write("Content ".getBytes("UTF-8"));
+        editor.getChannel().write(ByteBuffer.wrap("1".getBytes("UTF-8")));
+        verifyNotExists("c1");
+        assertTrue(editor.commit(new SimpleMeta(9)));
+        verifyExists("c1", "Content 1");
+        assertEquals(9, cache.getWeight());
+        assertEquals("Editor files should be moved", 0, new File(base, "edit").list().length);
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        verifyExists("c1", "Content 1");
+    }
+
+    @Test
+    public void testAbortEdit() throws Exception {
+        cache.init();
+        putString("c1", "Content 1");
+        DiskLruCache<SimpleMeta>.Editor editor = cache.edit("c1");
+        editor.getOutputStream().write(1);
+        editor.close();
+        verifyExists("c1", "Content 1");
+        assertEquals(0, new File(base, "edit").list().length);
+
+        try {
+            editor.commit(new SimpleMeta(1));
+            fail("Aborted editor can't be committed");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testUncommittedEditsDroppedOnInit() throws Exception {
+        cache.init();
+        cache.edit("c1").getOutputStream().write(1);
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        verifyNotExists("c1");
+        assertEquals(0, new File(base, "edit").list().length);
+    }
+
+    @Test
+    public void testSnapshotSurvivesReplaceAndRemove() throws Exception {
+        cache.init();
+        putString("c1", "Content 1");
+        DiskLruCache.Snapshot snapshot = cache.get("c1");
+        assertNotNull(snapshot);
+        assertEquals(9, snapshot.getLength());
+
+        putString("c1", "Content 2");
+        DiskLruCache.Snapshot replaced = cache.get("c1");
+        assertNotNull(replaced);
+        cache.remove("c1");
+
+        assertEquals("Content 1", IOUtils.toString(snapshot.getInputStream(), "UTF-8"));
+        assertEquals("Content 2", IOUtils.toString(replaced.getInputStream(), "UTF-8"));
+        snapshot.close();
+        replaced.close();
+        assertNull(cache.get("c1"));
+    }
+
+    @Test
+    public void testTransferTo() throws Exception {
+        cache.init();
+        putString("c1", "Content 1");
+        putString("c2", "Content 2");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(bytes);
+        assertEquals(9, cache.transferTo("c1", target, 0, Long.MAX_VALUE));
+        assertEquals(3, cache.transferTo("c1", target, 2, 3));
+        assertEquals(0, cache.transferTo("c1", target, 20, 3));
+        assertEquals(-1, cache.transferTo("c3", target, 0, 3));
+        assertEquals("Content 1nte", bytes.toString("UTF-8"));
+
+        // the transfer counts as an access
+        putString("c3", "Content 3");
+        cache.setMaxWeight(18);
+        verifyExists("c1", "Content 1");
+        verifyNotExists("c2");
+    }
+
+    @Test
+    public void testMapDefersDelete() throws Exception {
+        cache.init();
+        putString("c1", "Content 1");
+        DiskLruCache<SimpleMeta>.MappedEntry entry = cache.map("c1");
+        DiskLruCache<SimpleMeta>.MappedEntry other = cache.map("c1");
+        assertNotNull(entry);
+        assertEquals("Content 1", read(entry.getBuffer()));
+        assertEquals("Handles should have own positions", "Content 1", read(other.getBuffer()));
+
+        File file = new File(base, "files/c1");
+        cache.remove("c1");
+        assertNull(cache.map("c1"));
+        entry.close();
+        entry.close();
+        assertTrue("The file is still mapped", file.exists());
+        other.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testMapReplacedEntry() throws Exception {
+        cache.init();
+        putString("c1", "Content 1");
+        DiskLruCache<SimpleMeta>.MappedEntry entry = cache.map("c1");
+        cache.remove("c1");
+        putString("c1", "Content 2");
+        entry.close();
+        verifyExists("c1", "Content 2");
+
+        entry = cache.map("c1");
+        assertEquals("Content 2", read(entry.getBuffer()));
+        putString("c1", "Content 3");
+        DiskLruCache<SimpleMeta>.MappedEntry replaced = cache.map("c1");
+        assertEquals("Content 3", read(replaced.getBuffer()));
+        entry.close();
+        replaced.close();
+        verifyExists("c1", "Content 3");
+    }
+
+    @Test
+    public void testMapEvictedEntry() throws Exception {
+        cache.init();
+        putString("c10", "Content 10");
+        DiskLruCache<SimpleMeta>.MappedEntry entry = cache.map("c10");
+        for (int i = 11; i <= 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        verifyNotExists("c10");
+        assertEquals("Content 10", read(entry.getBuffer()));
+        entry.close();
+        assertFalse(new File(base, "files/c10").exists());
+    }
+
+    @Test
+    public void testReadFromMemoryTier() throws Exception {
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setMemoryTier(1024, 16, false));
+        cache.init();
+        putString("c1", "Content 1");
+        putString("c2", "Content 2 is too big");
+        assertEquals("Content 1", read(cache.read("c1")));
+        assertEquals("Content 1", read(cache.read("c1")));
+
+        // the hot entry is served from the memory now
+        File file = new File(base, "files/c1");
+        FileUtils.writeStringToFile(file, "Changed 1");
+        assertEquals("Content 1", read(cache.read("c1")));
+        cache.trimMemory();
+        assertEquals("Changed 1", read(cache.read("c1")));
+
+        read(cache.read("c1"));
+        putString("c1", "Content 3");
+        assertEquals("Content 3", read(cache.read("c1")));
+        assertNull(cache.read("c3"));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Content 2 is too big", read(cache.read("c2")));
+        }
+        FileUtils.writeStringToFile(new File(base, "files/c2"), "Changed 2");
+        assertEquals("Big entries are always read from the disk", "Changed 2", read(cache.read("c2")));
+    }
+
+    @Test
+    public void testMemoryTierInvalidatedOnRemove() throws Exception {
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setMemoryTier(1024, 16, true));
+        cache.init();
+        putString("c1", "Content 1");
+        read(cache.read("c1"));
+        read(cache.read("c1"));
+        cache.remove("c1");
+        assertNull(cache.read("c1"));
+
+        putString("c1", "Content 2");
+        assertEquals("Content 2", read(cache.read("c1")));
+    }
+
+    @Test
+    public void testPackedEntriesReload() throws Exception {
+        CacheOptions options = new CacheOptions().setPackStorage(16, 64, 0.5);
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        putString("c1", "Content 1");
+        putString("c2", "Content 2 is too big");
+        assertFalse("Small entry should be packed", new File(base, "files/c1").exists());
+        assertNull(cache.find("c1"));
+        verifyExists("c2", "Content 2 is too big");
+        verifyPacked("c1", "Content 1");
+
+        putString("c2", "Content 2");
+        assertFalse("Replaced entry should be packed", new File(base, "files/c2").exists());
+        putString("c1", "Content 1 is too big");
+        verifyExists("c1", "Content 1 is too big");
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        verifyExists("c1", "Content 1 is too big");
+        verifyPacked("c2", "Content 2");
+        cache.remove("c2");
+        assertNull(cache.read("c2"));
+        assertNull(cache.get("c2"));
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        assertFalse("Packed entries are dropped without the pack storage", cache.contains("c2"));
+    }
+
+    @Test
+    public void testPackCompaction() throws Exception {
+        CacheOptions options = new CacheOptions().setPackStorage(16, 32, 0.5);
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        for (int i = 1; i <= 6; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        DiskLruCache<SimpleMeta>.MappedEntry entry = cache.map("c3");
+        // the first segment is half dead now, so its last entry is moved
+        putString("c1", "Changed 1");
+        putString("c2", "Changed 2");
+        assertFalse("Compacted segment should be deleted", new File(base, "packs/" + PackStore.SEGMENT_PREFIX + 0).exists());
+        assertEquals("Content 3", read(entry.getBuffer()));
+        entry.close();
+        verifyPacked("c3", "Content 3");
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        verifyPacked("c1", "Changed 1");
+        verifyPacked("c2", "Changed 2");
+        for (int i = 3; i <= 6; i++) {
+            verifyPacked("c" + i, "Content " + i);
+        }
+    }
+
+    @Test
+    public void testShardedLayout() throws Exception {
+        CacheOptions options = new CacheOptions().setFileLayout(2, 16);
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        for (int i = 10; i <= 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        putString("c12", "Changed 12");
+        cache.remove("c13");
+        File file = cache.find("c14");
+        assertEquals(new File(base, "files"), file.getParentFile().getParentFile().getParentFile());
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+        verifyNotExists("c10");
+        verifyNotExists("c13");
+        verifyExists("c12", "Changed 12");
+        for (int i = 14; i <= 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+    }
+
+    @Test
+    public void testMigrateLayout() throws Exception {
+        cache.init();
+        for (int i = 11; i <= 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setFileLayout(2, 256));
+        cache.init();
+        assertFalse(new File(base, "files/c11").exists());
+        for (int i = 11; i <= 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+        putString("c11", "Changed 11");
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        verifyExists("c11", "Changed 11");
+        for (int i = 12; i <= 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+            assertEquals(new File(base, "files/c" + i), cache.find("c" + i));
+        }
+        assertEquals("Shard directories should be deleted", 10, new File(base, "files").list().length);
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        cache.init();
+        putString("c10", "Content 10");
+        DiskLruCache.PutBatch<SimpleMeta> batch = new DiskLruCache.PutBatch<>();
+        for (int i = 10; i <= 15; i++) {
+            batch.add(writeTmp("tmp" + i, "Changed " + i), "c" + i, new SimpleMeta(10));
+        }
+        assertTrue(cache.putAll(batch, true).isEmpty());
+        assertEquals(60, cache.getWeight());
+
+        Map<String, File> found = cache.findAll(Arrays.asList("c11", "c16", "c10"));
+        assertEquals(Arrays.asList("c11", "c10"), new ArrayList<>(found.keySet()));
+        assertEquals("Changed 10", FileUtils.readFileToString(found.get("c10")));
+
+        assertEquals(2, cache.removeAll(Arrays.asList("c12", "c16", "c13"), false));
+        verifyNotExists("c12");
+        assertFalse(new File(base, "files/c13").exists());
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100);
+        cache.init();
+        for (int i = 10; i <= 15; i++) {
+            if (i == 12 || i == 13) {
+                verifyNotExists("c" + i);
+            } else {
+                verifyExists("c" + i, "Changed " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchEvictsOnce() throws Exception {
+        cache = new DiskLruCache<>(base, 100, new CacheOptions().setPackStorage(16, 1024, 0.5));
+        cache.init();
+        DiskLruCache.PutBatch<SimpleMeta> batch = new DiskLruCache.PutBatch<>();
+        for (int i = 10; i <= 20; i++) {
+            batch.add(writeTmp("tmp" + i, "Content " + i), "c" + i, new SimpleMeta(10));
+        }
+        batch.add(writeTmp("big", "Content 21 is too big"), "c21", new SimpleMeta(10));
+        cache.putAll(batch, false);
+        assertEquals(100, cache.getWeight());
+        assertFalse(cache.contains("c10"));
+        assertFalse(cache.contains("c11"));
+        assertEquals("Content 12", read(cache.read("c12")));
+        verifyExists("c21", "Content 21 is too big");
+    }
+
+    @Test
+    public void testBatchEvictsStagedFile() throws Exception {
+        cache.init();
+        putString("c10", "Content 10");
+        DiskLruCache.PutBatch<SimpleMeta> batch = new DiskLruCache.PutBatch<>();
+        File huge = writeTmp("huge", "Content 11");
+        batch.add(huge, "c11", new SimpleMeta(150));
+        assertTrue(cache.putAll(batch, false).isEmpty());
+        assertEquals(0, cache.getWeight());
+        verifyNotExists("c10");
+        verifyNotExists("c11");
+        assertFalse("Evicted file shouldn't be moved into the cache", new File(base, "files/c11").exists());
+        assertFalse(huge.exists());
+    }
+
+    private File writeTmp(String name, String content) throws IOException {
+        File file = new File(name);
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+
+    private void verifyPacked(String name, String content) throws IOException {
+        assertEquals(content, read(cache.read(name)));
+        DiskLruCache.Snapshot snapshot = cache.get(name);
+        assertEquals(content.length(), snapshot.getLength());
+        assertEquals(content, IOUtils.toString(snapshot.getInputStream(), "UTF-8"));
+        snapshot.close();
+        snapshot = cache.get(name);
+        ByteBuffer buffer = ByteBuffer.allocate(content.length());
+        snapshot.getChannel().position(1).read(buffer);
+        buffer.flip();
+        assertEquals(content.substring(1), read(buffer));
+        assertEquals("Stream should share the position with the channel", -1, snapshot.getInputStream().read());
+        snapshot.close();
+        assertTrue("Packed entry has no file, but exists", cache.find(name) == null && cache.contains(name));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(content.length() - 1, cache.transferTo(name, Channels.newChannel(output), 1, 100));
+        assertEquals(content.substring(1), output.toString("UTF-8"));
+        DiskLruCache<SimpleMeta>.MappedEntry entry = cache.map(name);
+        assertEquals(content, read(entry.getBuffer()));
+        entry.close();
+    }
+
+    private static String read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte[] pattern) {
+        for (int i = bytes.length - pattern.length; i >= 0; i--) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void testReload(CacheOptions options) throws Exception {
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        for (int i = 10; i <= 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        cache.remove("c15");
+
+        cache.close();
+
+        cache = new DiskLruCache<>(base, 100, options);
+        cache.init();
+
+        verifyNotExists("c10");
+        verifyNotExists("c15");
+        for (int i = 11; i <= 20; i++) {
+            if (i != 15) {
+                verifyExists("c" + i, "Content " + i);
+            }
+        }
+    }
+
+    private boolean putString(String name, String content) throws IOException {
         File tmp = new File("tmp");
         FileUtils.writeStringToFile(tmp, content);
-        cache.put(tmp, name, new SimpleMeta(content.length()));
+        return cache.put(tmp, name, new SimpleMeta(content.length()));
     }
 
     private void verifyNotExists(String name) throws IOException {
@@ -23,7 +23,11 @@ public class FileTest {
         clean();
 
         file = new File(testDir, "test");
-        realFile = new RealFile(file);
+        realFile = createRealFile(file);
+    }
+
+    protected VirtualFile createRealFile(File file) {
+        return new RealFile(file);
     }
 
     @After
@@ -0,0 +1,110 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class MappedTransactionFileTest extends TransactionFileTest {
+
+    private static final int CHUNK_SIZE = 64;
+
+    @Override
+    protected VirtualFile createRealFile(File file) {
+        return new RealFile(file, new CacheOptions().setMappedJournal(CHUNK_SIZE));
+    }
+
+    @Override
+    @Test
+    public void testLength() throws Exception {
+        TransactionalVirtualFile mapped = transactionalFile;
+        mapped.write(new byte[]{1, 2, 3, 4});
+        assertEquals(4, mapped.length());
+        assertEquals("File should be preallocated", CHUNK_SIZE, file.length());
+
+        mapped.setLength(2);
+        assertEquals(2, mapped.length());
+
+        mapped.write(new byte[]{5, 6});
+        assertEquals(4, mapped.length());
+
+        mapped.seek(0);
+        byte[] bytes = new byte[4];
+        mapped.readFully(bytes);
+        assertArrayEquals(new byte[]{1, 2, 5, 6}, bytes);
+
+        mapped.close();
+        assertEquals("Preallocated tail should be dropped", 4, file.length());
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        TransactionalVirtualFile mapped = transactionalFile;
+        byte[] bytes = new byte[CHUNK_SIZE * 3 + 1];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        mapped.createEmpty();
+        mapped.write(bytes);
+        mapped.commit();
+        assertEquals(CHUNK_SIZE * 4, file.length());
+        mapped.close();
+
+        mapped = realFile.createTransactionalFile();
+        mapped.init();
+        byte[] restored = new byte[bytes.length];
+        mapped.readFully(restored);
+        assertArrayEquals(bytes, restored);
+        assertEquals("File has more content", mapped.length(), mapped.pos());
+        mapped.close();
+    }
+
+    @Test
+    public void testCrashWithPreallocatedTail() throws Exception {
+        TransactionalVirtualFile crashed = transactionalFile;
+        crashed.createEmpty();
+        crashed.write(new byte[]{1, 2, 3});
+        crashed.commit();
+        crashed.write(new byte[]{4, 5});
+
+        TransactionalVirtualFile restored = new MappedTransactionalFile(file, DurabilityPolicy.forceOnCommit(),
+                CHUNK_SIZE);
+        assertEquals("Preallocated tail should be visible before init", CHUNK_SIZE, restored.length());
+        restored.init();
+        assertEquals(TransactionalVirtualFile.HEADER_SIZE + 3, restored.length());
+        byte[] bytes = new byte[3];
+        restored.readFully(bytes);
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes);
+        restored.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws Exception {
+        TransactionalVirtualFile mapped = transactionalFile;
+        mapped.createEmpty();
+        mapped.write(new byte[]{1, 2, 3});
+        mapped.commit();
+        mapped.close();
+
+        // the mapping is gone, so the write must fail instead of touching it
+        mapped.write(new byte[]{4, 5});
+    }
+
+    @Test(expected = IOException.class)
+    public void testCommitAfterClose() throws Exception {
+        TransactionalVirtualFile mapped = transactionalFile;
+        mapped.createEmpty();
+        mapped.close();
+        mapped.commit();
+    }
+
+    @Test(expected = IOException.class)
+    public void testSyncAfterClose() throws Exception {
+        TransactionalVirtualFile mapped = transactionalFile;
+        mapped.createEmpty();
+        mapped.close();
+        mapped.sync();
+    }
+}
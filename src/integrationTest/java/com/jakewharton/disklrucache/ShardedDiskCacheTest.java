@@ -0,0 +1,186 @@
+package com.jakewharton.disklrucache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class ShardedDiskCacheTest {
+
+    private ShardedDiskLruCache<SimpleMeta> cache;
+    private File base;
+
+    @Before
+    public void setUp() throws Exception {
+        base = new File("tests");
+        FileUtils.deleteDirectory(base);
+        cache = new ShardedDiskLruCache<>(base, 1000, 4);
+    }
+
+    @Test
+    public void testPutFindRemove() throws Exception {
+        cache.init();
+
+        for (int i = 0; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        for (int i = 0; i < 20; i++) {
+            verifyExists("c" + i, "Content " + i);
+        }
+
+        assertTrue(cache.remove("c5"));
+        assertFalse(cache.remove("c5"));
+        assertFalse(cache.contains("c5"));
+        verifyNotExists("c5");
+    }
+
+    @Test
+    public void testSegmentsHaveOwnDirectories() throws Exception {
+        cache.init();
+
+        for (int i = 0; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+
+        for (int i = 0; i < cache.getSegmentCount(); i++) {
+            assertTrue(new File(base, ShardedDiskLruCache.SEGMENT_DIR_PREFIX + i).isDirectory());
+        }
+        for (int i = 0; i < 20; i++) {
+            String name = "c" + i;
+            assertTrue(cache.getSegment(cache.segmentIndex(name)).contains(name));
+        }
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        cache.init();
+
+        for (int i = 0; i < 20; i++) {
+            putString("c" + i, "Content " + i);
+        }
+        cache.remove("c3");
+        cache.close();
+
+        cache = new ShardedDiskLruCache<>(base, 1000, 4);
+        cache.init();
+
+        verifyNotExists("c3");
+        for (int i = 0; i < 20; i++) {
+            if (i != 3) {
+                verifyExists("c" + i, "Content " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testWeightLimit() throws Exception {
+        cache.init();
+
+        for (int i = 0; i < ShardedDiskLruCache.REBALANCE_INTERVAL * 2; i++) {
+            putString("c" + i, "Content " + i);
+            assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        }
+
+        long budgets = 0;
+        for (int i = 0; i < cache.getSegmentCount(); i++) {
+            budgets += cache.getSegment(i).getMaxWeight();
+        }
+        assertEquals(cache.getMaxWeight(), budgets);
+    }
+
+    @Test
+    public void testRebalanceBySkewedDemand() throws Exception {
+        cache.init();
+
+        int hot = cache.segmentIndex("hot");
+        for (int i = 0; i < 200; i++) {
+            String name = "h" + i;
+            if (cache.segmentIndex(name) == hot) {
+                putString(name, "Content " + i);
+            }
+        }
+        cache.rebalance();
+
+        for (int i = 0; i < cache.getSegmentCount(); i++) {
+            if (i != hot) {
+                assertTrue(cache.getSegment(hot).getMaxWeight() > cache.getSegment(i).getMaxWeight());
+            }
+        }
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    }
+
+    @Test
+    public void testConcurrentRebalances() throws Exception {
+        cache.init();
+
+        int hot = cache.segmentIndex("hot");
+        for (int i = 0; i < 200; i++) {
+            String name = "h" + i;
+            if (cache.segmentIndex(name) == hot) {
+                putString(name, "Content " + i);
+            }
+        }
+
+        // the demands decay with every round, so each round computes other budgets
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            cache.rebalance();
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("Unexpected errors: " + errors, errors.isEmpty());
+        long budgets = 0;
+        for (int i = 0; i < cache.getSegmentCount(); i++) {
+            budgets += cache.getSegment(i).getMaxWeight();
+        }
+        assertEquals(cache.getMaxWeight(), budgets);
+    }
+
+    private void putString(String name, String content) throws IOException {
+        File tmp = new File("tmp");
+        FileUtils.writeStringToFile(tmp, content);
+        cache.put(tmp, name, new SimpleMeta(content.length()));
+    }
+
+    private void verifyNotExists(String name) throws IOException {
+        File file = cache.find(name);
+        assertNull("File exists, but shouldn't", file);
+    }
+
+    private void verifyExists(String name, String content) throws IOException {
+        File file = cache.find(name);
+        assertNotNull("File not exists", file);
+        assertEquals("Wrong file content", content, FileUtils.readFileToString(file));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        FileUtils.deleteDirectory(base);
+    }
+}
@@ -11,7 +11,7 @@ import static org.junit.Assert.*;
 
 public class TransactionFileTest extends FileTest {
 
-    private TransactionalVirtualFile transactionalFile;
+    TransactionalVirtualFile transactionalFile;
 
     @Override
     @Before
@@ -1,12 +1,19 @@
 package com.jakewharton.disklrucache;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class AsyncDiskLruCache<Meta extends FileMeta> extends DiskLruCache<Meta> {
 
@@ -16,24 +23,233 @@ public class AsyncDiskLruCache<Meta extends FileMeta> extends DiskLruCache<Meta>
     @NotNull
     private Executor executor = createExecutor();
 
+    // the future of the async variant running on the thread, its journal tasks report their failures to it
+    private final ThreadLocal<CacheFuture<?>> current = new ThreadLocal<>();
+    // the slot a write has taken before the cache lock, true until its task is queued
+    private final ThreadLocal<Boolean> reservedSlot = new ThreadLocal<>();
+    // an access has been queued over the capacity under the cache lock, its caller waits after releasing it
+    private final ThreadLocal<Boolean> overdrawnSlot = new ThreadLocal<>();
+
+    // 0 for the unbounded queue
+    private final int queueCapacity;
+    @NotNull
+    private final QueueOverflow overflow;
+    // guards the queue gauges, the blocked callers wait on it
+    private final Object queueLock = new Object();
+    private int queueDepth;
+    private int peakQueueDepth;
+    private long completedTasks;
+    private long latencyNanos;
+    private long maxLatencyNanos;
+    private long droppedAccesses;
+    private long rejectedWrites;
+
     public AsyncDiskLruCache(@NotNull File cacheDir, long maxWeight, @NotNull SyncMode mode) {
-        super(cacheDir, maxWeight);
+        this(cacheDir, maxWeight, mode, new CacheOptions());
+    }
+
+    public AsyncDiskLruCache(@NotNull File cacheDir, long maxWeight, @NotNull SyncMode mode,
+                             @NotNull CacheOptions options) {
+        super(cacheDir, maxWeight, options);
         this.mode = mode;
+        queueCapacity = options.getJournalQueueCapacity();
+        overflow = options.getJournalQueueOverflow();
     }
 
     @Override
     public void init() throws IOException {
-        Runnable task = new Runnable() {
+        initAsync();
+    }
+
+    /**
+     * Starts replaying the journal in the background and returns immediately. Until the replay is done,
+     * the cache answers from the replayed part of the index and checks the files on the disk for the rest.
+     * Puts and removes change the files right away, while the index and the journal are updated in the same
+     * order once the replay is done. If the files have to be moved to another layout, see
+     * {@link CacheOptions#setFileLayout}, the init is blocking instead.
+     *
+     * @return completes, when the whole journal is replayed
+     */
+    @NotNull
+    public Future<Void> initAsync() throws IOException {
+        startWarmUp();
+        FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
             @Override
-            public void run() {
+            public Void call() throws IOException {
                 try {
-                    AsyncDiskLruCache.super.init();
+                    warmUp();
                 } catch (IOException e) {
                     onIOException(e);
+                    throw e;
                 }
+                return null;
             }
-        };
+        });
         executeAsync(task);
+        return task;
+    }
+
+    @Override
+    public boolean put(@NotNull File file, @NotNull String newName, @NotNull Meta meta) throws IOException {
+        boolean reserved = reserveSlot();
+        try {
+            return super.put(file, newName, meta);
+        } finally {
+            releaseSlot(reserved);
+        }
+    }
+
+    @Override
+    public boolean remove(@NotNull String fileName) throws IOException {
+        boolean reserved = reserveSlot();
+        try {
+            return super.remove(fileName);
+        } finally {
+            releaseSlot(reserved);
+        }
+    }
+
+    @Override
+    public void renewMeta(@NotNull String fileName, @NotNull Meta meta) throws IOException {
+        boolean reserved = reserveSlot();
+        try {
+            super.renewMeta(fileName, meta);
+        } finally {
+            releaseSlot(reserved);
+        }
+    }
+
+    /**
+     * Like {@link #put(File, String, Meta)}, but the journal write never blocks the caller, whatever the sync
+     * mode. The future completes, when the write is committed, or fails with its {@link IOException}.
+     */
+    @NotNull
+    public CacheFuture<Boolean> putAsync(@NotNull final File file, @NotNull final String newName,
+                                         @NotNull final Meta meta) {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws IOException {
+                return put(file, newName, meta);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #remove(String)}, but completes, when the removal is committed to the journal.
+     */
+    @NotNull
+    public CacheFuture<Boolean> removeAsync(@NotNull final String fileName) {
+        return submit(new Operation<Boolean>() {
+            @Override
+            public Boolean run() throws IOException {
+                return remove(fileName);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #find(String)}, but completes, when the access is committed to the journal.
+     */
+    @NotNull
+    public CacheFuture<File> findAsync(@NotNull final String fileName) {
+        return submit(new Operation<File>() {
+            @Override
+            public File run() throws IOException {
+                return find(fileName);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #renewMeta(String, Meta)}, but completes, when the new meta is committed to the journal.
+     */
+    @NotNull
+    public CacheFuture<Void> renewMetaAsync(@NotNull final String fileName, @NotNull final Meta meta) {
+        return submit(new Operation<Void>() {
+            @Override
+            public Void run() throws IOException {
+                renewMeta(fileName, meta);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void setMaxWeight(long maxWeight) throws IOException {
+        boolean reserved = reserveSlot();
+        try {
+            super.setMaxWeight(maxWeight);
+        } finally {
+            releaseSlot(reserved);
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<String> putAll(@NotNull PutBatch<Meta> batch, boolean atomic) throws IOException {
+        boolean reserved = reserveSlot();
+        try {
+            return super.putAll(batch, atomic);
+        } finally {
+            releaseSlot(reserved);
+        }
+    }
+
+    @Override
+    public int removeAll(@NotNull Collection<String> fileNames, boolean atomic) throws IOException {
+        boolean reserved = reserveSlot();
+        try {
+            return super.removeAll(fileNames, atomic);
+        } finally {
+            releaseSlot(reserved);
+        }
+    }
+
+    // the operation queues its journal tasks, then a task queued after them completes the future: the executor
+    // runs the tasks in order, so by then the journal has the changes of the operation
+    @NotNull
+    private <T> CacheFuture<T> submit(@NotNull Operation<T> operation) {
+        final CacheFuture<T> future = new CacheFuture<>();
+        final T result;
+        current.set(future);
+        try {
+            result = operation.run();
+        } catch (IOException e) {
+            future.fail(e);
+            return future;
+        } finally {
+            current.remove();
+        }
+        // the operation is done, so the failing queue can't refuse its completion any more
+        boolean reserved = overflow != QueueOverflow.FailFast && awaitReservedSlot();
+        try {
+            executeAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        AsyncDiskLruCache.super.awaitJournal();
+                        future.complete(result);
+                    } catch (IOException e) {
+                        future.fail(e);
+                    }
+                }
+            });
+        } finally {
+            releaseSlot(reserved);
+        }
+        return future;
+    }
+
+    @Override
+    protected void awaitJournal() throws IOException {
+        if (overdrawnSlot.get() != null) {
+            overdrawnSlot.remove();
+            awaitSlot();
+        }
+        // the async variants await the commit on the executor
+        if (current.get() == null) {
+            super.awaitJournal();
+        }
     }
 
     @Override
@@ -49,23 +265,40 @@ public class AsyncDiskLruCache<Meta extends FileMeta> extends DiskLruCache<Meta>
 
     @Override
     protected void putJournal(@NotNull final String fileName, @NotNull final Meta meta, final boolean exists) {
+        final CacheFuture<?> future = current.get();
         Runnable task = new Runnable() {
             @Override
             public void run() {
                 try {
                     AsyncDiskLruCache.super.putJournal(fileName, meta, exists);
                 } catch (IOException e) {
-                    onIOException(e);
+                    onIOException(future, e);
                 }
             }
         };
-        if (mode.isSyncForPut()) {
+        if (mode.isSyncForPut() && future == null) {
             executeSync(task);
         } else {
             executeAsync(task);
         }
     }
 
+    @Override
+    protected void rejectJournal(@NotNull final String fileName) {
+        final CacheFuture<?> future = current.get();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AsyncDiskLruCache.super.rejectJournal(fileName);
+                } catch (IOException e) {
+                    onIOException(future, e);
+                }
+            }
+        };
+        executeAsync(task);
+    }
+
     @Override
     protected void accessJournalDefaultRebuild(@NotNull final String fileName) {
         accessJournal(fileName, true);
@@ -73,40 +306,260 @@ public class AsyncDiskLruCache<Meta extends FileMeta> extends DiskLruCache<Meta>
 
     @Override
     protected void accessJournal(@NotNull final String fileName, final boolean allowRebuild) {
+        final CacheFuture<?> future = current.get();
         Runnable task = new Runnable() {
             @Override
             public void run() {
                 try {
                     AsyncDiskLruCache.super.accessJournal(fileName, allowRebuild);
                 } catch (IOException e) {
-                    onIOException(e);
+                    onIOException(future, e);
                 }
             }
         };
-        executeAsync(task);
+        executeAccess(task);
     }
 
     @Override
     protected void removeJournal(@NotNull final String fileName) {
+        final CacheFuture<?> future = current.get();
         Runnable task = new Runnable() {
             @Override
             public void run() {
                 try {
                     AsyncDiskLruCache.super.removeJournal(fileName);
                 } catch (IOException e) {
-                    onIOException(e);
+                    onIOException(future, e);
                 }
             }
         };
-        if (mode.isSyncForRemove()) {
+        if (mode.isSyncForRemove() && future == null) {
             executeSync(task);
         } else {
             executeAsync(task);
         }
     }
 
+    // the whole batch is one task, so it is logged with one commit like in the blocking cache
+    @Override
+    protected void putAllJournal(@NotNull final JournalBatch batch) {
+        final CacheFuture<?> future = current.get();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AsyncDiskLruCache.super.putAllJournal(batch);
+                } catch (IOException e) {
+                    onIOException(future, e);
+                }
+            }
+        };
+        if (mode.isSyncForPut() && future == null) {
+            executeSync(task);
+        } else {
+            executeAsync(task);
+        }
+    }
+
+    @Override
+    protected void removeAllJournal(@NotNull final JournalBatch batch) {
+        final CacheFuture<?> future = current.get();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AsyncDiskLruCache.super.removeAllJournal(batch);
+                } catch (IOException e) {
+                    onIOException(future, e);
+                }
+            }
+        };
+        if (mode.isSyncForRemove() && future == null) {
+            executeSync(task);
+        } else {
+            executeAsync(task);
+        }
+    }
+
+    @Override
+    protected void accessAllJournal(@NotNull List<String> fileNames) {
+        final CacheFuture<?> future = current.get();
+        // the drained read buffer is reused once the lock is released
+        final List<String> accessed = new ArrayList<>(fileNames);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AsyncDiskLruCache.super.accessAllJournal(accessed);
+                } catch (IOException e) {
+                    onIOException(future, e);
+                }
+            }
+        };
+        executeAccess(task);
+    }
+
+    // the evictions of a smaller max weight are logged by the executor, like the ones of a put
+    @Override
+    protected void resizeJournal() {
+        final CacheFuture<?> future = current.get();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AsyncDiskLruCache.super.resizeJournal();
+                } catch (IOException e) {
+                    onIOException(future, e);
+                }
+            }
+        };
+        executeAsync(task);
+    }
+
+    /**
+     * The gauges of the journal queue, e.g. to shed the load before the disk falls too far behind.
+     */
+    @NotNull
+    public JournalQueueStats getJournalQueueStats() {
+        synchronized (queueLock) {
+            return new JournalQueueStats(queueDepth, peakQueueDepth, completedTasks, latencyNanos, maxLatencyNanos,
+                    droppedAccesses, rejectedWrites);
+        }
+    }
+
+    // a write takes its slot before the cache lock, because the executor may need the lock to free one, e.g.
+    // to close the cache, and the failing queue rejects the write before it changes anything; returns false if
+    // no slot is taken, e.g. the write is nested in another one
+    private boolean reserveSlot() throws IOException {
+        if (queueCapacity == 0 || reservedSlot.get() != null) {
+            return false;
+        }
+        if (overflow != QueueOverflow.FailFast) {
+            return awaitReservedSlot();
+        }
+        synchronized (queueLock) {
+            if (queueDepth >= queueCapacity) {
+                rejectedWrites++;
+                throw new IOException("Journal queue is full: " + queueDepth + " tasks");
+            }
+            takeSlot();
+        }
+        reservedSlot.set(Boolean.TRUE);
+        return true;
+    }
+
+    private boolean awaitReservedSlot() {
+        if (queueCapacity == 0) {
+            return false;
+        }
+        awaitSlot(true);
+        reservedSlot.set(Boolean.TRUE);
+        return true;
+    }
+
+    // frees the slot, unless the write has queued its task into it
+    private void releaseSlot(boolean reserved) {
+        if (!reserved) {
+            return;
+        }
+        boolean unused = reservedSlot.get();
+        reservedSlot.remove();
+        if (unused) {
+            synchronized (queueLock) {
+                queueDepth--;
+                queueLock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitSlot() {
+        if (queueCapacity == 0 || overflow == QueueOverflow.FailFast) {
+            return;
+        }
+        awaitSlot(false);
+    }
+
+    // the record of a write can't be lost, so an interrupted caller keeps waiting and restores the flag
+    private void awaitSlot(boolean reserve) {
+        boolean interrupted = false;
+        synchronized (queueLock) {
+            while (queueDepth >= queueCapacity) {
+                try {
+                    queueLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (reserve) {
+                takeSlot();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // must be called under queueLock
+    private void takeSlot() {
+        queueDepth++;
+        peakQueueDepth = Math.max(peakQueueDepth, queueDepth);
+    }
+
+    // an access is queued under the cache lock, so it never waits: the blocking queue takes the slot over the
+    // capacity and the caller waits after releasing the lock; the slot of a write is never used by an access
+    private void executeAccess(@NotNull Runnable task) {
+        long queuedAt = System.nanoTime();
+        synchronized (queueLock) {
+            if (queueCapacity > 0 && queueDepth >= queueCapacity) {
+                if (overflow != QueueOverflow.Block) {
+                    droppedAccesses++;
+                    return;
+                }
+                overdrawnSlot.set(Boolean.TRUE);
+            }
+            takeSlot();
+        }
+        executor.execute(tracked(task, queuedAt));
+    }
+
     protected void executeAsync(Runnable task) {
-        executor.execute(task);
+        executor.execute(queued(task));
+    }
+
+    // counts the task in the queue depth until it ends
+    @NotNull
+    private Runnable queued(@NotNull Runnable task) {
+        long queuedAt = System.nanoTime();
+        synchronized (queueLock) {
+            if (reservedSlot.get() == Boolean.TRUE) {
+                // the task takes the slot reserved by its write
+                reservedSlot.set(Boolean.FALSE);
+            } else {
+                takeSlot();
+            }
+        }
+        return tracked(task, queuedAt);
+    }
+
+    @NotNull
+    private Runnable tracked(@NotNull final Runnable task, final long queuedAt) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    long latency = System.nanoTime() - queuedAt;
+                    synchronized (queueLock) {
+                        queueDepth--;
+                        completedTasks++;
+                        latencyNanos += latency;
+                        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+                        queueLock.notifyAll();
+                    }
+                }
+            }
+        };
     }
 
     protected void executeSync(final Runnable task) {
@@ -118,7 +571,7 @@ public class AsyncDiskLruCache<Meta extends FileMeta> extends DiskLruCache<Meta>
                 done.countDown();
             }
         };
-        executor.execute(wrap);
+        executor.execute(queued(wrap));
         try {
             done.await();
         } catch (InterruptedException e) {
@@ -130,11 +583,22 @@ public class AsyncDiskLruCache<Meta extends FileMeta> extends DiskLruCache<Meta>
         e.printStackTrace();
     }
 
+    private void onIOException(@Nullable CacheFuture<?> future, @NotNull IOException e) {
+        if (future == null || !future.fail(e)) {
+            onIOException(e);
+        }
+    }
+
     @NotNull
     Executor createExecutor() {
         return Executors.newSingleThreadExecutor();
     }
 
+    private interface Operation<T> {
+
+        T run() throws IOException;
+    }
+
     public static enum SyncMode {
         Async(false, false),
         SyncForPut(true, false),
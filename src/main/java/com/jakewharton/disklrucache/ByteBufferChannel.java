@@ -0,0 +1,89 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only channel over the content of a packed entry, which is read into the memory.
+ */
+class ByteBufferChannel implements SeekableByteChannel {
+
+    @NotNull
+    private final ByteBuffer content;
+    private boolean open = true;
+
+    ByteBufferChannel(@NotNull ByteBuffer content) {
+        this.content = content.slice();
+    }
+
+    @Override
+    public synchronized int read(@NotNull ByteBuffer target) throws IOException {
+        ensureOpen();
+        if (!content.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(target.remaining(), content.remaining());
+        ByteBuffer chunk = content.duplicate();
+        chunk.limit(chunk.position() + count);
+        target.put(chunk);
+        content.position(content.position() + count);
+        return count;
+    }
+
+    @Override
+    public int write(@NotNull ByteBuffer source) throws IOException {
+        ensureOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return content.position();
+    }
+
+    @NotNull
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        content.position((int) Math.min(newPosition, content.limit()));
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return content.limit();
+    }
+
+    @NotNull
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
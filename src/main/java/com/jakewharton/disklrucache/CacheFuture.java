@@ -0,0 +1,130 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an asynchronous cache operation. It fails with the {@link IOException} of the operation, which
+ * {@link #get()} wraps into an {@link ExecutionException}. The listeners let the caller continue without
+ * waiting: they run on the thread, which completes the future, or at once, if it is already done.
+ * The operations can't be cancelled.
+ */
+public final class CacheFuture<T> implements Future<T> {
+
+    // guarded by the future
+    private boolean done;
+    @Nullable
+    private T result;
+    @Nullable
+    private IOException failure;
+    @Nullable
+    private List<Listener<? super T>> listeners = new ArrayList<>();
+
+    CacheFuture() {
+    }
+
+    public void addListener(@NotNull Listener<? super T> listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notify(listener);
+    }
+
+    // the first completion wins, e.g. a failed journal write isn't overridden by the result of the operation
+    boolean complete(@Nullable T result) {
+        return finish(result, null);
+    }
+
+    boolean fail(@NotNull IOException failure) {
+        return finish(null, failure);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NotNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    private boolean finish(@Nullable T result, @Nullable IOException failure) {
+        List<Listener<? super T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            this.result = result;
+            this.failure = failure;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        for (Listener<? super T> listener : toNotify) {
+            notify(listener);
+        }
+        return true;
+    }
+
+    private void notify(@NotNull Listener<? super T> listener) {
+        if (failure != null) {
+            listener.onFailure(failure);
+        } else {
+            listener.onSuccess(result);
+        }
+    }
+
+    public interface Listener<T> {
+
+        void onSuccess(@Nullable T result);
+
+        void onFailure(@NotNull IOException e);
+    }
+}
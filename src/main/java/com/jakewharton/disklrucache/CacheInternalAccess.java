@@ -1,16 +1,33 @@
 package com.jakewharton.disklrucache;
 
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import java.util.Iterator;
 import java.util.Map;
 
-interface CacheInternalAccess<Meta> {
+/**
+ * Storage of the cache entries, which also decides the eviction order. Implementations are always
+ * called under the cache lock.
+ *
+ * @see EvictionPolicy
+ */
+public interface CacheInternalAccess<Meta> {
     Meta putMetaInternal(@NotNull String fileName, @NotNull Meta meta);
     Meta accessInternal(@NotNull String fileName);
     Meta removeInternal(@NotNull String fileName);
+
+    /**
+     * Iterates over all the entries. The journal is compacted in this order and replayed back, so
+     * the order should be restored by putting the entries one by one.
+     */
     @NotNull Iterator<Map.Entry<String,Meta>> getEntriesIterator();
+
+    /**
+     * Iterates over the entries in the order they should be evicted. The iterator should support
+     * {@link Iterator#remove()}, and it may be left before the end. Only the removal may change the order,
+     * so the admission filter can look at the next victims without evicting them.
+     */
+    @NotNull Iterator<Map.Entry<String,Meta>> getEvictionIterator();
     int getEntitiesCount();
     boolean containsInternal(String fileName);
 }
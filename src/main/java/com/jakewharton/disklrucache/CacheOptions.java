@@ -0,0 +1,448 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class CacheOptions {
+
+    private long groupCommitWindowNanos;
+    private int groupCommitMaxBatchSize;
+    @Nullable
+    private DurabilityPolicy journalDurability;
+    private long mappedJournalChunkSize;
+    private boolean framedJournal;
+    private boolean lockFreeReads;
+    private int admissionExpectedEntries;
+    private double admissionWindowShare;
+    @NotNull
+    private EvictionPolicy evictionPolicy = EvictionPolicy.lru();
+    @Nullable
+    private Executor compactionExecutor;
+    private double compactionWriteAmplification;
+    private long compactionMinGarbageBytes;
+    private long compactionMaxGarbageBytes = Long.MAX_VALUE;
+    private double checkpointTailShare;
+    private long accessCoalescingNanos = -1;
+    @Nullable
+    private MetaCodec<?> metaCodec;
+    private long memoryTierMaxBytes;
+    private int memoryTierMaxEntrySize;
+    private boolean memoryTierDirect;
+    private int packMaxEntrySize;
+    private long packSegmentSize;
+    private double packMaxDeadShare;
+    private int fileLayoutLevels;
+    private int fileLayoutFanOut;
+    private int journalQueueCapacity;
+    @NotNull
+    private QueueOverflow journalQueueOverflow = QueueOverflow.Block;
+
+    /**
+     * Enables group commit: journal lines of concurrent operations are committed together by one of
+     * the callers. Every caller still returns only after its own line is committed.
+     *
+     * @param window how long the committing thread waits for other lines to join the batch
+     * @param maxBatchSize number of lines after which the batch is committed without waiting the window out
+     */
+    @NotNull
+    public CacheOptions setGroupCommit(long window, @NotNull TimeUnit unit, int maxBatchSize) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Negative window: " + window);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch should contain at least one line: " + maxBatchSize);
+        }
+        groupCommitWindowNanos = unit.toNanos(window);
+        groupCommitMaxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Switches the journal to a {@link java.nio.channels.FileChannel} based file with the given durability
+     * policy. By default the journal is written through a synchronous "rwd" file.
+     */
+    @NotNull
+    public CacheOptions setJournalDurability(@Nullable DurabilityPolicy policy) {
+        journalDurability = policy;
+        return this;
+    }
+
+    /**
+     * Switches the journal to a memory-mapped file, which grows by the given number of bytes at once.
+     * Commits are forced according to the journal durability policy, {@link DurabilityPolicy#forceOnCommit()}
+     * by default.
+     */
+    @NotNull
+    public CacheOptions setMappedJournal(long chunkSize) {
+        if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Wrong chunk size: " + chunkSize);
+        }
+        mappedJournalChunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Switches the journal to the append-only commit protocol: every commit is appended as a checksummed
+     * frame with a single write, instead of appending the data and rewriting the size header. Existing
+     * journals are converted on {@link DiskLruCache#init()}.
+     */
+    @NotNull
+    public CacheOptions setFramedJournal(boolean framedJournal) {
+        this.framedJournal = framedJournal;
+        return this;
+    }
+
+    /**
+     * Makes {@link DiskLruCache#find(String)} and {@link DiskLruCache#contains(String)} lock-free. Accesses are
+     * buffered and applied to the LRU order and the journal in batches, so under heavy contention some of them
+     * may be lost.
+     */
+    @NotNull
+    public CacheOptions setLockFreeReads(boolean lockFreeReads) {
+        this.lockFreeReads = lockFreeReads;
+        return this;
+    }
+
+    /**
+     * Sets the policy, which decides what to evict when the cache is full. {@link EvictionPolicy#lru()} by default.
+     */
+    @NotNull
+    public CacheOptions setEvictionPolicy(@NotNull EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    /**
+     * Enables the W-TinyLFU admission filter: when the cache is full, a new entry is put only if it is
+     * requested more often than the entries it would evict. Recently admitted entries are kept in a window,
+     * which is evicted last.
+     *
+     * @param expectedEntries the size of the frequency sketch
+     * @param windowShare the share of the max weight reserved for the window, e.g. 0.01
+     */
+    @NotNull
+    public CacheOptions setAdmissionFilter(int expectedEntries, double windowShare) {
+        if (expectedEntries < 1) {
+            throw new IllegalArgumentException("Wrong expected entries count: " + expectedEntries);
+        }
+        if (windowShare < 0 || windowShare > 1) {
+            throw new IllegalArgumentException("Wrong window share: " + windowShare);
+        }
+        admissionExpectedEntries = expectedEntries;
+        admissionWindowShare = windowShare;
+        return this;
+    }
+
+    /**
+     * Moves the journal compaction to the given executor. A snapshot of the entries is written to a new
+     * journal in the background, while the operations keep appending to the old one. The operation, which
+     * finds the compaction done, appends the lines logged meanwhile and switches the journals. By default
+     * the journal is compacted by the operation, which crosses the limit of redundant lines. The pack segments
+     * are compacted on the same executor.
+     */
+    @NotNull
+    public CacheOptions setCompactionExecutor(@Nullable Executor executor) {
+        compactionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Replaces the fixed limit of redundant journal lines with a trigger based on the journal size. The journal
+     * is compacted when the bytes of the garbage lines are big enough to keep the write amplification under
+     * the target, but not sooner than ten durations of the previous compaction after it.
+     *
+     * @param writeAmplification the target ratio of all the written journal bytes to the logged ones, more than 1
+     * @param minGarbageBytes the journal is never compacted with less garbage
+     * @param maxGarbageBytes the journal is always compacted with more garbage
+     */
+    @NotNull
+    public CacheOptions setAdaptiveCompaction(double writeAmplification, long minGarbageBytes, long maxGarbageBytes) {
+        if (writeAmplification <= 1) {
+            throw new IllegalArgumentException("Write amplification should be more than 1: " + writeAmplification);
+        }
+        if (minGarbageBytes < 0 || maxGarbageBytes < minGarbageBytes) {
+            throw new IllegalArgumentException("Wrong garbage bounds: " + minGarbageBytes + ", " + maxGarbageBytes);
+        }
+        compactionWriteAmplification = writeAmplification;
+        compactionMinGarbageBytes = minGarbageBytes;
+        compactionMaxGarbageBytes = maxGarbageBytes;
+        return this;
+    }
+
+    /**
+     * Compacts the journal into a binary checkpoint of the entries, the journal keeps only the lines logged
+     * after it. On {@link DiskLruCache#init()} the checkpoint is read in bulk and only the tail of the journal
+     * is replayed. Journals with and without a checkpoint are read either way.
+     *
+     * @param maxTailShare the journal is also compacted, when its tail has more lines than this share of
+     *                     the entries, e.g. 0.1
+     */
+    @NotNull
+    public CacheOptions setCheckpoint(double maxTailShare) {
+        if (maxTailShare <= 0) {
+            throw new IllegalArgumentException("Wrong tail share: " + maxTailShare);
+        }
+        checkpointTailShare = maxTailShare;
+        return this;
+    }
+
+    /**
+     * Stops logging every cache hit. The accessed keys are kept in memory and logged at most once per interval
+     * as a single recency line with the keys in the order of their last access. After a crash only the recency
+     * of the last interval is lost, never the entries.
+     */
+    @NotNull
+    public CacheOptions setAccessCoalescing(long interval, @NotNull TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Negative interval: " + interval);
+        }
+        accessCoalescingNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Sets the codec of the metas in the journal records. By default {@link SimpleMeta} is stored as its
+     * weight and any other meta is serialized by kryo together with its class name.
+     */
+    @NotNull
+    public CacheOptions setMetaCodec(@Nullable MetaCodec<?> metaCodec) {
+        this.metaCodec = metaCodec;
+        return this;
+    }
+
+    /**
+     * Keeps the contents of small entries, which are read repeatedly through {@link DiskLruCache#read(String)},
+     * in memory. The memory tier has its own byte budget, is invalidated whenever an entry changes and may be
+     * dropped by the GC under memory pressure.
+     *
+     * @param maxBytes the byte budget of the memory tier
+     * @param maxEntrySize bigger entries are always read from the disk
+     * @param direct whether the contents are kept off-heap in direct buffers
+     */
+    @NotNull
+    public CacheOptions setMemoryTier(long maxBytes, int maxEntrySize, boolean direct) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Wrong max bytes: " + maxBytes);
+        }
+        if (maxEntrySize <= 0) {
+            throw new IllegalArgumentException("Wrong max entry size: " + maxEntrySize);
+        }
+        memoryTierMaxBytes = maxBytes;
+        memoryTierMaxEntrySize = maxEntrySize;
+        memoryTierDirect = direct;
+        return this;
+    }
+
+    /**
+     * Appends the contents of small entries to shared segment files instead of keeping a file per entry, which
+     * saves a file system block and an inode per entry. A segment is rewritten, when the share of the removed
+     * and replaced entries in it crosses the limit, by the compaction executor or by the operation, which
+     * crosses it. {@link DiskLruCache#find(String)} returns null for packed entries, they are read through
+     * {@link DiskLruCache#get(String)} and the other read methods.
+     *
+     * @param maxEntrySize bigger entries are kept in their own files
+     * @param segmentSize a new segment is started, when the active one would grow over this size
+     * @param maxDeadShare the share of dead bytes in a segment, which triggers its compaction, e.g. 0.5
+     */
+    @NotNull
+    public CacheOptions setPackStorage(int maxEntrySize, long segmentSize, double maxDeadShare) {
+        if (maxEntrySize <= 0) {
+            throw new IllegalArgumentException("Wrong max entry size: " + maxEntrySize);
+        }
+        if (segmentSize < maxEntrySize) {
+            throw new IllegalArgumentException("Segment should fit an entry: " + segmentSize);
+        }
+        if (maxDeadShare <= 0 || maxDeadShare > 1) {
+            throw new IllegalArgumentException("Wrong dead share: " + maxDeadShare);
+        }
+        packMaxEntrySize = maxEntrySize;
+        packSegmentSize = segmentSize;
+        packMaxDeadShare = maxDeadShare;
+        return this;
+    }
+
+    /**
+     * Spreads the entry files over a tree of shard directories chosen by a hash of the key, e.g. 2 levels of
+     * 256 directories, so that the lookups, renames and listings don't slow down with millions of entries.
+     * The layout is recorded in the journal, and the files of an existing cache are moved to the new layout
+     * on {@link DiskLruCache#init()}. By default the files are kept in one flat directory.
+     *
+     * @param levels the depth of the tree, 0 for the flat layout
+     * @param fanOut the number of the directories at each level, a power of two
+     */
+    @NotNull
+    public CacheOptions setFileLayout(int levels, int fanOut) {
+        FileLayout.of(levels, fanOut);
+        fileLayoutLevels = levels;
+        fileLayoutFanOut = levels > 0 ? fanOut : 0;
+        return this;
+    }
+
+    /**
+     * Bounds the journal tasks queued by {@link AsyncDiskLruCache} on its executor, so that a stalled disk
+     * doesn't fill the heap with them. Every task counts against the capacity, including the accesses, the
+     * evictions and the completions of the async variants; only the tasks of the warm-up and of the close are
+     * queued regardless, and see {@link QueueOverflow} for the tasks queued over it. By default the queue is
+     * unbounded.
+     *
+     * @param capacity the number of the queued tasks, including the running one
+     * @param overflow what a cache operation does, when the queue is full
+     */
+    @NotNull
+    public CacheOptions setJournalQueue(int capacity, @NotNull QueueOverflow overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Wrong capacity: " + capacity);
+        }
+        journalQueueCapacity = capacity;
+        journalQueueOverflow = overflow;
+        return this;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommitMaxBatchSize > 0;
+    }
+
+    public long getGroupCommitWindowNanos() {
+        return groupCommitWindowNanos;
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    @Nullable
+    public DurabilityPolicy getJournalDurability() {
+        return journalDurability;
+    }
+
+    public boolean isMappedJournal() {
+        return mappedJournalChunkSize > 0;
+    }
+
+    public long getMappedJournalChunkSize() {
+        return mappedJournalChunkSize;
+    }
+
+    public boolean isFramedJournal() {
+        return framedJournal;
+    }
+
+    public boolean isLockFreeReads() {
+        return lockFreeReads;
+    }
+
+    @NotNull
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public boolean isAdmissionFilter() {
+        return admissionExpectedEntries > 0;
+    }
+
+    public int getAdmissionExpectedEntries() {
+        return admissionExpectedEntries;
+    }
+
+    public double getAdmissionWindowShare() {
+        return admissionWindowShare;
+    }
+
+    @Nullable
+    public Executor getCompactionExecutor() {
+        return compactionExecutor;
+    }
+
+    public boolean isAdaptiveCompaction() {
+        return compactionWriteAmplification > 0;
+    }
+
+    public double getCompactionWriteAmplification() {
+        return compactionWriteAmplification;
+    }
+
+    public long getCompactionMinGarbageBytes() {
+        return compactionMinGarbageBytes;
+    }
+
+    public long getCompactionMaxGarbageBytes() {
+        return compactionMaxGarbageBytes;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpointTailShare > 0;
+    }
+
+    public double getCheckpointTailShare() {
+        return checkpointTailShare;
+    }
+
+    public boolean isAccessCoalescing() {
+        return accessCoalescingNanos >= 0;
+    }
+
+    public long getAccessCoalescingNanos() {
+        return accessCoalescingNanos;
+    }
+
+    @Nullable
+    public MetaCodec<?> getMetaCodec() {
+        return metaCodec;
+    }
+
+    public boolean isMemoryTier() {
+        return memoryTierMaxBytes > 0;
+    }
+
+    public long getMemoryTierMaxBytes() {
+        return memoryTierMaxBytes;
+    }
+
+    public int getMemoryTierMaxEntrySize() {
+        return memoryTierMaxEntrySize;
+    }
+
+    public boolean isMemoryTierDirect() {
+        return memoryTierDirect;
+    }
+
+    public boolean isPackStorage() {
+        return packMaxEntrySize > 0;
+    }
+
+    public int getPackMaxEntrySize() {
+        return packMaxEntrySize;
+    }
+
+    public long getPackSegmentSize() {
+        return packSegmentSize;
+    }
+
+    public double getPackMaxDeadShare() {
+        return packMaxDeadShare;
+    }
+
+    public int getFileLayoutLevels() {
+        return fileLayoutLevels;
+    }
+
+    public int getFileLayoutFanOut() {
+        return fileLayoutFanOut;
+    }
+
+    public boolean isJournalQueueBounded() {
+        return journalQueueCapacity > 0;
+    }
+
+    public int getJournalQueueCapacity() {
+        return journalQueueCapacity;
+    }
+
+    @NotNull
+    public QueueOverflow getJournalQueueOverflow() {
+        return journalQueueOverflow;
+    }
+}
@@ -0,0 +1,57 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+class ChannelTransactionalFile extends PolicyTransactionalFile {
+
+    @NotNull
+    private final RandomAccessFile file;
+    @NotNull
+    private final FileChannel channel;
+
+    public ChannelTransactionalFile(@NotNull File file, @NotNull DurabilityPolicy policy) throws IOException {
+        super(policy);
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+    }
+
+    @Override
+    protected int read(long position, @NotNull byte[] b, int off, int len) throws IOException {
+        return channel.read(ByteBuffer.wrap(b, off, len), position);
+    }
+
+    @Override
+    protected void write(long position, @NotNull byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    protected void forceFile() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    protected void closeFile() {
+        Util.closeQuietly(file);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    protected void setLength(long length) throws IOException {
+        file.setLength(length);
+        super.setLength(length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.jakewharton.disklrucache;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the entries in the LRU order. The journal refers to it by the generation and keeps only
+ * the lines logged after it, so the entries are read in bulk on startup instead of replaying the history.
+ */
+class Checkpoint {
+
+    private static final String MAGIC = "DiskLruCacheCheckpoint";
+    private static final int VERSION = 1;
+
+    // a meta of exactly the SimpleMeta class is stored as its weight only
+    private static final byte SIMPLE_META = 0;
+    private static final byte KRYO_META = 1;
+    // the location of an entry in a pack segment, followed by its own meta
+    private static final byte PACKED_META = 2;
+
+    private Checkpoint() {
+    }
+
+    static <Meta> void write(@NotNull Output output, long generation, int count,
+                             @NotNull Iterator<Map.Entry<String, Meta>> iterator, @NotNull Kryo kryo) {
+        output.writeString(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(generation);
+        output.writeInt(count);
+        int written = 0;
+        while (iterator.hasNext()) {
+            Map.Entry<String, Meta> entry = iterator.next();
+            Object meta = entry.getValue();
+            output.writeString(entry.getKey());
+            if (meta instanceof PackedMeta) {
+                output.writeByte(PACKED_META);
+                ((PackedMeta) meta).writeLocation(output);
+                meta = ((PackedMeta) meta).meta;
+            }
+            if (meta != null && meta.getClass() == SimpleMeta.class) {
+                output.writeByte(SIMPLE_META);
+                output.writeVarLong(((SimpleMeta) meta).weight(), true);
+            } else {
+                output.writeByte(KRYO_META);
+                kryo.writeClassAndObject(output, meta);
+            }
+            written++;
+        }
+        if (written != count) {
+            throw new IllegalStateException("Expected " + count + " entries, but there were " + written);
+        }
+    }
+
+    // returns the number of the read entries
+    static <Meta> int read(@NotNull Input input, long generation, @NotNull CacheInternalAccess<Meta> cache,
+                           @NotNull Kryo kryo) throws IOException {
+        String magic = input.readString();
+        if (!MAGIC.equals(magic)) {
+            throw new IOException("Wrong checkpoint magic: " + magic);
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Wrong checkpoint version: " + version);
+        }
+        long actualGeneration = input.readLong();
+        if (actualGeneration != generation) {
+            throw new IOException("Expected checkpoint " + generation + ", but found " + actualGeneration);
+        }
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String fileName = input.readString();
+            Object meta;
+            PackedMeta.Location location = null;
+            byte type = input.readByte();
+            if (type == PACKED_META) {
+                location = PackedMeta.readLocation(input);
+                type = input.readByte();
+            }
+            if (type == SIMPLE_META) {
+                meta = new SimpleMeta(input.readVarLong(true));
+            } else if (type == KRYO_META) {
+                meta = kryo.readClassAndObject(input);
+            } else {
+                throw new IOException("Wrong meta type: " + type);
+            }
+            if (location != null) {
+                meta = new PackedMeta((FileMeta) meta, location);
+            }
+            @SuppressWarnings("unchecked")
+            Meta typedMeta = (Meta) meta;
+            cache.putMetaInternal(fileName, typedMeta);
+        }
+        return count;
+    }
+}
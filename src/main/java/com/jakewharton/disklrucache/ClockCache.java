@@ -0,0 +1,232 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+class ClockCache<Meta> implements CacheInternalAccess<Meta> {
+
+    private final HashMap<String, Node<Meta>> map = new HashMap<>();
+
+    // the next candidate for eviction, new entries are inserted right behind it
+    @Nullable
+    private Node<Meta> hand;
+    private int modCount;
+
+    @Override
+    public Meta putMetaInternal(@NotNull String fileName, @NotNull Meta meta) {
+        Node<Meta> node = map.get(fileName);
+        if (node != null) {
+            Meta old = node.meta;
+            node.meta = meta;
+            node.referenced = true;
+            return old;
+        }
+        node = new Node<>(fileName, meta);
+        map.put(fileName, node);
+        link(node);
+        return null;
+    }
+
+    @Override
+    public Meta accessInternal(@NotNull String fileName) {
+        Node<Meta> node = map.get(fileName);
+        if (node == null) {
+            return null;
+        }
+        node.referenced = true;
+        return node.meta;
+    }
+
+    @Override
+    public Meta removeInternal(@NotNull String fileName) {
+        Node<Meta> node = map.remove(fileName);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.meta;
+    }
+
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEntriesIterator() {
+        return new EntriesIterator();
+    }
+
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEvictionIterator() {
+        return new EvictionIterator();
+    }
+
+    @Override
+    public int getEntitiesCount() {
+        return map.size();
+    }
+
+    @Override
+    public boolean containsInternal(String fileName) {
+        return map.containsKey(fileName);
+    }
+
+    private void link(@NotNull Node<Meta> node) {
+        modCount++;
+        if (hand == null) {
+            node.prev = node;
+            node.next = node;
+            hand = node;
+            return;
+        }
+        node.next = hand;
+        node.prev = hand.prev;
+        hand.prev.next = node;
+        hand.prev = node;
+    }
+
+    private void unlink(@NotNull Node<Meta> node) {
+        modCount++;
+        if (node.next == node) {
+            hand = null;
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        if (hand == node) {
+            hand = node.next;
+        }
+    }
+
+    private static class Node<Meta> implements Map.Entry<String, Meta> {
+
+        @NotNull
+        private final String fileName;
+        private Meta meta;
+        private boolean referenced;
+        private Node<Meta> prev;
+        private Node<Meta> next;
+
+        Node(@NotNull String fileName, Meta meta) {
+            this.fileName = fileName;
+            this.meta = meta;
+        }
+
+        @Override
+        public String getKey() {
+            return fileName;
+        }
+
+        @Override
+        public Meta getValue() {
+            return meta;
+        }
+
+        @Override
+        public Meta setValue(Meta value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private abstract class NodeIterator implements Iterator<Map.Entry<String, Meta>> {
+
+        int expectedModCount = modCount;
+        @Nullable
+        Node<Meta> current;
+
+        void checkModification() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public void remove() {
+            checkModification();
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            map.remove(current.fileName);
+            unlink(current);
+            current = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    // goes around once, starting from the hand
+    private class EntriesIterator extends NodeIterator {
+
+        private Node<Meta> next = hand;
+        private int left = map.size();
+
+        @Override
+        public boolean hasNext() {
+            return left > 0;
+        }
+
+        @Override
+        public Map.Entry<String, Meta> next() {
+            checkModification();
+            if (left == 0) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = next.next;
+            left--;
+            return current;
+        }
+    }
+
+    // goes around from the hand: referenced entries are skipped once, as if they had lost their mark, the others
+    // are returned once; the marks are cleared and the hand is moved only by remove(), so looking at the victims
+    // doesn't change the order
+    private class EvictionIterator extends NodeIterator {
+
+        private int left = map.size();
+        @Nullable
+        private Node<Meta> cursor = hand;
+        // the nodes are compared by identity
+        private final Set<Node<Meta>> skipped = new HashSet<>();
+        private final Set<Node<Meta>> returned = new HashSet<>();
+
+        @Override
+        public boolean hasNext() {
+            return left > 0 && cursor != null;
+        }
+
+        @Override
+        public Map.Entry<String, Meta> next() {
+            checkModification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            while (returned.contains(cursor) || cursor.referenced && skipped.add(cursor)) {
+                cursor = cursor.next;
+            }
+            current = cursor;
+            returned.add(current);
+            cursor = cursor.next;
+            left--;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            checkModification();
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            for (Node<Meta> node : skipped) {
+                node.referenced = false;
+            }
+            skipped.clear();
+            // unlinking the current node moves the hand right after it
+            hand = current;
+            super.remove();
+        }
+    }
+}
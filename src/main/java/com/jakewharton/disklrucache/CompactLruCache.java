@@ -0,0 +1,312 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * LRU order kept in primitive arrays instead of linked entry objects. Every entry is an index into the
+ * arrays, the hash table is an open addressing table of the indexes, the keys are stored in a
+ * {@link KeyArena}. {@link SimpleMeta} is stored as its weight only, other metas are kept as references.
+ */
+class CompactLruCache<Meta> implements CacheInternalAccess<Meta> {
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    @NotNull
+    private KeyArena arena;
+
+    // indexes of the entries plus one, zero is a free slot
+    @NotNull
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    @NotNull
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    @NotNull
+    private int[] keyOffsets = new int[INITIAL_CAPACITY];
+    @NotNull
+    private int[] prev = new int[INITIAL_CAPACITY];
+    // also links the free entries
+    @NotNull
+    private int[] next = new int[INITIAL_CAPACITY];
+    @NotNull
+    private long[] weights = new long[INITIAL_CAPACITY];
+    // null for SimpleMeta, which is restored from the weight; the array is allocated with the first other meta
+    @Nullable
+    private Object[] metas;
+
+    private int size;
+    private int allocated;
+    private int freeList = NONE;
+    private int head = NONE;
+    private int tail = NONE;
+    private int modCount;
+
+    CompactLruCache(boolean offHeapKeys) {
+        arena = new KeyArena(offHeapKeys, INITIAL_CAPACITY * 16);
+    }
+
+    @Override
+    public Meta putMetaInternal(@NotNull String fileName, @NotNull Meta meta) {
+        byte[] key = KeyArena.encode(fileName);
+        int hash = hash(key);
+        int index = find(key, hash);
+        if (index != NONE) {
+            Meta old = getMeta(index);
+            setMeta(index, meta);
+            moveToTail(index);
+            return old;
+        }
+
+        if ((size + 1) * 4 > table.length * 3) {
+            resizeTable(table.length * 2);
+        }
+        index = allocate();
+        hashes[index] = hash;
+        keyOffsets[index] = arena.append(key);
+        setMeta(index, meta);
+        insert(index);
+        linkLast(index);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public Meta accessInternal(@NotNull String fileName) {
+        byte[] key = KeyArena.encode(fileName);
+        int index = find(key, hash(key));
+        if (index == NONE) {
+            return null;
+        }
+        moveToTail(index);
+        return getMeta(index);
+    }
+
+    @Override
+    public Meta removeInternal(@NotNull String fileName) {
+        byte[] key = KeyArena.encode(fileName);
+        int index = find(key, hash(key));
+        if (index == NONE) {
+            return null;
+        }
+        Meta old = getMeta(index);
+        removeEntry(index);
+        return old;
+    }
+
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEntriesIterator() {
+        return new LruIterator();
+    }
+
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEvictionIterator() {
+        return new LruIterator();
+    }
+
+    @Override
+    public int getEntitiesCount() {
+        return size;
+    }
+
+    @Override
+    public boolean containsInternal(String fileName) {
+        byte[] key = KeyArena.encode(fileName);
+        return find(key, hash(key)) != NONE;
+    }
+
+    private int find(@NotNull byte[] key, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (index == NONE) {
+                return NONE;
+            }
+            if (hashes[index] == hash && arena.equals(keyOffsets[index], key)) {
+                return index;
+            }
+        }
+    }
+
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = hashes[index] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private void removeEntry(int index) {
+        deleteFromTable(index);
+        unlink(index);
+        arena.release(keyOffsets[index]);
+        if (metas != null) {
+            metas[index] = null;
+        }
+        next[index] = freeList;
+        freeList = index;
+        size--;
+        modCount++;
+        if (arena.isFragmented()) {
+            compactArena();
+        }
+    }
+
+    // backward shift deletion, so the table never contains tombstones
+    private void deleteFromTable(int index) {
+        int mask = table.length - 1;
+        int slot = hashes[index] & mask;
+        while (table[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+        int free = slot;
+        for (int current = (slot + 1) & mask; table[current] != 0; current = (current + 1) & mask) {
+            int home = hashes[table[current] - 1] & mask;
+            boolean stays = free <= current ? free < home && home <= current : free < home || home <= current;
+            if (!stays) {
+                table[free] = table[current];
+                free = current;
+            }
+        }
+        table[free] = 0;
+    }
+
+    private void resizeTable(int capacity) {
+        table = new int[capacity];
+        for (int index = head; index != NONE; index = next[index]) {
+            insert(index);
+        }
+    }
+
+    private int allocate() {
+        if (freeList != NONE) {
+            int index = freeList;
+            freeList = next[index];
+            return index;
+        }
+        if (allocated == hashes.length) {
+            int capacity = hashes.length + (hashes.length >> 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            next = Arrays.copyOf(next, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            if (metas != null) {
+                metas = Arrays.copyOf(metas, capacity);
+            }
+        }
+        return allocated++;
+    }
+
+    private void compactArena() {
+        KeyArena compacted = arena.createCompacted();
+        for (int index = head; index != NONE; index = next[index]) {
+            keyOffsets[index] = compacted.copyFrom(arena, keyOffsets[index]);
+        }
+        arena = compacted;
+    }
+
+    private void linkLast(int index) {
+        prev[index] = tail;
+        next[index] = NONE;
+        if (tail == NONE) {
+            head = index;
+        } else {
+            next[tail] = index;
+        }
+        tail = index;
+    }
+
+    private void unlink(int index) {
+        if (prev[index] == NONE) {
+            head = next[index];
+        } else {
+            next[prev[index]] = next[index];
+        }
+        if (next[index] == NONE) {
+            tail = prev[index];
+        } else {
+            prev[next[index]] = prev[index];
+        }
+    }
+
+    private void moveToTail(int index) {
+        if (tail != index) {
+            unlink(index);
+            linkLast(index);
+            modCount++;
+        }
+    }
+
+    private void setMeta(int index, @NotNull Meta meta) {
+        weights[index] = meta instanceof FileMeta ? ((FileMeta) meta).weight() : 0;
+        if (meta.getClass() == SimpleMeta.class) {
+            if (metas != null) {
+                metas[index] = null;
+            }
+            return;
+        }
+        if (metas == null) {
+            metas = new Object[hashes.length];
+        }
+        metas[index] = meta;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Meta getMeta(int index) {
+        Object meta = metas != null ? metas[index] : null;
+        return (Meta) (meta != null ? meta : new SimpleMeta(weights[index]));
+    }
+
+    private static int hash(@NotNull byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private class LruIterator implements Iterator<Map.Entry<String, Meta>> {
+
+        private int nextIndex = head;
+        private int current = NONE;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex != NONE;
+        }
+
+        @Override
+        public Map.Entry<String, Meta> next() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (nextIndex == NONE) {
+                throw new NoSuchElementException();
+            }
+            current = nextIndex;
+            nextIndex = next[current];
+            return new AbstractMap.SimpleImmutableEntry<>(arena.read(keyOffsets[current]), getMeta(current));
+        }
+
+        @Override
+        public void remove() {
+            if (current == NONE) {
+                throw new IllegalStateException();
+            }
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeEntry(current);
+            current = NONE;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps the journal size statistics and decides when the journal is worth compacting. Compacting once the
+ * garbage is G bytes, with L bytes of live entries, writes (G + L) bytes per G bytes of logged lines, so
+ * the write amplification stays under W while G * (W - 1) >= L.
+ */
+class CompactionScheduler {
+
+    // the time between compactions is at least so many times longer than the last compaction
+    static final int MIN_INTERVAL_TO_COST = 10;
+
+    private final double writeAmplification;
+    private final long minGarbageBytes;
+    private final long maxGarbageBytes;
+
+    private long appendedBytes;
+    private long compactionBytes;
+    private int compactionCount;
+    private long compactionNanos;
+    private long journalBytes;
+    private double entryBytes;
+    private int droppedRecords;
+    private long droppedBytes;
+
+    private long lastCompactionNanos;
+    private long lastCompactionEnd = System.nanoTime();
+
+    CompactionScheduler(double writeAmplification, long minGarbageBytes, long maxGarbageBytes) {
+        this.writeAmplification = writeAmplification;
+        this.minGarbageBytes = minGarbageBytes;
+        this.maxGarbageBytes = maxGarbageBytes;
+    }
+
+    void onAppend(long bytes) {
+        appendedBytes += bytes;
+        journalBytes += bytes;
+    }
+
+    void onPut(long bytes) {
+        entryBytes = entryBytes == 0 ? bytes : entryBytes * 0.99 + bytes * 0.01;
+    }
+
+    void onOpen(long bytes, int lines) {
+        journalBytes = bytes;
+        if (entryBytes == 0 && lines > 0) {
+            entryBytes = (double) bytes / lines;
+        }
+    }
+
+    void onSalvage(int records, long bytes) {
+        droppedRecords += records;
+        droppedBytes += bytes;
+    }
+
+    /**
+     * @param snapshotBytes bytes of the live entries, the new journal may also contain the lines logged during
+     *                      the compaction
+     */
+    void onCompaction(long snapshotBytes, long bytes, int entries, long nanos) {
+        compactionCount++;
+        compactionBytes += bytes;
+        compactionNanos += nanos;
+        journalBytes = bytes;
+        if (entries > 0) {
+            entryBytes = (double) snapshotBytes / entries;
+        }
+        lastCompactionNanos = nanos;
+        lastCompactionEnd = System.nanoTime();
+    }
+
+    boolean shouldCompact(int entries) {
+        long live = getLiveBytes(entries);
+        long garbage = journalBytes - live;
+        if (garbage < minGarbageBytes) {
+            return false;
+        }
+        if (garbage >= maxGarbageBytes) {
+            return true;
+        }
+        if (garbage * (writeAmplification - 1) < live) {
+            return false;
+        }
+        return System.nanoTime() - lastCompactionEnd >= lastCompactionNanos * MIN_INTERVAL_TO_COST;
+    }
+
+    @NotNull
+    JournalStats getStats(int entries) {
+        return new JournalStats(appendedBytes, compactionBytes, compactionCount, compactionNanos,
+                journalBytes, getLiveBytes(entries), droppedRecords, droppedBytes);
+    }
+
+    private long getLiveBytes(int entries) {
+        return (long) (entries * entryBytes);
+    }
+}
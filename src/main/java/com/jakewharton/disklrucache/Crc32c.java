@@ -0,0 +1,71 @@
+package com.jakewharton.disklrucache;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), which java.util.zip has only since Java 9. Slicing-by-8: eight bytes are processed
+ * per step with eight lookup tables.
+ */
+class Crc32c implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLES[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int table = 1; table < 8; table++) {
+                int previous = TABLES[table - 1][i];
+                TABLES[table][i] = (previous >>> 8) ^ TABLES[0][previous & 0xFF];
+            }
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int crc = this.crc;
+        int end = offset + length;
+        for (; offset + 8 <= end; offset += 8) {
+            int low = crc ^ ((bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                    | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24);
+            crc = t7[low & 0xFF] ^ t6[(low >>> 8) & 0xFF] ^ t5[(low >>> 16) & 0xFF] ^ t4[low >>> 24]
+                    ^ t3[bytes[offset + 4] & 0xFF] ^ t2[bytes[offset + 5] & 0xFF]
+                    ^ t1[bytes[offset + 6] & 0xFF] ^ t0[bytes[offset + 7] & 0xFF];
+        }
+        for (; offset < end; offset++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ bytes[offset]) & 0xFF];
+        }
+        this.crc = crc;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    static int compute(byte[] bytes, int offset, int length) {
+        Crc32c crc = new Crc32c();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
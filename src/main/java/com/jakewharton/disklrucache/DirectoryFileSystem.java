@@ -8,14 +8,21 @@ class DirectoryFileSystem implements VirtualFileSystem {
 
     @NotNull
     private final File baseDir;
+    @NotNull
+    private final CacheOptions options;
 
     public DirectoryFileSystem(@NotNull File baseDir) {
+        this(baseDir, new CacheOptions());
+    }
+
+    public DirectoryFileSystem(@NotNull File baseDir, @NotNull CacheOptions options) {
         this.baseDir = baseDir;
+        this.options = options;
     }
 
     @NotNull
     @Override
     public VirtualFile get(@NotNull String name) {
-        return new RealFile(new File(baseDir, name));
+        return new RealFile(new File(baseDir, name), options);
     }
 }
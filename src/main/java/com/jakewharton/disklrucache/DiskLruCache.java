@@ -3,112 +3,1041 @@ package com.jakewharton.disklrucache;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static com.jakewharton.disklrucache.RealFile.*;
+import static com.jakewharton.disklrucache.Util.closeQuietly;
 import static com.jakewharton.disklrucache.Util.ensureExists;
 
 public class DiskLruCache<Meta extends FileMeta> {
 
+    private static final Logger LOG = Logger.getLogger(DiskLruCache.class.getName());
+
+    // the cache lock is released between the chunks of the replayed journal lines during the warm-up
+    static final int REPLAY_CHUNK_LINES = 1024;
+    // the accesses after this number are not queued during the warm-up
+    static final int MAX_PENDING_ACCESSES = 64 * 1024;
+    // the compaction of a pack segment relocates its entries under the cache lock in chunks of this size
+    static final int PACK_COMPACTION_CHUNK_BYTES = 256 * 1024;
+
     @NotNull
     private final Journal<Meta> journal;
     @NotNull
-    final LinkedMapLruCache<Meta> cache;
+    final CacheInternalAccess<Meta> cache;
     @NotNull
     private final File baseDir;
     @NotNull
     private final File backupDir;
     @NotNull
     private final File journalDir;
+    // the files of the open editors, on the same file system as the cache files
+    @NotNull
+    private final File editDir;
+    // the layout of the files in the base and the backup directories
+    @NotNull
+    private final FileLayout layout;
 
-    private final long maxWeight;
+    @Nullable
+    private final TinyLfuCache<Meta> admission;
+    @Nullable
+    private final MemoryTier memory;
+    // the contents of small entries, packed into segment files
+    @Nullable
+    private final PackStore packs;
+    // null if the pack segments are compacted by the operation, which queues them
+    @Nullable
+    private final Executor packCompactor;
+    private volatile boolean closed;
+
+    private volatile long maxWeight;
     final AtomicLong weight = new AtomicLong(0);
 
+    // lock-free reads only: a concurrent copy of the keys and the accesses not applied to the LRU order yet;
+    // a key is published once its file is in place, the replaced entries are looked up under the lock
+    @Nullable
+    private final Set<String> keys;
+    @Nullable
+    private final Set<String> replacing;
+    @Nullable
+    private final ReadBuffer readBuffer;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final List<String> drained = new ArrayList<>();
+
+    // warm-up only: the operations to apply to the index and the journal once it is replayed, and whether
+    // the files they touched exist now
+    private volatile boolean warmingUp;
+    // the journal is opened for the replay by startWarmUp()
+    private boolean replayStarted;
+    @Nullable
+    private List<PendingOperation<Meta>> pending;
+    @Nullable
+    private Map<String, Boolean> pendingFiles;
+    private int pendingAccesses;
+
+    // the mapped entries and the removed ones, whose files are deleted once the last handle is released
+    private final Map<String, Mapping> mappings = new HashMap<>();
+    private final Map<String, Mapping> deferredDeletes = new HashMap<>();
+
     public DiskLruCache(@NotNull File cacheDir, long maxWeight) {
+        this(cacheDir, maxWeight, new CacheOptions());
+    }
+
+    public DiskLruCache(@NotNull File cacheDir, long maxWeight, @NotNull CacheOptions options) {
         this(new File(cacheDir, "journal"),
                 new File(cacheDir, "files"),
                 new File(cacheDir, "backup"),
-                maxWeight);
+                new File(cacheDir, "edit"),
+                new File(cacheDir, "packs"),
+                maxWeight,
+                options);
+    }
+
+    DiskLruCache(@NotNull File journalDir, @NotNull File baseDir, @NotNull File backupDir,
+                 @NotNull File editDir, @NotNull File packDir, long maxWeight) {
+        this(journalDir, baseDir, backupDir, editDir, packDir, maxWeight, new CacheOptions());
     }
 
-    DiskLruCache(@NotNull File journalDir, @NotNull File baseDir,
-                 @NotNull File backupDir, long maxWeight) {
+    DiskLruCache(@NotNull File journalDir, @NotNull File baseDir, @NotNull File backupDir,
+                 @NotNull File editDir, @NotNull File packDir, long maxWeight, @NotNull CacheOptions options) {
         this.journalDir = journalDir;
         this.baseDir = baseDir;
         this.backupDir = backupDir;
-        this.cache = new LinkedMapLruCache<>();
-        this.journal = new Journal<>(cache, new DirectoryFileSystem(journalDir));
+        this.editDir = editDir;
+        layout = FileLayout.of(options.getFileLayoutLevels(), options.getFileLayoutFanOut());
+        CacheInternalAccess<Meta> policyCache = options.getEvictionPolicy().createCache();
+        if (options.isAdmissionFilter()) {
+            admission = new TinyLfuCache<>(policyCache, options.getAdmissionExpectedEntries(),
+                    options.getAdmissionWindowShare());
+            admission.setMaxWeight(maxWeight);
+            this.cache = admission;
+        } else {
+            admission = null;
+            this.cache = policyCache;
+        }
+        this.journal = new Journal<>(cache, new DirectoryFileSystem(journalDir, options), options);
         this.maxWeight = maxWeight;
+        if (options.isMemoryTier()) {
+            memory = new MemoryTier(options.getMemoryTierMaxBytes(), options.getMemoryTierMaxEntrySize(),
+                    options.isMemoryTierDirect());
+        } else {
+            memory = null;
+        }
+        if (options.isPackStorage()) {
+            packs = new PackStore(packDir, options.getPackMaxEntrySize(), options.getPackSegmentSize(),
+                    options.getPackMaxDeadShare());
+        } else {
+            packs = null;
+        }
+        packCompactor = options.getCompactionExecutor();
+        if (options.isLockFreeReads()) {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            replacing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            readBuffer = new ReadBuffer();
+        } else {
+            keys = null;
+            replacing = null;
+            readBuffer = null;
+        }
     }
 
     public synchronized void init() throws IOException {
         initDirectories();
+        clearEditDir();
         journal.initJournal();
+        migrateLayout();
+        initKeys();
         initFiles();
+        dropMissingFiles();
+        initPacks();
         initSize();
         checkSize();
     }
 
+    // after the call the operations are served without the index, until warmUp() replays the journal. If the
+    // journal records another layout, the files can't be found by their names before they are moved, so this
+    // call does the whole init and warmUp() has nothing to do
+    synchronized void startWarmUp() throws IOException {
+        if (packs != null) {
+            throw new IllegalStateException("Packed entries can't be served before the journal is replayed");
+        }
+        initDirectories();
+        clearEditDir();
+        boolean replay = journal.startReplay();
+        if (!journal.getLayout().equals(layout)) {
+            if (replay) {
+                while (!journal.replay(Integer.MAX_VALUE)) {
+                    // replays everything at once
+                }
+            }
+            migrateLayout();
+            initKeys();
+            initFiles();
+            dropMissingFiles();
+            initSize();
+            checkSize();
+            return;
+        }
+        replayStarted = replay;
+        pending = new ArrayList<>();
+        pendingFiles = new HashMap<>();
+        pendingAccesses = 0;
+        warmingUp = true;
+    }
+
+    // replays the journal in chunks, so the operations aren't blocked for the whole replay, and applies the
+    // operations queued meanwhile
+    void warmUp() throws IOException {
+        if (!warmingUp) {
+            return;
+        }
+        boolean done = false;
+        try {
+            boolean replayed = !replayStarted;
+            while (!replayed) {
+                synchronized (this) {
+                    replayed = journal.replay(REPLAY_CHUNK_LINES);
+                }
+            }
+            synchronized (this) {
+                // the layout is migrated by startWarmUp() already
+                initKeys();
+                initFiles();
+                dropMissingFiles();
+                initSize();
+                applyPending();
+                checkSize();
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    pending = null;
+                    pendingFiles = null;
+                    warmingUp = false;
+                }
+            }
+        }
+    }
+
+    private void applyPending() throws IOException {
+        List<PendingOperation<Meta>> operations = pending;
+        pending = null;
+        pendingFiles = null;
+        warmingUp = false;
+        for (PendingOperation<Meta> operation : operations) {
+            String fileName = operation.fileName;
+            switch (operation.type) {
+                case PUT: {
+                    Meta old = cache.putMetaInternal(fileName, operation.meta);
+                    if (keys != null) {
+                        keys.add(fileName);
+                    }
+                    changeSize(operation.meta, old);
+                    journal.put(fileName, operation.meta, old != null);
+                    break;
+                }
+                case RENEW: {
+                    if (cache.containsInternal(fileName)) {
+                        changeSize(operation.meta, cache.putMetaInternal(fileName, operation.meta));
+                        journal.put(fileName, operation.meta, false);
+                    }
+                    break;
+                }
+                case REMOVE: {
+                    Meta old = cache.removeInternal(fileName);
+                    if (old != null) {
+                        if (keys != null) {
+                            keys.remove(fileName);
+                        }
+                        journal.remove(fileName);
+                        changeSize(null, old);
+                    }
+                    break;
+                }
+                case ACCESS: {
+                    if (cache.containsInternal(fileName)) {
+                        cache.accessInternal(fileName);
+                        journal.access(fileName, false);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
     public synchronized void close() {
+        try {
+            drainReadBuffer();
+        } catch (IOException e) {
+            //e.printStackTrace();//TODO log
+        }
+        closed = true;
         journal.close();
+        if (packs != null) {
+            packs.close();
+        }
     }
 
-    public synchronized void renewMeta(@NotNull String fileName, @NotNull Meta meta) throws IOException {
-        Meta old = cache.putMetaInternal(fileName, meta);
-        if (old == null) {
-            throw new IllegalArgumentException("It is supposed, that file exists in cache: " + fileName);
+    public void renewMeta(@NotNull String fileName, @NotNull Meta meta) throws IOException {
+        synchronized (this) {
+            if (warmingUp) {
+                if (!existsWhileWarmingUp(fileName)) {
+                    throw new IllegalArgumentException("It is supposed, that file exists in cache: " + fileName);
+                }
+                invalidateMemory(fileName);
+                pending.add(new PendingOperation<>(PendingOperation.Type.RENEW, fileName, meta));
+                return;
+            }
+            drainReadBuffer();
+            if (packs != null && packs.get(fileName) != null) {
+                meta = packed(packs.renew(fileName, meta));
+            }
+            Meta old = cache.putMetaInternal(fileName, meta);
+            if (old == null) {
+                throw new IllegalArgumentException("It is supposed, that file exists in cache: " + fileName);
+            }
+            invalidateMemory(fileName);
+            changeSize(meta, old);
+            putJournal(fileName, meta, false);
         }
-        changeSize(meta, old);
-        putJournal(fileName, meta, false);
+        awaitJournal();
     }
 
-    public synchronized void put(@NotNull File file, @NotNull String newName, @NotNull Meta meta) throws IOException {
-        File newFile = new File(baseDir, newName);
-        File backupFile = null;
-        if (newFile.exists()) {
-            backupFile = new File(backupDir, newName);
-            rename(newFile, backupFile);
+    /**
+     * Moves the file into the cache. With the admission filter the new entry may be rejected, then the file
+     * is left where it is. Entries put during the warm-up are always admitted. With the pack storage a small
+     * file is appended to a pack segment and deleted.
+     *
+     * @return false if the entry was not admitted
+     */
+    public boolean put(@NotNull File file, @NotNull String newName, @NotNull Meta meta) throws IOException {
+        synchronized (this) {
+            if (warmingUp) {
+                putWhileWarmingUp(file, newName, meta);
+                return true;
+            }
+            drainReadBuffer();
+            if (admission != null && !cache.containsInternal(newName)
+                    && !admission.admit(newName, weight.get() + meta.weight() - maxWeight)) {
+                cache.accessInternal(newName);
+                rejectJournal(newName);
+                return false;
+            }
+            if (packs != null && file.length() <= packs.getMaxEntrySize()) {
+                putPacked(file, newName, meta);
+            } else {
+                putFile(file, newName, meta);
+            }
         }
+        awaitJournal();
+        return true;
+    }
 
-        Meta old = cache.putMetaInternal(newName, meta);
-        changeSize(meta, old);
-        putJournal(newName, meta, old != null);
+    private void putFile(@NotNull File file, @NotNull String newName, @NotNull Meta meta) throws IOException {
+        StagedFile staged = stageFile(file, newName, meta, null);
 
         //TODO we have inconsistent result here (meta and file doesn't match)
         //(if the following line will not be executed)
         //looks like he only thing we can do - document it
         //another way - use last modified file timestamp as version marker
-        rename(file, newFile);
-        deleteIfExists(backupFile);
+        finishFile(staged);
     }
 
-    public synchronized @Nullable File find(@NotNull String fileName) throws IOException {
-        if (cache.containsInternal(fileName)) {
-            cache.accessInternal(fileName);
-            accessJournalDefaultRebuild(fileName);
-            return new File(baseDir, fileName);
+    // the first half of a put: the old file is moved aside, so that init restores it, unless the journal has
+    // the new entry, and the new entry is logged; a batch logs it with the rest and evicts after all of its puts
+    @NotNull
+    private StagedFile stageFile(@NotNull File file, @NotNull String newName, @NotNull Meta meta,
+                                 @Nullable JournalBatch batch) throws IOException {
+        File newFile = file(newName);
+        File backupFile = null;
+        if (newFile.exists()) {
+            if (replacing != null) {
+                replacing.add(newName);
+            }
+            backupFile = layout.file(backupDir, newName);
+            renameInto(newFile, backupFile);
+        }
+
+        Meta old = cache.putMetaInternal(newName, meta);
+        changeSize(meta, old);
+        if (batch != null) {
+            batch.put(newName, meta, old != null);
+        } else {
+            putJournal(newName, meta, old != null);
+        }
+        return new StagedFile(file, newName, newFile, backupFile, old instanceof PackedMeta);
+    }
+
+    // the second half of a put, once the entry is logged: the file is moved into place and the key is published
+    // to the lock-free reads, unless the entry is evicted already
+    private void finishFile(@NotNull StagedFile staged) throws IOException {
+        if (cache.containsInternal(staged.fileName)) {
+            renameInto(staged.file, staged.newFile);
+        } else {
+            // evicted by the put itself, the file would be left outside of the index
+            delete(staged.file);
+        }
+        if (keys != null) {
+            if (cache.containsInternal(staged.fileName)) {
+                keys.add(staged.fileName);
+            }
+            replacing.remove(staged.fileName);
+        }
+        invalidate(staged.fileName);
+        deleteIfExists(staged.backupFile);
+        if (staged.replacesPacked) {
+            packs.remove(staged.fileName);
+            checkPacks();
+        }
+    }
+
+    private void putPacked(@NotNull File file, @NotNull String newName, @NotNull Meta meta) throws IOException {
+        stagePacked(file, newName, meta, null);
+        delete(file);
+        checkPacks();
+    }
+
+    // the content is in the pack segment before the entry is logged, so the file is deleted after that
+    private void stagePacked(@NotNull File file, @NotNull String newName, @NotNull Meta meta,
+                             @Nullable JournalBatch batch) throws IOException {
+        Meta packed = packed(packs.append(newName, file, meta));
+        Meta old = cache.putMetaInternal(newName, packed);
+        if (keys != null) {
+            keys.add(newName);
+        }
+        if (old != null && !(old instanceof PackedMeta)) {
+            deleteFile(newName);
+        } else {
+            invalidateMemory(newName);
+            mappings.remove(newName);
+        }
+        changeSize(packed, old);
+        if (batch != null) {
+            batch.put(newName, packed, old != null);
+        } else {
+            putJournal(newName, packed, old != null);
+        }
+    }
+
+    /**
+     * Moves the files of the batch into the cache under one lock, logs the entries with one journal commit,
+     * then moves the files into place and evicts once at the end. The entries are put in the order of the
+     * batch, the admission filter may reject some of them, then their files are left where they are.
+     *
+     * @param atomic whether the journal replay should apply the whole batch or none of it after a crash
+     * @return the keys of the rejected entries
+     */
+    @NotNull
+    public List<String> putAll(@NotNull PutBatch<Meta> batch, boolean atomic) throws IOException {
+        List<String> rejected = new ArrayList<>();
+        synchronized (this) {
+            if (warmingUp) {
+                for (int i = 0; i < batch.size(); i++) {
+                    putWhileWarmingUp(batch.files.get(i), batch.fileNames.get(i), batch.metas.get(i));
+                }
+                return rejected;
+            }
+            drainReadBuffer();
+            List<StagedFile> staged = new ArrayList<>(batch.size());
+            List<File> packed = new ArrayList<>();
+            JournalBatch journalBatch = new JournalBatch(atomic);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    File file = batch.files.get(i);
+                    String newName = batch.fileNames.get(i);
+                    Meta meta = batch.metas.get(i);
+                    if (admission != null && !cache.containsInternal(newName)
+                            && !admission.admit(newName, weight.get() + meta.weight() - maxWeight)) {
+                        cache.accessInternal(newName);
+                        journalBatch.reject(newName);
+                        rejected.add(newName);
+                    } else if (packs != null && file.length() <= packs.getMaxEntrySize()) {
+                        stagePacked(file, newName, meta, journalBatch);
+                        packed.add(file);
+                    } else {
+                        staged.add(stageFile(file, newName, meta, journalBatch));
+                    }
+                }
+            } finally {
+                try {
+                    putAllJournal(journalBatch);
+                } finally {
+                    // the index has the staged entries anyway
+                    for (StagedFile file : staged) {
+                        finishFile(file);
+                    }
+                    for (File file : packed) {
+                        delete(file);
+                    }
+                }
+            }
+        }
+        awaitJournal();
+        return rejected;
+    }
+
+    /**
+     * Starts writing a new version of the entry into a file managed by the cache. Nothing is visible until
+     * the editor is committed, the concurrent editors of the same entry are allowed and the last commit wins.
+     */
+    @NotNull
+    public Editor edit(@NotNull String fileName) throws IOException {
+        ensureExists(editDir);
+        return new Editor(fileName, File.createTempFile("edit", ".tmp", editDir));
+    }
+
+    /**
+     * Opens the entry for reading and counts it as an access. The snapshot stays readable, even if the entry
+     * is replaced, removed or evicted meanwhile, as long as the platform allows that for open files.
+     *
+     * @return null if there is no such entry
+     */
+    @Nullable
+    public Snapshot get(@NotNull String fileName) throws IOException {
+        Object location = locate(fileName);
+        if (location == null) {
+            return null;
+        }
+        if (location instanceof PackedMeta) {
+            ByteBuffer content = readPacked((PackedMeta) location);
+            return content != null ? new Snapshot(fileName, content) : null;
+        }
+        return open(fileName, (File) location);
+    }
+
+    /**
+     * Reads the whole entry and counts it as an access. With the memory tier small hot entries are served from
+     * the memory without opening the file.
+     *
+     * @return a read-only buffer or null if there is no such entry
+     */
+    @Nullable
+    public ByteBuffer read(@NotNull String fileName) throws IOException {
+        // taken before the lookup, so a replacement after it keeps the content read here out of the memory
+        long generation = memory != null ? memory.generation() : 0;
+        Object location = locate(fileName);
+        if (location == null) {
+            return null;
+        }
+        if (memory != null) {
+            ByteBuffer content = memory.get(fileName);
+            if (content != null) {
+                return content;
+            }
+        }
+        ByteBuffer content;
+        if (location instanceof PackedMeta) {
+            content = readPacked((PackedMeta) location);
+            if (content == null) {
+                return null;
+            }
         } else {
+            content = readFile(fileName, (File) location);
+            if (content == null) {
+                return null;
+            }
+        }
+        if (memory != null) {
+            memory.put(fileName, content, generation);
+        }
+        return content.asReadOnlyBuffer();
+    }
+
+    @Nullable
+    private ByteBuffer readFile(@NotNull String fileName, @NotNull File file) throws IOException {
+        Snapshot snapshot = open(fileName, file);
+        if (snapshot == null) {
             return null;
         }
+        ByteBuffer content;
+        try {
+            SeekableByteChannel channel = snapshot.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Entry is too big to be read at once: " + fileName);
+            }
+            content = ByteBuffer.allocate((int) size);
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0) {
+                    break;
+                }
+            }
+            content.flip();
+        } finally {
+            snapshot.close();
+        }
+        return content;
+    }
+
+    @Nullable
+    private ByteBuffer readPacked(@NotNull PackedMeta meta) throws IOException {
+        try {
+            return packs.read(meta);
+        } catch (FileNotFoundException e) {
+            // removed after the lookup and its segment compacted
+            return null;
+        }
+    }
+
+    /**
+     * Drops the memory tier, e.g. when the application is asked to free memory.
+     */
+    public void trimMemory() {
+        if (memory != null) {
+            memory.clear();
+        }
+    }
+
+    @Nullable
+    private Snapshot open(@NotNull String fileName, @NotNull File file) throws IOException {
+        try {
+            return new Snapshot(fileName, new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            // the file was replaced or removed after the lookup, the lock waits for a replacement to finish
+            synchronized (this) {
+                if (!contains(fileName)) {
+                    return null;
+                }
+                return new Snapshot(fileName, new FileInputStream(file));
+            }
+        }
+    }
+
+    /**
+     * Transfers a range of the entry with {@link FileChannel#transferTo}, so the kernel may send it to a
+     * socket without copying it through the heap. The entry is accessed once and stays readable for the whole
+     * transfer, even if it is evicted meanwhile. A non-blocking target may accept less than the range.
+     *
+     * @return the number of the transferred bytes, or -1 if there is no such entry
+     */
+    public long transferTo(@NotNull String fileName, @NotNull WritableByteChannel target, long offset, long count)
+            throws IOException {
+        if (offset < 0 || count < 0) {
+            throw new IllegalArgumentException("Wrong range: " + offset + ", " + count);
+        }
+        Object location = locate(fileName);
+        if (location == null) {
+            return -1;
+        }
+        if (location instanceof PackedMeta) {
+            try {
+                return packs.transferTo((PackedMeta) location, target, offset, count);
+            } catch (FileNotFoundException e) {
+                return -1;
+            }
+        }
+        Snapshot snapshot = open(fileName, (File) location);
+        if (snapshot == null) {
+            return -1;
+        }
+        try {
+            // the packed entries are transferred by the pack storage
+            FileChannel channel = (FileChannel) snapshot.getChannel();
+            long end = offset + Math.min(count, Math.max(channel.size() - offset, 0));
+            long position = offset;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position - offset;
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Maps the entry into the memory and counts it as an access. The mapping is kept for the following calls
+     * until the entry is replaced or removed, so reading a hot entry doesn't need system calls. The file of
+     * a removed or evicted entry is deleted once its last handle is closed.
+     *
+     * @return null if there is no such entry
+     */
+    @Nullable
+    public MappedEntry map(@NotNull String fileName) throws IOException {
+        if (locate(fileName) == null) {
+            return null;
+        }
+        synchronized (this) {
+            Mapping mapping = mappings.get(fileName);
+            if (mapping == null) {
+                // removed after the lookup
+                if (!contains(fileName)) {
+                    return null;
+                }
+                // the entry may have been replaced after the lookup too
+                Object location = location(fileName);
+                if (location instanceof PackedMeta) {
+                    mapping = new Mapping(fileName, packs.map((PackedMeta) location));
+                } else {
+                    RandomAccessFile input = new RandomAccessFile((File) location, "r");
+                    try {
+                        FileChannel channel = input.getChannel();
+                        mapping = new Mapping(fileName,
+                                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                    } finally {
+                        input.close();
+                    }
+                }
+                mappings.put(fileName, mapping);
+            }
+            mapping.references++;
+            return new MappedEntry(mapping);
+        }
+    }
+
+    /**
+     * Looks the entry up and counts it as an access. With the pack storage the small entries have no files,
+     * so null is returned for them too; {@link #get}, {@link #read} and {@link #transferTo} read any entry.
+     */
+    public @Nullable File find(@NotNull String fileName) throws IOException {
+        Object location = locate(fileName);
+        return location instanceof File ? (File) location : null;
+    }
+
+    // the file of a standalone entry or the meta of a packed one, null if there is no such entry
+    @Nullable
+    private Object locate(@NotNull String fileName) throws IOException {
+        if (warmingUp) {
+            synchronized (this) {
+                if (warmingUp) {
+                    return findWhileWarmingUp(fileName);
+                }
+            }
+        }
+        if (keys != null) {
+            return findLockFree(fileName);
+        }
+        Object location;
+        synchronized (this) {
+            if (!cache.containsInternal(fileName)) {
+                if (admission != null) {
+                    // misses are counted too, but aren't journaled
+                    cache.accessInternal(fileName);
+                }
+                return null;
+            }
+            cache.accessInternal(fileName);
+            accessJournalDefaultRebuild(fileName);
+            location = location(fileName);
+        }
+        awaitJournal();
+        return location;
+    }
+
+    @NotNull
+    private Object location(@NotNull String fileName) {
+        if (packs != null) {
+            PackedMeta meta = packs.get(fileName);
+            if (meta != null) {
+                return meta;
+            }
+        }
+        return file(fileName);
     }
 
-    public synchronized boolean remove(@NotNull String fileName) throws IOException {
-        Meta old = cache.removeInternal(fileName);
-        if (old != null) {
+    @NotNull
+    private File file(@NotNull String fileName) {
+        return layout.file(baseDir, fileName);
+    }
+
+    // the shard directories are created on the first failed rename into them
+    private static void renameInto(@NotNull File file, @NotNull File target) throws IOException {
+        if (!file.renameTo(target)) {
+            ensureExists(target.getParentFile());
+            rename(file, target);
+        }
+    }
+
+    public boolean remove(@NotNull String fileName) throws IOException {
+        synchronized (this) {
+            if (warmingUp) {
+                return removeWhileWarmingUp(fileName);
+            }
+            drainReadBuffer();
+            Meta old = cache.removeInternal(fileName);
+            if (old == null) {
+                return false;
+            }
+            if (keys != null) {
+                keys.remove(fileName);
+            }
             removeJournal(fileName);
-            deleteIfExists(new File(baseDir, fileName));
+            deleteFile(fileName);
             changeSize(null, old);
-            return true;
+            if (old instanceof PackedMeta) {
+                packs.remove(fileName);
+                checkPacks();
+            }
+        }
+        awaitJournal();
+        return true;
+    }
+
+    /**
+     * Removes the entries under one lock with one journal commit, the files are deleted after the commit.
+     *
+     * @param atomic whether the journal replay should apply the whole batch or none of it after a crash
+     * @return the number of the removed entries
+     */
+    public int removeAll(@NotNull Collection<String> fileNames, boolean atomic) throws IOException {
+        int count = 0;
+        synchronized (this) {
+            if (warmingUp) {
+                for (String fileName : fileNames) {
+                    if (removeWhileWarmingUp(fileName)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            drainReadBuffer();
+            Map<String, Meta> removed = new LinkedHashMap<>();
+            JournalBatch journalBatch = new JournalBatch(atomic);
+            try {
+                for (String fileName : fileNames) {
+                    Meta old = cache.removeInternal(fileName);
+                    if (old != null) {
+                        if (keys != null) {
+                            keys.remove(fileName);
+                        }
+                        journalBatch.remove(fileName);
+                        changeSize(null, old);
+                        removed.put(fileName, old);
+                    }
+                }
+            } finally {
+                removeAllJournal(journalBatch);
+            }
+            for (Map.Entry<String, Meta> entry : removed.entrySet()) {
+                deleteFile(entry.getKey());
+                if (entry.getValue() instanceof PackedMeta) {
+                    packs.remove(entry.getKey());
+                }
+            }
+            checkPacks();
+            count = removed.size();
+        }
+        awaitJournal();
+        return count;
+    }
+
+    /**
+     * Looks the entries up under one lock and logs the accesses with one journal commit. Like
+     * {@link #find(String)} it skips the packed entries.
+     *
+     * @return the files of the found entries in the order of the keys
+     */
+    @NotNull
+    public Map<String, File> findAll(@NotNull Collection<String> fileNames) throws IOException {
+        Map<String, File> found = new LinkedHashMap<>();
+        if (warmingUp) {
+            for (String fileName : fileNames) {
+                File file = find(fileName);
+                if (file != null) {
+                    found.put(fileName, file);
+                }
+            }
+            return found;
+        }
+        synchronized (this) {
+            drainReadBuffer();
+            List<String> hits = new ArrayList<>();
+            for (String fileName : fileNames) {
+                if (!cache.containsInternal(fileName)) {
+                    if (admission != null) {
+                        cache.accessInternal(fileName);
+                    }
+                    continue;
+                }
+                cache.accessInternal(fileName);
+                hits.add(fileName);
+                Object location = location(fileName);
+                if (location instanceof File) {
+                    found.put(fileName, (File) location);
+                }
+            }
+            accessAllJournal(hits);
+        }
+        awaitJournal();
+        return found;
+    }
+
+    /**
+     * Checks the entry without counting an access. Unlike {@link #find(String)} it is true for the packed
+     * entries too, so a null from find doesn't mean that the entry is missing.
+     */
+    public boolean contains(@NotNull String fileName) {
+        if (warmingUp) {
+            synchronized (this) {
+                if (warmingUp) {
+                    return existsWhileWarmingUp(fileName);
+                }
+            }
+        }
+        if (keys != null) {
+            return keys.contains(fileName);
+        }
+        synchronized (this) {
+            return cache.containsInternal(fileName);
+        }
+    }
+
+    private boolean removeWhileWarmingUp(@NotNull String fileName) throws IOException {
+        boolean exists = existsWhileWarmingUp(fileName);
+        deleteFile(fileName);
+        pending.add(new PendingOperation<Meta>(PendingOperation.Type.REMOVE, fileName, null));
+        pendingFiles.put(fileName, false);
+        return exists;
+    }
+
+    private void putWhileWarmingUp(@NotNull File file, @NotNull String newName, @NotNull Meta meta)
+            throws IOException {
+        File newFile = file(newName);
+        // a crash may have left the backup of an older put, which init would restore over this one
+        File backupFile = layout.file(backupDir, newName);
+        deleteIfExists(backupFile);
+        if (newFile.exists()) {
+            renameInto(newFile, backupFile);
+        } else {
+            backupFile = null;
+        }
+        pending.add(new PendingOperation<>(PendingOperation.Type.PUT, newName, meta));
+        pendingFiles.put(newName, true);
+        renameInto(file, newFile);
+        invalidate(newName);
+        deleteIfExists(backupFile);
+    }
+
+    @Nullable
+    private File findWhileWarmingUp(@NotNull String fileName) {
+        if (!existsWhileWarmingUp(fileName)) {
+            return null;
         }
-        return false;
+        if (pendingAccesses < MAX_PENDING_ACCESSES) {
+            pendingAccesses++;
+            pending.add(new PendingOperation<Meta>(PendingOperation.Type.ACCESS, fileName, null));
+        }
+        return file(fileName);
     }
 
-    public synchronized boolean contains(@NotNull String fileName) {
-        return cache.containsInternal(fileName);
+    // the queued operations know best, then the replayed part of the index, then the file on the disk
+    private boolean existsWhileWarmingUp(@NotNull String fileName) {
+        Boolean exists = pendingFiles.get(fileName);
+        if (exists != null) {
+            return exists;
+        }
+        return cache.containsInternal(fileName) || file(fileName).exists();
+    }
+
+    @Nullable
+    private Object findLockFree(@NotNull String fileName) throws IOException {
+        if (!keys.contains(fileName)) {
+            return null;
+        }
+        if (readBuffer.offer(fileName) && draining.compareAndSet(false, true)) {
+            try {
+                synchronized (this) {
+                    drainReadBuffer();
+                }
+            } finally {
+                draining.set(false);
+            }
+            awaitJournal();
+        }
+        if (replacing.contains(fileName)) {
+            // the old file may be moved aside already, the lock waits for the new one
+            synchronized (this) {
+                return cache.containsInternal(fileName) ? location(fileName) : null;
+            }
+        }
+        return location(fileName);
+    }
+
+    // applies the buffered accesses to the LRU order and logs them with a single journal commit
+    private void drainReadBuffer() throws IOException {
+        if (readBuffer == null) {
+            return;
+        }
+        readBuffer.drainTo(drained);
+        try {
+            Iterator<String> iterator = drained.iterator();
+            while (iterator.hasNext()) {
+                String fileName = iterator.next();
+                if (cache.containsInternal(fileName)) {
+                    cache.accessInternal(fileName);
+                } else {
+                    iterator.remove();
+                }
+            }
+            if (!drained.isEmpty()) {
+                accessAllJournal(drained);
+            }
+        } finally {
+            drained.clear();
+        }
+    }
+
+    @NotNull
+    public synchronized JournalStats getJournalStats() {
+        return journal.getStats();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) throws IOException {
+        synchronized (this) {
+            this.maxWeight = maxWeight;
+            if (admission != null) {
+                admission.setMaxWeight(maxWeight);
+            }
+            if (!warmingUp) {
+                resizeJournal();
+            }
+        }
+        awaitJournal();
+    }
+
+    // called without the cache lock, so with group commit concurrent operations share one journal commit
+    protected void awaitJournal() throws IOException {
+        journal.awaitCommit();
     }
 
     //TODO document that you can't use journal operations without synchronization
@@ -117,6 +1046,11 @@ public class DiskLruCache<Meta extends FileMeta> {
         checkSize();
     }
 
+    // logs the access of a rejected entry, so its frequency survives a restart
+    protected void rejectJournal(@NotNull String fileName) throws IOException {
+        journal.reject(fileName);
+    }
+
     protected void accessJournalDefaultRebuild(@NotNull String fileName) throws IOException {
         accessJournal(fileName, false);
         checkSize();
@@ -132,10 +1066,91 @@ public class DiskLruCache<Meta extends FileMeta> {
         checkSize();
     }
 
+    // like the single operations the batches evict once their records are logged, before the staged files are
+    // moved into place, so finishFile drops the entries evicted meanwhile
+    protected void putAllJournal(@NotNull JournalBatch batch) throws IOException {
+        batch.log();
+        checkSize();
+        checkPacks();
+    }
+
+    protected void removeAllJournal(@NotNull JournalBatch batch) throws IOException {
+        batch.log();
+        checkSize();
+    }
+
+    protected void accessAllJournal(@NotNull List<String> fileNames) throws IOException {
+        journal.accessAll(fileNames);
+    }
+
+    // evicts down to a new max weight, the evictions are logged like the ones of a put
+    protected void resizeJournal() throws IOException {
+        checkSize();
+    }
+
     private void initDirectories() throws IOException {
         ensureExists(journalDir);
         ensureExists(baseDir);
         ensureExists(backupDir);
+        ensureExists(editDir);
+    }
+
+    // the entry is replaced, so the new version is mapped and read on the next call, and the file must stay;
+    // called once the new file is in place, so that a concurrent read can't put the old content in the memory
+    private void invalidate(@NotNull String fileName) {
+        invalidateMemory(fileName);
+        mappings.remove(fileName);
+        Mapping removed = deferredDeletes.remove(fileName);
+        if (removed != null) {
+            removed.deleteOnRelease = false;
+        }
+    }
+
+    // the file of a removed entry is deleted at once, unless it is mapped by an open handle
+    private void deleteFile(@NotNull String fileName) throws IOException {
+        invalidateMemory(fileName);
+        Mapping mapping = mappings.remove(fileName);
+        if (mapping != null && mapping.references > 0) {
+            mapping.deleteOnRelease = true;
+            deferredDeletes.put(fileName, mapping);
+            return;
+        }
+        deleteIfExists(file(fileName));
+    }
+
+    private void invalidateMemory(@NotNull String fileName) {
+        if (memory != null) {
+            memory.invalidate(fileName);
+        }
+    }
+
+    private synchronized void release(@NotNull Mapping mapping) throws IOException {
+        if (--mapping.references == 0 && mapping.deleteOnRelease) {
+            mapping.deleteOnRelease = false;
+            deferredDeletes.remove(mapping.fileName);
+            deleteIfExists(file(mapping.fileName));
+        }
+    }
+
+    // the files of the editors, which were open when the cache was closed
+    private void clearEditDir() {
+        File[] files = editDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private void initKeys() {
+        if (keys == null) {
+            return;
+        }
+        keys.clear();
+        Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
     }
 
     private void changeSize(@Nullable Meta newMeta, @Nullable Meta oldMeta) {
@@ -150,30 +1165,99 @@ public class DiskLruCache<Meta extends FileMeta> {
     }
 
     private void initFiles() throws IOException {
-        File[] files = backupDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (!contains(file.getName())) {
-                    delete(file);
+        for (File file : layout.listFiles(backupDir)) {
+            String name = file.getName();
+            if (contains(name)) {
+                File brokenFile = file(name);
+                if (brokenFile.exists()) {
+                    delete(brokenFile);
                 }
+                renameInto(file, brokenFile);
+            } else {
+                delete(file);
             }
         }
+    }
 
-        files = backupDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                String name = file.getName();
-                if (contains(name)) {
-                    File brokenFile = new File(baseDir, name);
-                    if (brokenFile.exists()) {
-                        delete(brokenFile);
-                    }
-                    rename(file, brokenFile);
-                } else {
-                    delete(file);
+    // moves the files to the configured layout, if the journal records another one, and records the new layout
+    // only then, so an interrupted migration is resumed on the next init
+    private void migrateLayout() throws IOException {
+        FileLayout stored = journal.getLayout();
+        if (stored.equals(layout)) {
+            return;
+        }
+        Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Meta> entry = iterator.next();
+            if (!(entry.getValue() instanceof PackedMeta)) {
+                move(stored.file(baseDir, entry.getKey()), file(entry.getKey()));
+            }
+        }
+        for (File file : stored.listFiles(backupDir)) {
+            move(file, layout.file(backupDir, file.getName()));
+        }
+        stored.deleteEmptyDirs(baseDir);
+        stored.deleteEmptyDirs(backupDir);
+        journal.setLayout(layout);
+    }
+
+    // the target is newer, if it was put during the warm-up
+    private static void move(@NotNull File file, @NotNull File target) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        if (target.isFile()) {
+            delete(file);
+        } else {
+            renameInto(file, target);
+        }
+    }
+
+    // the salvaged journal may have lost the removal of an entry, so the entries without files are dropped
+    private void dropMissingFiles() throws IOException {
+        if (!journal.isSalvaged()) {
+            return;
+        }
+        List<String> missing = new ArrayList<>();
+        Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Meta> entry = iterator.next();
+            if (!(entry.getValue() instanceof PackedMeta) && !file(entry.getKey()).exists()) {
+                missing.add(entry.getKey());
+            }
+        }
+        dropEntries(missing);
+    }
+
+    // registers the packed entries and drops the ones, whose contents are lost, or all of them, if the pack
+    // storage is disabled
+    private void initPacks() throws IOException {
+        List<String> lost;
+        if (packs != null) {
+            lost = packs.init(cache.getEntriesIterator());
+        } else {
+            lost = new ArrayList<>();
+            Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Meta> entry = iterator.next();
+                if (entry.getValue() instanceof PackedMeta) {
+                    lost.add(entry.getKey());
                 }
             }
         }
+        dropEntries(lost);
+        checkPacks();
+    }
+
+    private void dropEntries(@NotNull List<String> fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            invalidate(fileName);
+            cache.removeInternal(fileName);
+            if (keys != null) {
+                keys.remove(fileName);
+            }
+            journal.remove(fileName);
+        }
     }
 
     protected void initSize() {
@@ -186,19 +1270,428 @@ public class DiskLruCache<Meta extends FileMeta> {
     protected void checkSize() throws IOException {
         long currentWeight = weight.get();
         if (currentWeight > maxWeight) {
+            // recent reads should protect their entries from the eviction
+            drainReadBuffer();
             evict();
         }
     }
 
     private void evict() throws IOException {
-        Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
+        Iterator<Map.Entry<String, Meta>> iterator = cache.getEvictionIterator();
         while (iterator.hasNext() && weight.get() > maxWeight) {
             Map.Entry<String, Meta> next = iterator.next();
             weight.addAndGet(-next.getValue().weight());
             iterator.remove();
+            if (keys != null) {
+                keys.remove(next.getKey());
+            }
             journal.remove(next.getKey());
-            deleteIfExists(new File(baseDir, next.getKey()));
+            if (next.getValue() instanceof PackedMeta) {
+                packs.remove(next.getKey());
+            }
+            deleteFile(next.getKey());
+        }
+        checkPacks();
+    }
+
+    // queues the compaction of the pack segments, which have too much dead space; within a journal batch the
+    // relocations couldn't be committed before the segment is deleted, so it waits for the end of the batch
+    private void checkPacks() {
+        if (packs == null || journal.isBatching()) {
+            return;
+        }
+        int segment;
+        while ((segment = packs.pollCompaction()) >= 0) {
+            if (packCompactor == null) {
+                compactPacks(segment);
+                continue;
+            }
+            final int id = segment;
+            try {
+                packCompactor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        compactPacks(id);
+                    }
+                });
+            } catch (RuntimeException e) {
+                packs.abortCompaction(id);
+            }
         }
     }
 
+    // moves the live entries of the segment to the active one and deletes it once the new locations are
+    // journaled; the contents are read without the cache lock, when the compaction runs on the executor
+    private void compactPacks(int segment) {
+        try {
+            List<Map.Entry<String, PackedMeta.Location>> live;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                live = packs.liveEntries(segment);
+            }
+            List<ByteBuffer> contents = new ArrayList<>();
+            int from = 0;
+            while (from < live.size()) {
+                int to = from;
+                long bytes = 0;
+                while (to < live.size() && bytes < PACK_COMPACTION_CHUNK_BYTES) {
+                    ByteBuffer content = packs.read(live.get(to++).getValue());
+                    bytes += content.remaining();
+                    contents.add(content);
+                }
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    JournalBatch relocations = new JournalBatch(false);
+                    boolean relocated = false;
+                    for (int i = from; i < to; i++) {
+                        String fileName = live.get(i).getKey();
+                        PackedMeta meta = packs.relocate(fileName, live.get(i).getValue(), contents.get(i - from));
+                        if (meta != null) {
+                            relocations.put(fileName, packed(meta), true);
+                            relocated = true;
+                        }
+                    }
+                    if (relocated) {
+                        putAllJournal(relocations);
+                    }
+                }
+                contents.clear();
+                from = to;
+            }
+            awaitJournal();
+            synchronized (this) {
+                if (!closed) {
+                    packs.retire(segment);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Pack segment compaction failed: " + segment, e);
+            synchronized (this) {
+                if (!closed) {
+                    packs.abortCompaction(segment);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private Meta packed(@NotNull PackedMeta meta) {
+        return (Meta) (FileMeta) meta;
+    }
+
+    /**
+     * The files, keys and metas of a {@link #putAll} batch.
+     */
+    public static final class PutBatch<Meta extends FileMeta> {
+
+        private final List<File> files = new ArrayList<>();
+        private final List<String> fileNames = new ArrayList<>();
+        private final List<Meta> metas = new ArrayList<>();
+
+        @NotNull
+        public PutBatch<Meta> add(@NotNull File file, @NotNull String fileName, @NotNull Meta meta) {
+            files.add(file);
+            fileNames.add(fileName);
+            metas.add(meta);
+            return this;
+        }
+
+        public int size() {
+            return files.size();
+        }
+    }
+
+    /**
+     * The journal records of a {@link #putAll} or {@link #removeAll} batch, which are logged with one commit.
+     */
+    protected final class JournalBatch {
+
+        private final boolean atomic;
+        private final List<BatchRecord<Meta>> records = new ArrayList<>();
+
+        JournalBatch(boolean atomic) {
+            this.atomic = atomic;
+        }
+
+        void put(@NotNull String fileName, @NotNull Meta meta, boolean exists) {
+            records.add(new BatchRecord<>(exists ? BatchRecord.Type.REPLACE : BatchRecord.Type.PUT, fileName, meta));
+        }
+
+        void remove(@NotNull String fileName) {
+            records.add(new BatchRecord<Meta>(BatchRecord.Type.REMOVE, fileName, null));
+        }
+
+        void reject(@NotNull String fileName) {
+            records.add(new BatchRecord<Meta>(BatchRecord.Type.REJECT, fileName, null));
+        }
+
+        void log() throws IOException {
+            journal.beginBatch(atomic);
+            try {
+                for (BatchRecord<Meta> record : records) {
+                    switch (record.type) {
+                        case PUT:
+                        case REPLACE:
+                            journal.put(record.fileName, record.meta, record.type == BatchRecord.Type.REPLACE);
+                            break;
+                        case REMOVE:
+                            journal.remove(record.fileName);
+                            break;
+                        case REJECT:
+                            journal.reject(record.fileName);
+                            break;
+                    }
+                }
+            } finally {
+                journal.commitBatch();
+            }
+        }
+    }
+
+    private static class BatchRecord<Meta> {
+
+        enum Type {
+            PUT, REPLACE, REMOVE, REJECT
+        }
+
+        @NotNull
+        final Type type;
+        @NotNull
+        final String fileName;
+        final Meta meta;
+
+        BatchRecord(@NotNull Type type, @NotNull String fileName, @Nullable Meta meta) {
+            this.type = type;
+            this.fileName = fileName;
+            this.meta = meta;
+        }
+    }
+
+    private static class StagedFile {
+
+        @NotNull
+        final File file;
+        @NotNull
+        final String fileName;
+        @NotNull
+        final File newFile;
+        @Nullable
+        final File backupFile;
+        final boolean replacesPacked;
+
+        StagedFile(@NotNull File file, @NotNull String fileName, @NotNull File newFile, @Nullable File backupFile,
+                   boolean replacesPacked) {
+            this.file = file;
+            this.fileName = fileName;
+            this.newFile = newFile;
+            this.backupFile = backupFile;
+            this.replacesPacked = replacesPacked;
+        }
+    }
+
+    /**
+     * Writes a new version of an entry. Either {@link #commit} or {@link #abort} should be called, closing
+     * the editor without a commit aborts it.
+     */
+    public final class Editor implements Closeable {
+
+        @NotNull
+        private final String fileName;
+        @NotNull
+        private final File file;
+        @NotNull
+        private final FileOutputStream output;
+        private boolean done;
+
+        Editor(@NotNull String fileName, @NotNull File file) throws IOException {
+            this.fileName = fileName;
+            this.file = file;
+            this.output = new FileOutputStream(file);
+        }
+
+        @NotNull
+        public String getKey() {
+            return fileName;
+        }
+
+        /**
+         * The stream and the channel write the same file, so they share the position.
+         */
+        @NotNull
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        @NotNull
+        public WritableByteChannel getChannel() {
+            return output.getChannel();
+        }
+
+        /**
+         * Moves the written file into the cache. The file is deleted, if the admission filter rejects it.
+         *
+         * @return false if the entry was not admitted
+         */
+        public boolean commit(@NotNull Meta meta) throws IOException {
+            if (done) {
+                throw new IllegalStateException("Editor is already done: " + fileName);
+            }
+            done = true;
+            boolean admitted = false;
+            try {
+                output.close();
+                admitted = put(file, fileName, meta);
+            } finally {
+                if (!admitted) {
+                    deleteIfExists(file);
+                }
+            }
+            return admitted;
+        }
+
+        public void abort() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            closeQuietly(output);
+            deleteIfExists(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            abort();
+        }
+    }
+
+    /**
+     * An open entry. The stream and the channel read the same content, so they share the position. A packed
+     * entry is read into the memory, its channel reads that copy.
+     */
+    public static final class Snapshot implements Closeable {
+
+        @NotNull
+        private final String fileName;
+        @NotNull
+        private final InputStream input;
+        @NotNull
+        private final SeekableByteChannel channel;
+
+        Snapshot(@NotNull String fileName, @NotNull FileInputStream input) {
+            this.fileName = fileName;
+            this.input = input;
+            this.channel = input.getChannel();
+        }
+
+        Snapshot(@NotNull String fileName, @NotNull ByteBuffer content) {
+            this.fileName = fileName;
+            this.channel = new ByteBufferChannel(content);
+            this.input = Channels.newInputStream(channel);
+        }
+
+        @NotNull
+        public String getKey() {
+            return fileName;
+        }
+
+        @NotNull
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        /**
+         * The channel of a standalone entry is a {@link FileChannel}.
+         */
+        @NotNull
+        public SeekableByteChannel getChannel() {
+            return channel;
+        }
+
+        public long getLength() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+            channel.close();
+        }
+    }
+
+    /**
+     * A read-only view of a mapped entry. The handles of an entry share the mapping, each has its own
+     * position.
+     */
+    public final class MappedEntry implements Closeable {
+
+        @NotNull
+        private final Mapping mapping;
+        @NotNull
+        private final ByteBuffer buffer;
+        private boolean closed;
+
+        MappedEntry(@NotNull Mapping mapping) {
+            this.mapping = mapping;
+            this.buffer = mapping.buffer.asReadOnlyBuffer();
+        }
+
+        @NotNull
+        public String getKey() {
+            return mapping.fileName;
+        }
+
+        @NotNull
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(mapping);
+        }
+    }
+
+    // guarded by the cache lock, the buffer isn't unmapped explicitly, as a released handle may still be used
+    private static class Mapping {
+
+        @NotNull
+        final String fileName;
+        @NotNull
+        final MappedByteBuffer buffer;
+        int references;
+        boolean deleteOnRelease;
+
+        Mapping(@NotNull String fileName, @NotNull MappedByteBuffer buffer) {
+            this.fileName = fileName;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class PendingOperation<Meta> {
+
+        enum Type {
+            PUT, RENEW, REMOVE, ACCESS
+        }
+
+        @NotNull
+        final Type type;
+        @NotNull
+        final String fileName;
+        final Meta meta;
+
+        PendingOperation(@NotNull Type type, @NotNull String fileName, @Nullable Meta meta) {
+            this.type = type;
+            this.fileName = fileName;
+            this.meta = meta;
+        }
+    }
 }
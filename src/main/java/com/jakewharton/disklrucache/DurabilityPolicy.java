@@ -0,0 +1,59 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+public class DurabilityPolicy {
+
+    private static final DurabilityPolicy FORCE_ON_COMMIT = new DurabilityPolicy(0, 0, true);
+    private static final DurabilityPolicy OS_ONLY = new DurabilityPolicy(Long.MAX_VALUE, Long.MAX_VALUE, true);
+
+    private final long forceIntervalNanos;
+    private final long forceBytes;
+    private final boolean commitWithoutForce;
+
+    private DurabilityPolicy(long forceIntervalNanos, long forceBytes, boolean commitWithoutForce) {
+        this.forceIntervalNanos = forceIntervalNanos;
+        this.forceBytes = forceBytes;
+        this.commitWithoutForce = commitWithoutForce;
+    }
+
+    /**
+     * Every commit is forced to the device before it returns.
+     */
+    @NotNull
+    public static DurabilityPolicy forceOnCommit() {
+        return FORCE_ON_COMMIT;
+    }
+
+    /**
+     * Commits are forced once the given time has passed or the given number of bytes has been written since
+     * the previous force. After a crash the journal is rolled back to the last forced commit. The check is done
+     * by the commits only, so the last commits before an idle period stay unforced until the next one, not
+     * just for the interval.
+     */
+    @NotNull
+    public static DurabilityPolicy forcePeriodically(long interval, @NotNull TimeUnit unit, long bytes) {
+        if (interval < 0 || bytes < 0) {
+            throw new IllegalArgumentException("Negative force interval");
+        }
+        return new DurabilityPolicy(unit.toNanos(interval), bytes, false);
+    }
+
+    /**
+     * Commits are never forced, the OS decides when the data reaches the device.
+     */
+    @NotNull
+    public static DurabilityPolicy osOnly() {
+        return OS_ONLY;
+    }
+
+    boolean shouldForce(long nanosSinceForce, long bytesSinceForce) {
+        return nanosSinceForce >= forceIntervalNanos || bytesSinceForce >= forceBytes;
+    }
+
+    boolean isCommitWithoutForce() {
+        return commitWithoutForce;
+    }
+}
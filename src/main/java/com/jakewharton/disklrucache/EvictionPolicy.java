@@ -0,0 +1,55 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+public abstract class EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entries first. Every hit moves the entry in a linked list.
+     */
+    @NotNull
+    public static EvictionPolicy lru() {
+        return new EvictionPolicy() {
+            @NotNull
+            @Override
+            public <Meta> CacheInternalAccess<Meta> createCache() {
+                return new LinkedMapLruCache<>();
+            }
+        };
+    }
+
+    /**
+     * CLOCK (second chance) approximation of LRU: a hit only marks the entry as referenced, and marked
+     * entries are skipped once by the eviction.
+     */
+    @NotNull
+    public static EvictionPolicy clock() {
+        return new EvictionPolicy() {
+            @NotNull
+            @Override
+            public <Meta> CacheInternalAccess<Meta> createCache() {
+                return new ClockCache<>();
+            }
+        };
+    }
+
+    /**
+     * LRU kept in primitive arrays, which takes several times less heap per entry than {@link #lru()}.
+     * {@link SimpleMeta} is stored as its weight only.
+     *
+     * @param offHeapKeys whether the keys should be stored in a direct buffer
+     */
+    @NotNull
+    public static EvictionPolicy compactLru(final boolean offHeapKeys) {
+        return new EvictionPolicy() {
+            @NotNull
+            @Override
+            public <Meta> CacheInternalAccess<Meta> createCache() {
+                return new CompactLruCache<>(offHeapKeys);
+            }
+        };
+    }
+
+    @NotNull
+    public abstract <Meta> CacheInternalAccess<Meta> createCache();
+}
@@ -0,0 +1,152 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Places the entry files into a tree of shard directories chosen by a hash of the key, so that no directory
+ * grows with the number of entries. The layout with zero levels is flat. The directories are created lazily.
+ */
+final class FileLayout {
+
+    static final FileLayout FLAT = new FileLayout(0, 0);
+
+    final int levels;
+    final int fanOut;
+    private final int bits;
+    private final int digits;
+
+    private FileLayout(int levels, int fanOut) {
+        this.levels = levels;
+        this.fanOut = fanOut;
+        bits = Integer.numberOfTrailingZeros(fanOut);
+        digits = (bits + 3) / 4;
+    }
+
+    @NotNull
+    static FileLayout of(int levels, int fanOut) {
+        if (levels == 0) {
+            return FLAT;
+        }
+        if (levels < 0 || fanOut < 2 || Integer.bitCount(fanOut) != 1
+                || levels * Integer.numberOfTrailingZeros(fanOut) > 32) {
+            throw new IllegalArgumentException("Wrong layout: " + levels + " levels of " + fanOut);
+        }
+        return new FileLayout(levels, fanOut);
+    }
+
+    @NotNull
+    File file(@NotNull File dir, @NotNull String key) {
+        if (levels == 0) {
+            return new File(dir, key);
+        }
+        int hash = hash(key);
+        StringBuilder path = new StringBuilder(levels * (digits + 1) + key.length());
+        for (int level = 0; level < levels; level++) {
+            appendShard(path, (hash >>> level * bits) & (fanOut - 1));
+            path.append(File.separatorChar);
+        }
+        path.append(key);
+        return new File(dir, path.toString());
+    }
+
+    // the files at the depth of the layout, only the existing shard directories are listed
+    @NotNull
+    List<File> listFiles(@NotNull File dir) {
+        List<File> files = new ArrayList<>();
+        listFiles(dir, 0, files);
+        return files;
+    }
+
+    // deletes the empty shard directories, e.g. after a migration to another layout
+    void deleteEmptyDirs(@NotNull File dir) {
+        deleteEmptyDirs(dir, 0);
+    }
+
+    private void listFiles(@NotNull File dir, int level, @NotNull List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (level == levels) {
+                files.add(child);
+            } else if (isShard(child)) {
+                listFiles(child, level + 1, files);
+            }
+        }
+    }
+
+    private void deleteEmptyDirs(@NotNull File dir, int level) {
+        if (level == levels) {
+            return;
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (isShard(child)) {
+                deleteEmptyDirs(child, level + 1);
+                // fails, unless it is empty
+                child.delete();
+            }
+        }
+    }
+
+    private boolean isShard(@NotNull File file) {
+        String name = file.getName();
+        if (name.length() != digits) {
+            return false;
+        }
+        for (int i = 0; i < digits; i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return file.isDirectory();
+    }
+
+    private void appendShard(@NotNull StringBuilder path, int shard) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            path.append(Character.forDigit((shard >>> shift) & 0xf, 16));
+        }
+    }
+
+    // String.hashCode() is specified, so the paths are stable between the runs; the finalizer of murmur3
+    // spreads its bits over the levels
+    static int hash(@NotNull String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileLayout)) {
+            return false;
+        }
+        FileLayout layout = (FileLayout) o;
+        return levels == layout.levels && fanOut == layout.fanOut;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * levels + fanOut;
+    }
+
+    @Override
+    public String toString() {
+        return levels == 0 ? "flat" : levels + " levels of " + fanOut;
+    }
+}
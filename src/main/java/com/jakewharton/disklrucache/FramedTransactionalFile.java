@@ -0,0 +1,247 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+// Append-only commit protocol: every commit is written as one or more frames
+// [int length][byte flags][int crc32 of length, flags and payload][payload] with a single write,
+// the last frame of a commit is flagged. There is no header to rewrite in place, init() scans
+// the frames and drops everything after the last complete commit.
+class FramedTransactionalFile extends StreamTransactionalFile {
+
+    static final long MAGIC = 0x444C434652414D45L; // "DLCFRAME"
+    static final int MAGIC_SIZE = 8;
+    static final int FRAME_HEADER_SIZE = 9;
+    static final int MAX_FRAME_SIZE = 1024 * 1024;
+    private static final byte FLAG_LAST = 1;
+
+    @NotNull
+    private final TransactionalVirtualFile file;
+    private final CRC32 crc = new CRC32();
+    // the frame being built, its header is filled in place before the payload, so a commit copies nothing
+    private byte[] pending = new byte[FRAME_HEADER_SIZE + 256];
+    // the size of the payload only
+    private int pendingSize;
+    private boolean uncommittedFrames;
+    private boolean forceNextCommit;
+    private long appendPosition = -1;
+    private long readPosition;
+    private long readLimit;
+    private int frameRemaining;
+
+    FramedTransactionalFile(@NotNull TransactionalVirtualFile file) {
+        this.file = file;
+    }
+
+    static boolean isFramed(@NotNull TransactionalVirtualFile file) throws IOException {
+        if (file.length() < MAGIC_SIZE) {
+            return false;
+        }
+        file.seek(0);
+        try {
+            return file.readLong() == MAGIC;
+        } finally {
+            file.seek(0);
+        }
+    }
+
+    @Override
+    public void createEmpty() throws IOException {
+        file.setLength(0);
+        file.seek(0);
+        byte[] magic = new byte[MAGIC_SIZE];
+        putLong(magic, 0, MAGIC);
+        file.write(magic);
+        appendPosition = readLimit = MAGIC_SIZE;
+        readPosition = MAGIC_SIZE;
+        frameRemaining = 0;
+        pendingSize = 0;
+        uncommittedFrames = false;
+        forceNextCommit = true;
+    }
+
+    @Override
+    public void init() throws IOException {
+        long length = file.length();
+        if (!isFramed(file)) {
+            throw new IOException("Not a framed file");
+        }
+        byte[] header = new byte[FRAME_HEADER_SIZE];
+        byte[] payload = new byte[4096];
+        long position = MAGIC_SIZE;
+        long committed = MAGIC_SIZE;
+        file.seek(position);
+        while (length - position >= FRAME_HEADER_SIZE) {
+            file.readFully(header);
+            int size = getInt(header, 0);
+            if (size < 0 || size > MAX_FRAME_SIZE || length - position - FRAME_HEADER_SIZE < size) {
+                break;
+            }
+            crc.reset();
+            crc.update(header, 0, 5);
+            int remaining = size;
+            while (remaining > 0) {
+                int count = Math.min(remaining, payload.length);
+                file.readFully(payload, 0, count);
+                crc.update(payload, 0, count);
+                remaining -= count;
+            }
+            if ((int) crc.getValue() != getInt(header, 5)) {
+                break;
+            }
+            position += FRAME_HEADER_SIZE + size;
+            if ((header[4] & FLAG_LAST) != 0) {
+                committed = position;
+            }
+        }
+        if (committed < length) {
+            file.setLength(committed);
+        }
+        appendPosition = readLimit = committed;
+        readPosition = MAGIC_SIZE;
+        frameRemaining = 0;
+        pendingSize = 0;
+        uncommittedFrames = false;
+    }
+
+    @Override
+    public void commit() throws IOException {
+        if (pendingSize == 0 && !uncommittedFrames) {
+            return;
+        }
+        writeFrame(true);
+        if (forceNextCommit) {
+            file.force();
+            forceNextCommit = false;
+        } else {
+            file.sync();
+        }
+    }
+
+    private void writeFrame(boolean last) throws IOException {
+        if (appendPosition < 0) {
+            throw new IOException("File wasn't initialized");
+        }
+        byte[] frame = pending;
+        int frameSize = FRAME_HEADER_SIZE + pendingSize;
+        putInt(frame, 0, pendingSize);
+        frame[4] = last ? FLAG_LAST : 0;
+        crc.reset();
+        crc.update(frame, 0, 5);
+        crc.update(frame, FRAME_HEADER_SIZE, pendingSize);
+        putInt(frame, 5, (int) crc.getValue());
+
+        file.seek(appendPosition);
+        file.write(frame, 0, frameSize);
+        appendPosition += frameSize;
+        if (last) {
+            readLimit = appendPosition;
+        }
+        uncommittedFrames = !last;
+        pendingSize = 0;
+    }
+
+    @Override
+    protected void writeData(@NotNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (pendingSize == MAX_FRAME_SIZE) {
+                writeFrame(false);
+            }
+            if (FRAME_HEADER_SIZE + pendingSize == pending.length) {
+                int capacity = Math.min(MAX_FRAME_SIZE, pendingSize * 2);
+                byte[] grown = new byte[FRAME_HEADER_SIZE + capacity];
+                System.arraycopy(pending, FRAME_HEADER_SIZE, grown, FRAME_HEADER_SIZE, pendingSize);
+                pending = grown;
+            }
+            int count = Math.min(len, pending.length - FRAME_HEADER_SIZE - pendingSize);
+            System.arraycopy(b, off, pending, FRAME_HEADER_SIZE + pendingSize, count);
+            pendingSize += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    protected int readData(@NotNull byte[] b, int off, int len) throws IOException {
+        while (frameRemaining == 0) {
+            if (readLimit - readPosition < FRAME_HEADER_SIZE) {
+                return -1;
+            }
+            file.seek(readPosition);
+            frameRemaining = file.readInt();
+            readPosition += FRAME_HEADER_SIZE;
+        }
+        int count = Math.min(len, frameRemaining);
+        file.seek(readPosition);
+        file.readFully(b, off, count);
+        readPosition += count;
+        frameRemaining -= count;
+        return count;
+    }
+
+    @Override
+    protected long availableData() throws IOException {
+        // frame headers are counted as well, it is an estimation only
+        return readLimit - readPosition;
+    }
+
+    @Override
+    public void seekToEnd() throws IOException {
+        appendPosition = readLimit = readPosition = file.length();
+        frameRemaining = 0;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return file.length();
+    }
+
+    @Override
+    protected void seek(long pos) throws IOException {
+        throw new UnsupportedOperationException("Framed file can't be positioned");
+    }
+
+    @Override
+    protected long pos() throws IOException {
+        return appendPosition + pendingSize;
+    }
+
+    @Override
+    protected void setLength(long length) throws IOException {
+        throw new UnsupportedOperationException("Framed file can't be truncated");
+    }
+
+    @Override
+    public void force() throws IOException {
+        file.force();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        file.sync();
+    }
+
+    @Override
+    public void close() {
+        closeStreams();
+        file.close();
+    }
+
+    private static void putInt(@NotNull byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static void putLong(@NotNull byte[] b, int off, long v) {
+        putInt(b, off, (int) (v >>> 32));
+        putInt(b, off + 4, (int) v);
+    }
+
+    private static int getInt(@NotNull byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+}
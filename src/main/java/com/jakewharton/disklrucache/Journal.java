@@ -1,25 +1,74 @@
 package com.jakewharton.disklrucache;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
 import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
 import com.esotericsoftware.kryo.util.MapReferenceResolver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Journal<Meta> {
 
+    private static final Logger LOG = Logger.getLogger(Journal.class.getName());
+
     static final String JOURNAL_FILE_NAME = "journal";
     static final String JOURNAL_TMP_FILE_NAME = "journal.tmp";
+    // followed by the generation, the journal refers to the checkpoint it continues
+    static final String CHECKPOINT_FILE_PREFIX = "checkpoint.";
     static final int MAX_REDUNDANT_OPERATION_COUNT = 2048;
+    // the background compaction catches up with the active journal until so many lines are left for the switch
+    static final int COMPACTION_BACKLOG_THRESHOLD = 64;
+    private static final int COMPACTION_CATCH_UP_ROUNDS = 16;
+    private static final int CHECKPOINT_BUFFER_SIZE = 64 * 1024;
+    // the replay looks for the next intact record so far behind a damaged one
+    private static final int RESYNC_WINDOW = 64 * 1024;
+
+    // the opcodes of the binary records, the first byte of every record
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte ACCESS = 3;
+    private static final byte REJECT = 4;
+    private static final byte CHECKPOINT = 5;
+    private static final byte RECENCY = 6;
+    // a put of an entry stored in a pack segment, the location precedes the meta
+    private static final byte PACKED_PUT = 7;
+    // the lines of an atomic batch, framed together, so the replay applies all of them or none
+    private static final byte BATCH = 8;
 
+    // reads the magic line and the records of the legacy journals
+    @NotNull
+    private final Kryo kryo;
+    @Nullable
+    private final MetaCodec<Meta> metaCodec;
+    @NotNull
+    private final MetaCodec<Meta> codec;
     @NotNull
-    private Kryo kryo;
+    private final RecordWriter<Meta> writer;
     @NotNull
     private final VirtualFile journal;
     @NotNull
@@ -29,16 +78,124 @@ public class Journal<Meta> {
     private TransactionalVirtualFile journalFile;
     private Output journalOutput;
     private int redundantOpCount;
+    @NotNull
+    private final CompactionScheduler scheduler;
+    private final boolean adaptiveCompaction;
+    private final boolean framed;
+    private final boolean checkpoint;
+    private final double checkpointTailShare;
+    // the lines logged since the last compaction
+    private int tailLines;
+    // the generation of the checkpoint the journal continues, 0 if the journal contains all the entries
+    private long generation;
+    // the layout of the entry files, which the header records; read by the background compaction
+    @NotNull
+    private volatile FileLayout layout;
+
+    // the state of the journal replay, it may be done in several steps
+    @Nullable
+    private Input replayInput;
+    // the journals of the previous versions are rewritten in the current format after the replay
+    private int replayVersion;
+    // the journal file length, no record can be longer
+    private long replayLimit;
+    // the position of the replay input in the journal, the input is replaced, when a damaged record is skipped
+    private long replayBase;
+    private byte[] replayFrame = new byte[256];
+    private int replayFrameHeader;
+    private int replayedLines;
+    private long checkpointBytes;
+    private int droppedRecords;
+    private long droppedBytes;
+    // some records were dropped by the replay
+    private boolean salvaged;
+
+    private final boolean accessCoalescing;
+    private final long accessFlushNanos;
+    // the accessed keys not logged yet, in the order of the last access
+    private final LinkedHashMap<String, Boolean> pendingAccesses = new LinkedHashMap<>(16, 0.75f, true);
+    private long lastAccessFlush = System.nanoTime();
+
+    private final boolean groupCommit;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    // lock order: ioLock -> batchLock; the leader never takes the cache lock
+    private final Object ioLock = new Object();
+    private final Object batchLock = new Object();
+    private Output pendingBatch;
+    private Output spareBatch;
+    private int pendingCount;
+    private long loggedSequence;
+    private long committedSequence;
+    private long batchEpoch;
+    private boolean leaderActive;
+    // the failed commits as sorted, disjoint ranges of the sequences, a range is dropped once a later commit
+    // has succeeded and no waiting thread targets a sequence within it
+    private final List<FailedCommit> failedCommits = new ArrayList<>();
+    // the targets of the threads in awaitCommit() and the number of the threads for each of them
+    private final TreeMap<Long, Integer> waitingTargets = new TreeMap<>();
+    private long succeededSequence;
+
+    @Nullable
+    private final Executor compactionExecutor;
+    // the running background compaction, it is started and finished under the cache lock
+    @Nullable
+    private Compaction compaction;
+
+    // the lines of the running batch, null outside of a batch
+    @Nullable
+    private List<Line<Meta>> batch;
+    private boolean batchAtomic;
 
     Journal(@NotNull CacheInternalAccess<Meta> cache, @NotNull VirtualFileSystem fileSystem) {
+        this(cache, fileSystem, new CacheOptions());
+    }
+
+    Journal(@NotNull CacheInternalAccess<Meta> cache, @NotNull VirtualFileSystem fileSystem,
+            @NotNull CacheOptions options) {
         this.cache = cache;
         this.fileSystem = fileSystem;
         kryo = createKryo();
+        @SuppressWarnings("unchecked")
+        MetaCodec<Meta> metaCodec = (MetaCodec<Meta>) options.getMetaCodec();
+        this.metaCodec = metaCodec;
+        codec = createMetaCodec();
+        writer = new RecordWriter<>(codec);
 
         journal = fileSystem.get(JOURNAL_FILE_NAME);
+
+        framed = options.isFramedJournal();
+        layout = FileLayout.of(options.getFileLayoutLevels(), options.getFileLayoutFanOut());
+        checkpoint = options.isCheckpoint();
+        checkpointTailShare = options.getCheckpointTailShare();
+        groupCommit = options.isGroupCommit();
+        batchWindowNanos = options.getGroupCommitWindowNanos();
+        maxBatchSize = options.getGroupCommitMaxBatchSize();
+        if (groupCommit) {
+            pendingBatch = new Output(4096, -1);
+            spareBatch = new Output(4096, -1);
+        }
+        accessCoalescing = options.isAccessCoalescing();
+        accessFlushNanos = options.getAccessCoalescingNanos();
+        compactionExecutor = options.getCompactionExecutor();
+        adaptiveCompaction = options.isAdaptiveCompaction();
+        scheduler = new CompactionScheduler(options.getCompactionWriteAmplification(),
+                options.getCompactionMinGarbageBytes(), options.getCompactionMaxGarbageBytes());
     }
 
     public void close() {
+        closeReplay();
+        abortCompaction();
+        if (journalOutput != null) {
+            try {
+                logAccesses();
+            } catch (IOException e) {
+                //e.printStackTrace();//TODO log
+            }
+        }
+        if (groupCommit) {
+            flushPendingBatch();
+        }
         if (journalOutput != null) {
             try {
                 journalOutput.close();
@@ -55,28 +212,313 @@ public class Journal<Meta> {
         return redundantOpCount;
     }
 
+    @NotNull
+    public JournalStats getStats() {
+        return scheduler.getStats(cache.getEntitiesCount());
+    }
+
+    // waits until every line logged before the call is committed; call it without holding the cache lock,
+    // otherwise nobody else is able to join the batch
+    public void awaitCommit() throws IOException {
+        if (!groupCommit) {
+            return;
+        }
+        long target;
+        synchronized (batchLock) {
+            target = loggedSequence;
+            Integer count = waitingTargets.get(target);
+            waitingTargets.put(target, count == null ? 1 : count + 1);
+        }
+        try {
+            while (true) {
+                synchronized (batchLock) {
+                    while (committedSequence < target && leaderActive) {
+                        try {
+                            batchLock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting for journal commit");
+                        }
+                    }
+                    if (committedSequence >= target) {
+                        for (FailedCommit failed : failedCommits) {
+                            if (target > failed.fromSequence && target <= failed.toSequence) {
+                                throw failed.failure;
+                            }
+                        }
+                        return;
+                    }
+                    leaderActive = true;
+                }
+                commitAsLeader(batchWindowNanos);
+            }
+        } finally {
+            synchronized (batchLock) {
+                Integer count = waitingTargets.remove(target);
+                if (count > 1) {
+                    waitingTargets.put(target, count - 1);
+                }
+                pruneFailedCommits();
+            }
+        }
+    }
+
+    // called with the batch lock held
+    private void onCommitted(long fromSequence, long toSequence, @Nullable IOException failure) {
+        if (failure == null) {
+            succeededSequence = Math.max(succeededSequence, toSequence);
+            pruneFailedCommits();
+        } else if (toSequence > fromSequence) {
+            FailedCommit last = failedCommits.isEmpty() ? null : failedCommits.get(failedCommits.size() - 1);
+            if (last != null && last.toSequence == fromSequence) {
+                // the journal keeps failing, so the adjacent ranges are merged to keep the list short
+                last.toSequence = toSequence;
+                last.failure = failure;
+            } else {
+                failedCommits.add(new FailedCommit(fromSequence, toSequence, failure));
+            }
+        }
+        if (committedSequence < toSequence) {
+            committedSequence = toSequence;
+        }
+    }
+
+    // any new target is past a later successful commit, so only the waiting threads may still need a range
+    private void pruneFailedCommits() {
+        long lowestTarget = waitingTargets.isEmpty() ? Long.MAX_VALUE : waitingTargets.firstKey();
+        Iterator<FailedCommit> iterator = failedCommits.iterator();
+        while (iterator.hasNext()) {
+            FailedCommit failed = iterator.next();
+            if (failed.toSequence < succeededSequence && failed.toSequence < lowestTarget) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void commitAsLeader(long windowNanos) {
+        Output batch;
+        long epoch;
+        long fromSequence;
+        long toSequence;
+        synchronized (batchLock) {
+            try {
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining = windowNanos;
+                while (pendingCount < maxBatchSize && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(batchLock, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch = pendingBatch;
+            pendingBatch = spareBatch;
+            spareBatch = null;
+            epoch = batchEpoch;
+            fromSequence = committedSequence;
+            toSequence = loggedSequence;
+            pendingCount = 0;
+        }
+
+        IOException failure = null;
+        try {
+            synchronized (ioLock) {
+                boolean compacted;
+                synchronized (batchLock) {
+                    compacted = epoch != batchEpoch;
+                }
+                if (!compacted && batch.position() > 0) {
+                    writeBatch(batch);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            batch.clear();
+            synchronized (batchLock) {
+                spareBatch = batch;
+                onCommitted(fromSequence, toSequence, failure);
+                leaderActive = false;
+                batchLock.notifyAll();
+            }
+        }
+    }
+
+    private void writeBatch(@NotNull Output batch) throws IOException {
+        try {
+            journalOutput.write(batch.getBuffer(), 0, batch.position());
+            journalOutput.flush();
+        } catch (KryoException e) {
+            throwIOException(e);
+        }
+        journalFile.commit();
+    }
+
+    private void flushPendingBatch() {
+        synchronized (batchLock) {
+            boolean interrupted = false;
+            while (leaderActive) {
+                try {
+                    batchLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (journalOutput == null) {
+                return;
+            }
+            leaderActive = true;
+        }
+        commitAsLeader(0);
+    }
+
     public void remove(String fileName) throws IOException {
+        pendingAccesses.remove(fileName);
         RemoveLine remove = new RemoveLine();
         logToJournal(remove, fileName);
         incrementRedundant(true);
+        flushAccessesIfDue();
     }
 
     public void access(String fileName, boolean allowRebuild) throws IOException {
+        if (accessCoalescing) {
+            pendingAccesses.put(fileName, Boolean.TRUE);
+            flushAccessesIfDue();
+            return;
+        }
         AccessLine read = new AccessLine();
         logToJournal(read, fileName);
         incrementRedundant(allowRebuild);
     }
 
+    // logs all the accesses with a single commit
+    public void accessAll(@NotNull Collection<String> fileNames) throws IOException {
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        if (accessCoalescing) {
+            for (String fileName : fileNames) {
+                pendingAccesses.put(fileName, Boolean.TRUE);
+            }
+            flushAccessesIfDue();
+            return;
+        }
+        if (groupCommit) {
+            for (String fileName : fileNames) {
+                logToJournal(new AccessLine<Meta>(), fileName);
+            }
+        } else {
+            finishCompactionIfDone();
+            int total = journalOutput.total();
+            try {
+                for (String fileName : fileNames) {
+                    AccessLine<Meta> read = new AccessLine<>();
+                    read.fileName = fileName;
+                    writer.write(journalOutput, read);
+                    if (compaction != null) {
+                        compaction.addToBacklog(read);
+                    }
+                }
+                journalOutput.flush();
+            } catch (KryoException e) {
+                throwIOException(e);
+            }
+            journalFile.commit();
+            scheduler.onAppend(journalOutput.total() - total);
+            tailLines += fileNames.size();
+        }
+        redundantOpCount += fileNames.size();
+        checkCompaction(false);
+    }
+
+    // the lines logged until commitBatch() are written with one commit, the compaction waits for the end of
+    // the batch
+    void beginBatch(boolean atomic) {
+        if (batch != null) {
+            throw new IllegalStateException("Batch is already started");
+        }
+        batch = new ArrayList<>();
+        batchAtomic = atomic;
+    }
+
+    boolean isBatching() {
+        return batch != null;
+    }
+
+    void commitBatch() throws IOException {
+        List<Line<Meta>> lines = batch;
+        batch = null;
+        if (lines.isEmpty()) {
+            return;
+        }
+        if (batchAtomic && lines.size() > 1) {
+            BatchLine<Meta> line = new BatchLine<>();
+            line.lines = lines;
+            appendLines(Collections.<Line<Meta>>singletonList(line));
+        } else {
+            appendLines(lines);
+        }
+        tailLines += lines.size();
+        checkCompaction(true);
+    }
+
+    public void reject(String fileName) throws IOException {
+        RejectLine<Meta> reject = new RejectLine<>();
+        logToJournal(reject, fileName);
+        incrementRedundant(true);
+    }
+
     public void put(String fileName, Meta meta, boolean exists) throws IOException {
+        // the put makes the entry the most recent one anyway
+        pendingAccesses.remove(fileName);
         PutLine putLine = new PutLine();
         putLine.meta = meta;
-        logToJournal(putLine, fileName);
+        scheduler.onPut(logToJournal(putLine, fileName));
         if (exists) {
             incrementRedundant(true);
+        } else if (adaptiveCompaction || checkpoint) {
+            checkCompaction(true);
+        }
+        flushAccessesIfDue();
+    }
+
+    private void flushAccessesIfDue() throws IOException {
+        if (!pendingAccesses.isEmpty() && System.nanoTime() - lastAccessFlush >= accessFlushNanos) {
+            flushAccesses();
+        }
+    }
+
+    void flushAccesses() throws IOException {
+        logAccesses();
+        checkCompaction(false);
+    }
+
+    // logs the coalesced accesses as a single line
+    private void logAccesses() throws IOException {
+        lastAccessFlush = System.nanoTime();
+        if (pendingAccesses.isEmpty()) {
+            return;
         }
+        RecencyLine<Meta> line = new RecencyLine<>();
+        line.fileNames = pendingAccesses.keySet().toArray(new String[pendingAccesses.size()]);
+        pendingAccesses.clear();
+        logToJournal(line, null);
+        redundantOpCount += line.fileNames.length;
     }
 
     public void initJournal() throws IOException {
+        if (startReplay()) {
+            while (!replay(Integer.MAX_VALUE)) {
+                // replays everything at once
+            }
+        }
+    }
+
+    // opens the journal for the replay, returns false if there is nothing to replay
+    boolean startReplay() throws IOException {
         try {
             if (!journal.exists()){
                 VirtualFile backup = fileSystem.get(JOURNAL_TMP_FILE_NAME);
@@ -84,61 +526,301 @@ public class Journal<Meta> {
                     backup.renameTo(journal);
                 } else {
                     createEmptyJournal();
-                    return;
+                    return false;
                 }
             }
-            if (journal.length() < TransactionalFile.HEADER_SIZE) {
+            replayLimit = journal.length();
+            if (replayLimit < TransactionalFile.HEADER_SIZE) {
                 createEmptyJournal();
-                return;
+                return false;
             }
         } catch (IOException e) {
             close();
             throw e;
         }
 
-        journalFile = journal.createTransactionalFile();
+        journalFile = openJournalFile(journal);
         try {
-            init();
+            journalFile.init();
+            replayInput = new Input(journalFile.getInputStream());
+            try {
+                MagicLine magicLine = kryo.readObject(replayInput, MagicLine.class);
+                magicLine.verify();
+                magicLine.verifyCodec(codecName());
+                replayVersion = magicLine.version;
+                layout = FileLayout.of(magicLine.layoutLevels, magicLine.layoutFanOut);
+            } catch (RuntimeException e) {
+                throw new IOException(e);
+            }
+            replayBase = 0;
+            replayedLines = 0;
+            checkpointBytes = 0;
+            droppedRecords = 0;
+            droppedBytes = 0;
+            return true;
         } catch (@NotNull IOException | RuntimeException e) {
             //e.printStackTrace();    //TODO log
+            closeReplay();
             createEmptyJournal();
+            return false;
         }
     }
 
-    void createEmptyJournal() throws IOException {
-        if (journalFile != null) {
-            journalFile.close();
+    // replays at most the given number of lines, a checkpoint counts as one line; returns true when the whole
+    // journal is replayed and open for writing. A corrupted record is skipped, if its frame is intact, otherwise
+    // the replay stops there and keeps the state before it
+    boolean replay(int maxLines) throws IOException {
+        try {
+            Exception failure = null;
+            for (int i = 0; i < maxLines && !replayInput.eof(); i++) {
+                long position = replayPosition();
+                try {
+                    Line<Meta> line = readLine();
+                    if (line != null) {
+                        runLine(line);
+                    }
+                } catch (@NotNull IOException | RuntimeException e) {
+                    failure = e;
+                    droppedBytes += replayPosition() - position + skipReplay();
+                    break;
+                }
+            }
+            if (failure == null && !replayInput.eof()) {
+                return false;
+            }
+            journalOutput = new Output(journalFile.getOutputStream());
+            redundantOpCount = replayedLines - cache.getEntitiesCount();
+            scheduler.onOpen(replayPosition() + checkpointBytes, replayedLines);
+            closeReplay();
+            if (failure != null || droppedRecords > 0) {
+                salvaged = true;
+                scheduler.onSalvage(droppedRecords, droppedBytes);
+                LOG.log(Level.WARNING, "Journal salvaged: dropped " + droppedRecords + " corrupted records and "
+                        + droppedBytes + " bytes, kept " + cache.getEntitiesCount() + " entries", failure);
+            }
+            if (salvaged || replayVersion != MagicLine.VERSION
+                    || framed != journalFile instanceof FramedTransactionalFile) {
+                // rewrites the journal without the dropped records, in the current format and commit protocol
+                compactJournalFile();
+            }
+        } catch (@NotNull IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Journal dropped", e);
+            closeReplay();
+            createEmptyJournal();
         }
-        kryo.reset();
-        createNewJournal(journal, kryo, false, true);
+        return true;
     }
 
-    private void init() throws IOException, KryoException {
-        journalFile.init();
-        Input input = new Input(journalFile.getInputStream());
+    // returns null for a skipped record
+    @Nullable
+    private Line<Meta> readLine() throws IOException {
+        if (replayVersion == MagicLine.LEGACY_VERSION) {
+            @SuppressWarnings("unchecked")
+            Line<Meta> line = (Line<Meta>) kryo.readClassAndObject(replayInput);
+            return line;
+        }
+        if (replayVersion == MagicLine.UNFRAMED_VERSION) {
+            return readRecord(replayInput, codec);
+        }
+        long position = replayPosition();
+        int size = readFrame();
+        if (size < 0) {
+            droppedRecords++;
+            if (!resync(-size)) {
+                throw new IOException("Damaged journal record at " + position);
+            }
+            droppedBytes += replayPosition() - position;
+            // the resync has found an intact frame
+            size = readFrame();
+        }
         try {
+            return readRecord(new Input(replayFrame, replayFrameHeader, size - replayFrameHeader - 4), codec);
+        } catch (@NotNull IOException | RuntimeException e) {
+            // e.g. the meta class has changed
+            LOG.log(Level.FINE, "Undecodable journal record at " + position, e);
+            droppedRecords++;
+            droppedBytes += size;
+            return null;
+        }
+    }
+
+    // reads the next frame to the replay frame buffer, returns its size or minus the number of the read bytes,
+    // if the frame is damaged
+    private int readFrame() throws IOException {
+        int count = 0;
+        int length = 0;
+        byte b;
+        do {
+            if (replayInput.eof()) {
+                return -count;
+            }
+            b = replayInput.readByte();
+            replayFrame[count] = b;
+            length |= (b & 0x7F) << (7 * count);
+            count++;
+        } while ((b & 0x80) != 0 && count < 5);
+        if ((b & 0x80) != 0 || length <= 0 || length > replayLimit - replayPosition()) {
+            return -count;
+        }
+        int size = count + length + 4;
+        if (replayFrame.length < size) {
+            replayFrame = Arrays.copyOf(replayFrame, Math.max(size, replayFrame.length * 2));
+        }
+        int read = count;
+        while (read < size) {
+            int bytes = replayInput.read(replayFrame, read, size - read);
+            if (bytes < 0) {
+                return -read;
+            }
+            read += bytes;
+        }
+        if (!isIntactFrame(replayFrame, 0, size)) {
+            return -size;
+        }
+        replayFrameHeader = count;
+        return size;
+    }
+
+    // looks for an intact frame after the first byte of the damaged one, returns false if there is none
+    // within the window
+    private boolean resync(int damagedSize) throws IOException {
+        byte[] window = new byte[damagedSize - 1 + RESYNC_WINDOW];
+        System.arraycopy(replayFrame, 1, window, 0, damagedSize - 1);
+        int size = damagedSize - 1;
+        int read;
+        while (size < window.length && (read = replayInput.read(window, size, window.length - size)) > 0) {
+            size += read;
+        }
+        long end = replayPosition();
+        for (int offset = 0; offset < size; offset++) {
+            if (isIntactFrame(window, offset, size)) {
+                replayBase = end - (size - offset);
+                replayInput = new Input(new SequenceInputStream(
+                        new ByteArrayInputStream(window, offset, size - offset), replayInput));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIntactFrame(@NotNull byte[] bytes, int offset, int limit) {
+        int length = 0;
+        int header = 0;
+        byte b;
+        do {
+            if (offset + header >= limit) {
+                return false;
+            }
+            b = bytes[offset + header];
+            length |= (b & 0x7F) << (7 * header);
+            header++;
+        } while ((b & 0x80) != 0 && header < 5);
+        if ((b & 0x80) != 0 || length <= 0 || length > limit - offset - header - 4) {
+            return false;
+        }
+        int end = offset + header + length;
+        int checksum = (bytes[end] & 0xFF) << 24 | (bytes[end + 1] & 0xFF) << 16
+                | (bytes[end + 2] & 0xFF) << 8 | (bytes[end + 3] & 0xFF);
+        return checksum == Crc32c.compute(bytes, offset + header, length);
+    }
+
+    private long replayPosition() {
+        return replayBase + replayInput.total();
+    }
+
+    private void runLine(@NotNull Line<Meta> line) throws IOException {
+        if (line instanceof CheckpointLine) {
+            if (replayedLines > 0 || generation > 0) {
+                throw new IOException("Checkpoint in the middle of the journal");
+            }
+            generation = ((CheckpointLine) line).generation;
             try {
-                MagicLine magicLine = kryo.readObject(input, MagicLine.class);
-                magicLine.verify();
-            } catch (RuntimeException e) {
-                throw new IOException(e);
+                replayedLines = loadCheckpoint(generation);
+                checkpointBytes = fileSystem.get(CHECKPOINT_FILE_PREFIX + generation).length();
+            } catch (@NotNull IOException | RuntimeException e) {
+                // the tail is still valid, so the journal is salvaged with the entries read so far
+                LOG.log(Level.WARNING, "Checkpoint " + generation + " dropped", e);
+                droppedRecords++;
+                replayedLines = cache.getEntitiesCount();
             }
-            int linesCount = 0;
-            while (!input.eof()) {
-                @SuppressWarnings("unchecked")
-                Line<Meta> line = (Line<Meta>) kryo.readClassAndObject(input);
-                line.run(cache);
-                linesCount++;
+        } else if (line instanceof BatchLine) {
+            for (Line<Meta> batchLine : ((BatchLine<Meta>) line).lines) {
+                batchLine.run(cache);
             }
-            journalOutput = new Output(journalFile.getOutputStream());
-            redundantOpCount = linesCount - cache.getEntitiesCount();
-        } finally {
-            Util.closeQuietly(input);
+            replayedLines += ((BatchLine<Meta>) line).lines.size();
+            tailLines += ((BatchLine<Meta>) line).lines.size();
+        } else if (line instanceof ResetLine) {
+            kryo.reset();
+            replayedLines++;
+            tailLines++;
+        } else {
+            line.run(cache);
+            replayedLines++;
+            tailLines++;
         }
     }
 
-    private void createNewJournal(@NotNull VirtualFile file, @NotNull Kryo kryo, boolean writeLines, boolean assignOutput)
-            throws IOException {
+    // returns the number of the skipped bytes
+    private long skipReplay() {
+        long skipped = 0;
+        byte[] buffer = new byte[8192];
+        try {
+            int count;
+            while ((count = replayInput.read(buffer)) > 0) {
+                skipped += count;
+            }
+        } catch (KryoException e) {
+            //e.printStackTrace();//TODO log
+        }
+        return skipped;
+    }
+
+    // the last replay dropped some records, so the entries of the cache may be missing or stale
+    boolean isSalvaged() {
+        return salvaged;
+    }
+
+    // the layout recorded by the replayed journal, or the configured one for a new journal
+    @NotNull
+    FileLayout getLayout() {
+        return layout;
+    }
+
+    // records the layout, once the files are moved to it, by rewriting the journal
+    void setLayout(@NotNull FileLayout layout) throws IOException {
+        this.layout = layout;
+        compactJournal();
+    }
+
+    private void closeReplay() {
+        if (replayInput != null) {
+            Util.closeQuietly(replayInput);
+            replayInput = null;
+        }
+    }
+
+    void createEmptyJournal() throws IOException {
+        abortCompaction();
+        if (journalFile != null) {
+            journalFile.close();
+        }
+        deleteCheckpoint(generation);
+        generation = 0;
+        tailLines = 0;
+        pendingAccesses.clear();
+        scheduler.onOpen(createNewJournal(journal, false, true, 0), 0);
+    }
+
+    // returns the number of written bytes, with the checkpoint generation above 0 the entries are written to
+    // the checkpoint instead of the journal
+    private long createNewJournal(@NotNull VirtualFile file, boolean writeLines, boolean assignOutput,
+                                  long checkpointGeneration) throws IOException {
+        long checkpointBytes = 0;
+        if (writeLines && checkpointGeneration > 0) {
+            checkpointBytes = writeCheckpoint(checkpointGeneration, cache.getEntitiesCount(),
+                    cache.getEntriesIterator());
+            writeLines = false;
+        }
 
         recreate(file);
         TransactionalVirtualFile tmpJournal;
@@ -148,15 +830,18 @@ public class Journal<Meta> {
             tmpJournal = journalFile;
             output = journalOutput;
         } else {
-            tmpJournal = file.createTransactionalFile();
+            tmpJournal = createJournalFile(file);
             output = new Output(tmpJournal.getOutputStream());
         }
         try {
             try {
                 tmpJournal.createEmpty();
-                kryo.writeObject(output, MagicLine.createLine());
+                writeMagicLine(output, layout);
+                if (checkpointGeneration > 0) {
+                    writer.write(output, CheckpointLine.<Meta>createLine(checkpointGeneration));
+                }
                 if (writeLines) {
-                    writeLines(kryo, output);
+                    writeLines(output);
                 }
                 output.flush();
                 tmpJournal.commit();
@@ -171,25 +856,297 @@ public class Journal<Meta> {
             }
             tmpJournal.close();
             file.delete();
+            deleteCheckpoint(checkpointGeneration);
             throw e;
         }
+        long bytes = output.total() + checkpointBytes;
         if (!assignOutput) {
             output.close();
             tmpJournal.close();
         }
+        return bytes;
     }
 
     private void compactJournal() throws IOException {
+        if (compactionExecutor != null) {
+            startCompaction();
+            return;
+        }
+        if (!groupCommit) {
+            compactJournalFile();
+            return;
+        }
+        // the compacted journal already reflects the pending lines
+        synchronized (ioLock) {
+            long toSequence;
+            synchronized (batchLock) {
+                batchEpoch++;
+                pendingBatch.clear();
+                pendingCount = 0;
+                toSequence = loggedSequence;
+            }
+            compactJournalFile();
+            synchronized (batchLock) {
+                onCommitted(committedSequence, toSequence, null);
+                batchLock.notifyAll();
+            }
+        }
+    }
+
+    private void compactJournalFile() throws IOException {
         VirtualFile file = fileSystem.get(JOURNAL_TMP_FILE_NAME);
-        Kryo kryo = createKryo();
-        createNewJournal(file, kryo, true, false);
+        long start = System.nanoTime();
+        long newGeneration = checkpoint ? generation + 1 : 0;
+        long bytes = createNewJournal(file, true, false, newGeneration);
+        scheduler.onCompaction(bytes, bytes, cache.getEntitiesCount(), System.nanoTime() - start);
 
-        this.kryo = kryo;
+        closeJournalFile();
         journal.delete();
         file.renameTo(journal);
         reopenJournal();
+        switchCheckpoint(newGeneration);
 
         redundantOpCount = 0;
+        tailLines = 0;
+        // the new journal is written in the current recency order
+        pendingAccesses.clear();
+    }
+
+    // takes a snapshot of the entries and writes it to the temporary journal in the background
+    private void startCompaction() {
+        if (compaction != null) {
+            return;
+        }
+        final Compaction compaction = new Compaction(cache.getEntitiesCount(), redundantOpCount, tailLines,
+                checkpoint ? generation + 1 : 0);
+        Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Meta> entry = iterator.next();
+            compaction.fileNames.add(entry.getKey());
+            compaction.metas.add(entry.getValue());
+        }
+        this.compaction = compaction;
+        try {
+            compactionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeSnapshot(compaction);
+                }
+            });
+        } catch (RuntimeException e) {
+            //e.printStackTrace();//TODO log
+            this.compaction = null;
+        }
+    }
+
+    // runs on the executor, so it mustn't touch anything but the compaction
+    private void writeSnapshot(@NotNull Compaction compaction) {
+        if (!compaction.started.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            long checkpointBytes = 0;
+            if (compaction.generation > 0) {
+                checkpointBytes = writeCheckpoint(compaction.generation, compaction.fileNames.size(),
+                        compaction.entriesIterator());
+            }
+            VirtualFile file = fileSystem.get(JOURNAL_TMP_FILE_NAME);
+            recreate(file);
+            compaction.file = createJournalFile(file);
+            compaction.output = new Output(compaction.file.getOutputStream());
+            compaction.file.createEmpty();
+            writeMagicLine(compaction.output, layout);
+            if (compaction.generation > 0) {
+                compaction.writer.write(compaction.output, CheckpointLine.<Meta>createLine(compaction.generation));
+            } else {
+                PutLine<Meta> line = new PutLine<>();
+                for (int i = 0; i < compaction.fileNames.size(); i++) {
+                    line.fileName = compaction.fileNames.get(i);
+                    line.meta = compaction.metas.get(i);
+                    compaction.writer.write(compaction.output, line);
+                }
+            }
+            compaction.output.flush();
+            compaction.file.commit();
+            compaction.checkpointBytes = checkpointBytes;
+            compaction.snapshotBytes = compaction.output.total() + checkpointBytes;
+            for (int round = 0; round < COMPACTION_CATCH_UP_ROUNDS; round++) {
+                List<Line<Meta>> lines = compaction.takeBacklog(COMPACTION_BACKLOG_THRESHOLD);
+                if (lines == null) {
+                    break;
+                }
+                compaction.write(lines);
+            }
+        } catch (@NotNull IOException | RuntimeException e) {
+            compaction.failed = true;
+        } finally {
+            compaction.nanos = System.nanoTime() - start;
+            compaction.fileNames.clear();
+            compaction.metas.clear();
+            compaction.done.countDown();
+        }
+    }
+
+    private void finishCompactionIfDone() throws IOException {
+        if (compaction == null || compaction.done.getCount() > 0) {
+            return;
+        }
+        if (!groupCommit) {
+            finishCompaction();
+            return;
+        }
+        // the backlog contains the pending lines too
+        synchronized (ioLock) {
+            long toSequence;
+            synchronized (batchLock) {
+                batchEpoch++;
+                pendingBatch.clear();
+                pendingCount = 0;
+                toSequence = loggedSequence;
+            }
+            finishCompaction();
+            synchronized (batchLock) {
+                onCommitted(committedSequence, toSequence, null);
+                batchLock.notifyAll();
+            }
+        }
+    }
+
+    // appends the lines logged since the snapshot and switches to the new journal
+    private void finishCompaction() throws IOException {
+        Compaction compaction = this.compaction;
+        this.compaction = null;
+        if (compaction.failed) {
+            //TODO log
+            compaction.discard();
+            return;
+        }
+        try {
+            compaction.write(compaction.takeBacklog(0));
+        } catch (KryoException e) {
+            compaction.discard();
+            throwIOException(e);
+        } catch (IOException e) {
+            compaction.discard();
+            throw e;
+        }
+        scheduler.onCompaction(compaction.snapshotBytes, compaction.output.total() + compaction.checkpointBytes,
+                compaction.entitiesCount, compaction.nanos);
+        compaction.close();
+
+        closeJournalFile();
+        journal.delete();
+        fileSystem.get(JOURNAL_TMP_FILE_NAME).renameTo(journal);
+        reopenJournal();
+        switchCheckpoint(compaction.generation);
+
+        redundantOpCount -= compaction.redundantOpCount;
+        tailLines -= compaction.tailLines;
+    }
+
+    private void abortCompaction() {
+        Compaction compaction = this.compaction;
+        if (compaction == null) {
+            return;
+        }
+        this.compaction = null;
+        if (compaction.started.compareAndSet(false, true)) {
+            // the executor hasn't got to it yet, so it never will
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                compaction.done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        compaction.discard();
+    }
+
+    private void closeJournalFile() {
+        if (journalFile != null) {
+            journalFile.close();
+            journalFile = null;
+        }
+    }
+
+    // the journal refers to the new checkpoint now, so the previous one is not needed anymore
+    private void switchCheckpoint(long newGeneration) {
+        if (newGeneration != generation) {
+            deleteCheckpoint(generation);
+            generation = newGeneration;
+        }
+    }
+
+    private void deleteCheckpoint(long generation) {
+        if (generation <= 0) {
+            return;
+        }
+        try {
+            VirtualFile file = fileSystem.get(CHECKPOINT_FILE_PREFIX + generation);
+            if (file.exists()) {
+                file.delete();
+            }
+        } catch (IOException e) {
+            //e.printStackTrace();//TODO log
+        }
+    }
+
+    // writes the entries in the LRU order, returns the number of written bytes
+    private long writeCheckpoint(long generation, int count, @NotNull Iterator<Map.Entry<String, Meta>> iterator)
+            throws IOException {
+        VirtualFile file = fileSystem.get(CHECKPOINT_FILE_PREFIX + generation);
+        recreate(file);
+        TransactionalVirtualFile checkpointFile = file.createTransactionalFile();
+        Output output = new Output(checkpointFile.getOutputStream(), CHECKPOINT_BUFFER_SIZE);
+        try {
+            checkpointFile.createEmpty();
+            Checkpoint.write(output, generation, count, iterator, createKryo());
+            output.flush();
+            checkpointFile.commit();
+            return output.total();
+        } catch (KryoException e) {
+            file.delete();
+            throwIOException(e);
+            return 0;
+        } catch (@NotNull IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        } finally {
+            try {
+                output.close();
+            } catch (KryoException e) {
+                //e.printStackTrace();//TODO log
+            }
+            checkpointFile.close();
+        }
+    }
+
+    // puts the entries of the checkpoint to the cache, returns the number of the entries
+    private int loadCheckpoint(long generation) throws IOException {
+        VirtualFile file = fileSystem.get(CHECKPOINT_FILE_PREFIX + generation);
+        if (!file.exists()) {
+            throw new IOException("No checkpoint " + generation);
+        }
+        TransactionalVirtualFile checkpointFile = file.createTransactionalFile();
+        Input input = new Input(checkpointFile.getInputStream(), CHECKPOINT_BUFFER_SIZE);
+        try {
+            checkpointFile.init();
+            return Checkpoint.read(input, generation, cache, createKryo());
+        } catch (KryoException e) {
+            throwIOException(e);
+            return 0;
+        } finally {
+            Util.closeQuietly(input);
+            checkpointFile.close();
+        }
     }
 
     private static void recreate(@NotNull VirtualFile file) throws IOException {
@@ -201,38 +1158,224 @@ public class Journal<Meta> {
 
     private void incrementRedundant(boolean allowRebuild) throws IOException {
         redundantOpCount++;
-        if (allowRebuild && redundantOpCount > MAX_REDUNDANT_OPERATION_COUNT) {
+        checkCompaction(allowRebuild);
+    }
+
+    // the adaptive trigger ignores allowRebuild, the compaction is as cheap for any operation
+    private void checkCompaction(boolean allowRebuild) throws IOException {
+        if (batch != null) {
+            return;
+        }
+        if (adaptiveCompaction) {
+            if (scheduler.shouldCompact(cache.getEntitiesCount()) || isTailTooLong()) {
+                compactJournal();
+            }
+        } else if (allowRebuild && (redundantOpCount > MAX_REDUNDANT_OPERATION_COUNT || isTailTooLong())) {
             compactJournal();
         }
     }
 
+    // the tail is replayed line by line on startup, so it is kept short compared with the checkpoint
+    private boolean isTailTooLong() {
+        return checkpoint && tailLines > MAX_REDUNDANT_OPERATION_COUNT
+                && tailLines > checkpointTailShare * cache.getEntitiesCount();
+    }
+
+    @NotNull
+    private TransactionalVirtualFile createJournalFile(@NotNull VirtualFile file) throws IOException {
+        TransactionalVirtualFile transactionalFile = file.createTransactionalFile();
+        return framed ? new FramedTransactionalFile(transactionalFile) : transactionalFile;
+    }
+
+    @NotNull
+    private TransactionalVirtualFile openJournalFile(@NotNull VirtualFile file) throws IOException {
+        TransactionalVirtualFile transactionalFile = file.createTransactionalFile();
+        try {
+            if (FramedTransactionalFile.isFramed(transactionalFile)) {
+                return new FramedTransactionalFile(transactionalFile);
+            }
+        } catch (IOException e) {
+            transactionalFile.close();
+            throw e;
+        }
+        return transactionalFile;
+    }
+
     private void reopenJournal() throws IOException {
-        journalFile = journal.createTransactionalFile();
+        journalFile = createJournalFile(journal);
+        journalFile.seekToEnd();
         journalOutput = new Output(journalFile.getOutputStream());
     }
 
-    private void writeLines(@NotNull Kryo kryo, Output output) {
+    private void writeLines(Output output) {
         Iterator<Map.Entry<String, Meta>> iterator = cache.getEntriesIterator();
         PutLine<Meta> line = new PutLine<>();
         while(iterator.hasNext()) {
             Map.Entry<String, Meta> entry = iterator.next();
             line.fileName = entry.getKey();
             line.meta = entry.getValue();
-            kryo.writeClassAndObject(output, line);
+            writer.write(output, line);
         }
     }
 
-    private void logToJournal(@NotNull Line line, String fileName) throws IOException {
+    // returns the number of bytes the line took, within a batch the line is only queued
+    private int logToJournal(@NotNull Line<Meta> line, String fileName) throws IOException {
         line.fileName = fileName;
-        try {
-            kryo.writeClassAndObject(journalOutput, line);
-            journalOutput.flush();
-        } catch (KryoException e) {
-            throwIOException(e);
+        if (batch != null) {
+            batch.add(line);
+            return 0;
         }
-        journalFile.commit();
+        finishCompactionIfDone();
+        if (compaction != null) {
+            compaction.addToBacklog(line);
+        }
+        int bytes;
+        if (groupCommit) {
+            synchronized (batchLock) {
+                int position = pendingBatch.position();
+                try {
+                    writer.write(pendingBatch, line);
+                } catch (KryoException e) {
+                    throwIOException(e);
+                }
+                bytes = pendingBatch.position() - position;
+                loggedSequence++;
+                if (++pendingCount >= maxBatchSize) {
+                    batchLock.notifyAll();
+                }
+            }
+        } else {
+            int total = journalOutput.total();
+            try {
+                writer.write(journalOutput, line);
+                journalOutput.flush();
+            } catch (KryoException e) {
+                throwIOException(e);
+            }
+            journalFile.commit();
+            bytes = journalOutput.total() - total;
+        }
+        scheduler.onAppend(bytes);
+        tailLines++;
+        return bytes;
+    }
+
+    // writes the lines with a single commit
+    private void appendLines(@NotNull List<Line<Meta>> lines) throws IOException {
+        finishCompactionIfDone();
+        if (compaction != null) {
+            for (Line<Meta> line : lines) {
+                compaction.addToBacklog(line);
+            }
+        }
+        long bytes;
+        if (groupCommit) {
+            synchronized (batchLock) {
+                int position = pendingBatch.position();
+                try {
+                    for (Line<Meta> line : lines) {
+                        writer.write(pendingBatch, line);
+                    }
+                } catch (KryoException e) {
+                    throwIOException(e);
+                }
+                bytes = pendingBatch.position() - position;
+                loggedSequence++;
+                if (++pendingCount >= maxBatchSize) {
+                    batchLock.notifyAll();
+                }
+            }
+        } else {
+            long total = journalOutput.total();
+            try {
+                for (Line<Meta> line : lines) {
+                    writer.write(journalOutput, line);
+                }
+                journalOutput.flush();
+            } catch (KryoException e) {
+                throwIOException(e);
+            }
+            journalFile.commit();
+            bytes = journalOutput.total() - total;
+        }
+        scheduler.onAppend(bytes);
+    }
+
+    // the default codec keeps kryo state, so it can't be shared with the compaction
+    @NotNull
+    private MetaCodec<Meta> createMetaCodec() {
+        if (metaCodec != null) {
+            return metaCodec;
+        }
+        @SuppressWarnings("unchecked")
+        MetaCodec<Meta> codec = (MetaCodec<Meta>) (MetaCodec) new KryoMetaCodec();
+        return codec;
+    }
+
+    // the magic line is written with kryo in all the versions, so that any version can be recognized
+    private void writeMagicLine(@NotNull Output output, @NotNull FileLayout layout) {
+        createKryo().writeObject(output, MagicLine.createLine(layout, codecName()));
+    }
+
+    // the records of another codec can't be decoded, so the journal with them is dropped on open
+    @NotNull
+    private String codecName() {
+        return (metaCodec != null ? metaCodec.getClass() : KryoMetaCodec.class).getName();
+    }
+
+    @NotNull
+    private static <Meta> Line<Meta> readRecord(@NotNull Input input, @NotNull MetaCodec<Meta> codec)
+            throws IOException {
+        Line<Meta> line;
+        byte opcode = input.readByte();
+        switch (opcode) {
+            case PUT:
+                line = new PutLine<>();
+                break;
+            case PACKED_PUT:
+                PutLine<Meta> putLine = new PutLine<>();
+                putLine.packed = true;
+                line = putLine;
+                break;
+            case REMOVE:
+                line = new RemoveLine<>();
+                break;
+            case ACCESS:
+                line = new AccessLine<>();
+                break;
+            case REJECT:
+                line = new RejectLine<>();
+                break;
+            case CHECKPOINT:
+                line = new CheckpointLine<>();
+                break;
+            case RECENCY:
+                line = new RecencyLine<>();
+                break;
+            case BATCH:
+                line = new BatchLine<>();
+                break;
+            default:
+                throw new IOException("Wrong record opcode: " + opcode);
+        }
+        line.read(input, codec);
+        return line;
     }
 
+    // the key is stored as its UTF-8 length and bytes
+    private static void writeKey(@NotNull Output output, @NotNull String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        output.writeVarInt(bytes.length, true);
+        output.writeBytes(bytes);
+    }
+
+    @NotNull
+    private static String readKey(@NotNull Input input) {
+        int length = input.readVarInt(true);
+        return new String(input.readBytes(length), StandardCharsets.UTF_8);
+    }
+
+    // reads the journals of all the versions, the lines are written with kryo only in the legacy ones
     @NotNull
     static Kryo createKryo() {
         Kryo kryo = new Kryo(new MapReferenceResolver() {
@@ -247,6 +1390,10 @@ public class Journal<Meta> {
         kryo.register(RemoveLine.class);
         kryo.register(PutLine.class);
         kryo.register(AccessLine.class);
+        kryo.register(RejectLine.class);
+        kryo.register(CheckpointLine.class);
+        kryo.register(ResetLine.class);
+        kryo.register(RecencyLine.class);
         kryo.setAutoReset(false);
         return kryo;
     }
@@ -258,28 +1405,197 @@ public class Journal<Meta> {
         throw new IOException(e);
     }
 
+    private class Compaction {
+
+        @NotNull
+        final RecordWriter<Meta> writer = new RecordWriter<>(createMetaCodec());
+        final List<String> fileNames;
+        final List<Meta> metas;
+        // the redundant lines the compaction gets rid of
+        final int redundantOpCount;
+        final int tailLines;
+        final int entitiesCount;
+        // the generation of the checkpoint to write the snapshot to, 0 to write it to the journal
+        final long generation;
+        volatile long checkpointBytes;
+        volatile long snapshotBytes;
+        volatile long nanos;
+        // the lines logged since the snapshot, not written to the new journal yet
+        private List<Line<Meta>> backlog = new ArrayList<>();
+        final AtomicBoolean started = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean failed;
+        TransactionalVirtualFile file;
+        Output output;
+
+        Compaction(int entitiesCount, int redundantOpCount, int tailLines, long generation) {
+            this.fileNames = new ArrayList<>(entitiesCount);
+            this.metas = new ArrayList<>(entitiesCount);
+            this.redundantOpCount = redundantOpCount;
+            this.tailLines = tailLines;
+            this.entitiesCount = entitiesCount;
+            this.generation = generation;
+        }
+
+        @NotNull
+        Iterator<Map.Entry<String, Meta>> entriesIterator() {
+            return new Iterator<Map.Entry<String, Meta>>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < fileNames.size();
+                }
+
+                @Override
+                public Map.Entry<String, Meta> next() {
+                    Map.Entry<String, Meta> entry =
+                            new AbstractMap.SimpleImmutableEntry<>(fileNames.get(index), metas.get(index));
+                    index++;
+                    return entry;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        synchronized void addToBacklog(@NotNull Line<Meta> line) {
+            backlog.add(line);
+        }
+
+        // returns null, if there are no more lines than the threshold
+        @Nullable
+        synchronized List<Line<Meta>> takeBacklog(int threshold) {
+            if (backlog.size() <= threshold && threshold > 0) {
+                return null;
+            }
+            List<Line<Meta>> lines = backlog;
+            backlog = new ArrayList<>();
+            return lines;
+        }
+
+        void write(@NotNull List<Line<Meta>> lines) throws IOException {
+            for (Line<Meta> line : lines) {
+                writer.write(output, line);
+            }
+            output.flush();
+            file.commit();
+        }
+
+        void close() {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (KryoException e) {
+                    //e.printStackTrace();//TODO log
+                }
+            }
+            if (file != null) {
+                file.close();
+            }
+        }
+
+        void discard() {
+            close();
+            try {
+                fileSystem.get(JOURNAL_TMP_FILE_NAME).delete();
+            } catch (IOException e) {
+                //e.printStackTrace();//TODO log
+            }
+            deleteCheckpoint(generation);
+        }
+    }
+
+    // the sequences (from, to] of a failed group commit
+    private static class FailedCommit {
+        final long fromSequence;
+        long toSequence;
+        @NotNull
+        IOException failure;
+
+        FailedCommit(long fromSequence, long toSequence, @NotNull IOException failure) {
+            this.fromSequence = fromSequence;
+            this.toSequence = toSequence;
+            this.failure = failure;
+        }
+    }
+
+    // writes the lines as [varint length][record][int crc32c of the record], the record is the opcode and
+    // the payload of the line; the journal is written by one thread at a time, so the buffer is reused. In the
+    // framed journal the records are checksummed twice: the frame crc32 finds the last complete commit on init,
+    // while the record crc32c lets the replay skip a damaged record instead of dropping the rest of the frame
+    private static class RecordWriter<Meta> {
+        @NotNull
+        private final MetaCodec<Meta> codec;
+        private final Output buffer = new Output(256, -1);
+
+        RecordWriter(@NotNull MetaCodec<Meta> codec) {
+            this.codec = codec;
+        }
+
+        void write(@NotNull Output output, @NotNull Line<Meta> line) {
+            buffer.clear();
+            buffer.writeByte(line.opcode());
+            line.write(buffer, codec);
+            int length = buffer.position();
+            output.writeVarInt(length, true);
+            output.writeBytes(buffer.getBuffer(), 0, length);
+            output.writeInt(Crc32c.compute(buffer.getBuffer(), 0, length));
+        }
+    }
+
     static class MagicLine {
 
         private static final String MAGIC = "DiskLruCacheJournal";
-        private static final int VERSION = 1;
+        // the lines are written with kryo instead of the binary records
+        static final int LEGACY_VERSION = 1;
+        // the binary records aren't framed with the length and the checksum
+        static final int UNFRAMED_VERSION = 2;
+        // the layout of the entry files isn't recorded, it is flat
+        static final int UNSHARDED_VERSION = 3;
+        // the meta codec isn't recorded, so the records are decoded with whatever codec is configured
+        static final int UNCODED_VERSION = 4;
+        static final int VERSION = 5;
 
         String magic;
         int version;
+        // the fields are missing in the older versions, which means the flat layout
+        int layoutLevels;
+        int layoutFanOut;
+        // the class name of the meta codec, which has written the records
+        String codec;
 
         public void verify() throws IOException {
             if (!MAGIC.equals(magic)) {
                 throw new IOException("Wrong magic: " + magic);
             }
-            if (version != VERSION) {
+            if (version < LEGACY_VERSION || version > VERSION) {
                 throw new IOException("Wrong version: " + version);
             }
         }
 
+        public void verifyCodec(@NotNull String codec) throws IOException {
+            if (version > UNCODED_VERSION && !codec.equals(this.codec)) {
+                throw new IOException("Wrong meta codec: " + this.codec + ", expected " + codec);
+            }
+        }
+
         @NotNull
         public static MagicLine createLine() {
+            return createLine(FileLayout.FLAT, KryoMetaCodec.class.getName());
+        }
+
+        @NotNull
+        public static MagicLine createLine(@NotNull FileLayout layout, @NotNull String codec) {
             MagicLine line = new MagicLine();
             line.version = VERSION;
             line.magic = MAGIC;
+            line.layoutLevels = layout.levels;
+            line.layoutFanOut = layout.fanOut;
+            line.codec = codec;
             return line;
         }
     }
@@ -287,6 +1603,17 @@ public class Journal<Meta> {
     private static abstract class Line<Meta> {
         String fileName;
         public abstract void run(CacheInternalAccess<Meta> cache) throws IOException;
+
+        // the opcode of the binary record
+        abstract byte opcode();
+
+        void write(@NotNull Output output, @NotNull MetaCodec<Meta> codec) {
+            writeKey(output, fileName);
+        }
+
+        void read(@NotNull Input input, @NotNull MetaCodec<Meta> codec) throws IOException {
+            fileName = readKey(input);
+        }
     }
 
     private static class RemoveLine<Meta> extends Line<Meta> {
@@ -294,6 +1621,11 @@ public class Journal<Meta> {
         public void run(@NotNull CacheInternalAccess<Meta> cache) throws IOException {
             cache.removeInternal(fileName);
         }
+
+        @Override
+        byte opcode() {
+            return REMOVE;
+        }
     }
 
     private static class AccessLine<Meta> extends Line<Meta> {
@@ -301,14 +1633,196 @@ public class Journal<Meta> {
         public void run(@NotNull CacheInternalAccess<Meta> cache) throws IOException {
             cache.accessInternal(fileName);
         }
+
+        @Override
+        byte opcode() {
+            return ACCESS;
+        }
+    }
+
+    // the entry was not admitted, only the access frequency is updated
+    private static class RejectLine<Meta> extends Line<Meta> {
+        @Override
+        public void run(@NotNull CacheInternalAccess<Meta> cache) throws IOException {
+            cache.accessInternal(fileName);
+        }
+
+        @Override
+        byte opcode() {
+            return REJECT;
+        }
+    }
+
+    // the first line after the magic one, the entries are stored in the checkpoint of the generation
+    private static class CheckpointLine<Meta> extends Line<Meta> {
+        long generation;
+
+        @Override
+        public void run(CacheInternalAccess<Meta> cache) throws IOException {
+            throw new IOException("Checkpoint should be loaded by the journal");
+        }
+
+        @Override
+        byte opcode() {
+            return CHECKPOINT;
+        }
+
+        @Override
+        void write(@NotNull Output output, @NotNull MetaCodec<Meta> codec) {
+            output.writeVarLong(generation, true);
+        }
+
+        @Override
+        void read(@NotNull Input input, @NotNull MetaCodec<Meta> codec) {
+            generation = input.readVarLong(true);
+        }
+
+        @NotNull
+        static <Meta> CheckpointLine<Meta> createLine(long generation) {
+            CheckpointLine<Meta> line = new CheckpointLine<>();
+            line.generation = generation;
+            return line;
+        }
+    }
+
+    // the lines of an atomic batch as [varint count] and the records without the frames
+    private static class BatchLine<Meta> extends Line<Meta> {
+        List<Line<Meta>> lines;
+
+        @Override
+        public void run(CacheInternalAccess<Meta> cache) throws IOException {
+            throw new IOException("Batch should be run by the journal");
+        }
+
+        @Override
+        byte opcode() {
+            return BATCH;
+        }
+
+        @Override
+        void write(@NotNull Output output, @NotNull MetaCodec<Meta> codec) {
+            output.writeVarInt(lines.size(), true);
+            for (Line<Meta> line : lines) {
+                output.writeByte(line.opcode());
+                line.write(output, codec);
+            }
+        }
+
+        @Override
+        void read(@NotNull Input input, @NotNull MetaCodec<Meta> codec) throws IOException {
+            int count = input.readVarInt(true);
+            lines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Line<Meta> line = readRecord(input, codec);
+                if (line instanceof BatchLine || line instanceof CheckpointLine) {
+                    throw new IOException("Wrong line in the batch: " + line.getClass().getSimpleName());
+                }
+                lines.add(line);
+            }
+        }
+    }
+
+    // legacy journals only: the kryo state is reset after this line, both for writing and reading
+    private static class ResetLine<Meta> extends Line<Meta> {
+        @Override
+        public void run(CacheInternalAccess<Meta> cache) {
+        }
+
+        @Override
+        byte opcode() {
+            throw new UnsupportedOperationException("ResetLine is not written anymore");
+        }
+    }
+
+    // the coalesced accesses, the keys are listed in the order of the last access
+    private static class RecencyLine<Meta> extends Line<Meta> implements KryoSerializable {
+        String[] fileNames;
+
+        @Override
+        public void run(@NotNull CacheInternalAccess<Meta> cache) throws IOException {
+            for (String fileName : fileNames) {
+                if (cache.containsInternal(fileName)) {
+                    cache.accessInternal(fileName);
+                }
+            }
+        }
+
+        @Override
+        byte opcode() {
+            return RECENCY;
+        }
+
+        @Override
+        void write(@NotNull Output output, @NotNull MetaCodec<Meta> codec) {
+            output.writeVarInt(fileNames.length, true);
+            for (String fileName : fileNames) {
+                writeKey(output, fileName);
+            }
+        }
+
+        @Override
+        void read(@NotNull Input input, @NotNull MetaCodec<Meta> codec) {
+            fileNames = new String[input.readVarInt(true)];
+            for (int i = 0; i < fileNames.length; i++) {
+                fileNames[i] = readKey(input);
+            }
+        }
+
+        @Override
+        public void write(@NotNull Kryo kryo, @NotNull Output output) {
+            output.writeVarInt(fileNames.length, true);
+            for (String fileName : fileNames) {
+                output.writeString(fileName);
+            }
+        }
+
+        @Override
+        public void read(@NotNull Kryo kryo, @NotNull Input input) {
+            fileNames = new String[input.readVarInt(true)];
+            for (int i = 0; i < fileNames.length; i++) {
+                fileNames[i] = input.readString();
+            }
+        }
     }
 
     private static class PutLine<Meta> extends Line<Meta> {
         private Meta meta;
+        private transient boolean packed;
         @Override
         public void run(@NotNull CacheInternalAccess<Meta> cache) throws IOException {
             cache.putMetaInternal(fileName, meta);
         }
+
+        @Override
+        byte opcode() {
+            return meta instanceof PackedMeta ? PACKED_PUT : PUT;
+        }
+
+        @Override
+        void write(@NotNull Output output, @NotNull MetaCodec<Meta> codec) {
+            super.write(output, codec);
+            if (meta instanceof PackedMeta) {
+                PackedMeta packedMeta = (PackedMeta) meta;
+                packedMeta.writeLocation(output);
+                @SuppressWarnings("unchecked")
+                Meta userMeta = (Meta) packedMeta.meta;
+                codec.write(output, userMeta);
+            } else {
+                codec.write(output, meta);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void read(@NotNull Input input, @NotNull MetaCodec<Meta> codec) throws IOException {
+            super.read(input, codec);
+            if (packed) {
+                PackedMeta.Location location = PackedMeta.readLocation(input);
+                meta = (Meta) new PackedMeta((FileMeta) codec.read(input), location);
+            } else {
+                meta = codec.read(input);
+            }
+        }
     }
 
 }
@@ -0,0 +1,78 @@
+package com.jakewharton.disklrucache;
+
+/**
+ * Gauges of the journal queue of {@link AsyncDiskLruCache} since the cache was opened.
+ */
+public class JournalQueueStats {
+
+    private final int depth;
+    private final int peakDepth;
+    private final long completedTasks;
+    private final long latencyNanos;
+    private final long maxLatencyNanos;
+    private final long droppedAccesses;
+    private final long rejectedWrites;
+
+    JournalQueueStats(int depth, int peakDepth, long completedTasks, long latencyNanos, long maxLatencyNanos,
+                      long droppedAccesses, long rejectedWrites) {
+        this.depth = depth;
+        this.peakDepth = peakDepth;
+        this.completedTasks = completedTasks;
+        this.latencyNanos = latencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.droppedAccesses = droppedAccesses;
+        this.rejectedWrites = rejectedWrites;
+    }
+
+    /**
+     * Tasks queued on the executor, including the running one.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getPeakDepth() {
+        return peakDepth;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * Mean time from queueing a task to its end, when its record is written and committed. With group commit
+     * the commit of the record may come up to a window later.
+     */
+    public long getMeanLatencyNanos() {
+        return completedTasks == 0 ? 0 : latencyNanos / completedTasks;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Access records dropped, because the queue was full.
+     */
+    public long getDroppedAccesses() {
+        return droppedAccesses;
+    }
+
+    /**
+     * Puts, removes and renewals failed, because the queue was full.
+     */
+    public long getRejectedWrites() {
+        return rejectedWrites;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalQueueStats{depth=" + depth +
+                ", peakDepth=" + peakDepth +
+                ", completed=" + completedTasks +
+                ", meanLatencyMicros=" + getMeanLatencyNanos() / 1000 +
+                ", maxLatencyMicros=" + maxLatencyNanos / 1000 +
+                ", droppedAccesses=" + droppedAccesses +
+                ", rejectedWrites=" + rejectedWrites + '}';
+    }
+}
@@ -0,0 +1,98 @@
+package com.jakewharton.disklrucache;
+
+/**
+ * Counters of the bytes written to the journal since the cache was opened.
+ */
+public class JournalStats {
+
+    private final long appendedBytes;
+    private final long compactionBytes;
+    private final int compactionCount;
+    private final long compactionNanos;
+    private final long journalBytes;
+    private final long liveBytes;
+    private final int droppedRecords;
+    private final long droppedBytes;
+
+    JournalStats(long appendedBytes, long compactionBytes, int compactionCount, long compactionNanos,
+                 long journalBytes, long liveBytes, int droppedRecords, long droppedBytes) {
+        this.appendedBytes = appendedBytes;
+        this.compactionBytes = compactionBytes;
+        this.compactionCount = compactionCount;
+        this.compactionNanos = compactionNanos;
+        this.journalBytes = journalBytes;
+        this.liveBytes = liveBytes;
+        this.droppedRecords = droppedRecords;
+        this.droppedBytes = droppedBytes;
+    }
+
+    /**
+     * Bytes of the lines logged by the cache operations.
+     */
+    public long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    /**
+     * Bytes written by the journal compactions.
+     */
+    public long getCompactionBytes() {
+        return compactionBytes;
+    }
+
+    public int getCompactionCount() {
+        return compactionCount;
+    }
+
+    public long getCompactionNanos() {
+        return compactionNanos;
+    }
+
+    /**
+     * Current size of the journal.
+     */
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    /**
+     * Estimated size of the journal right after a compaction.
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Corrupted records skipped by the journal replay.
+     */
+    public int getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    /**
+     * Bytes of the journal the replay couldn't use: the skipped records and the unreadable tail.
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * All the bytes written to the journal per byte of logged lines.
+     */
+    public double getWriteAmplification() {
+        return appendedBytes == 0 ? 1 : (double) (appendedBytes + compactionBytes) / appendedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalStats{appended=" + appendedBytes +
+                ", compacted=" + compactionBytes +
+                ", compactions=" + compactionCount +
+                ", compactionMillis=" + compactionNanos / 1000000 +
+                ", journal=" + journalBytes +
+                ", live=" + liveBytes +
+                ", droppedRecords=" + droppedRecords +
+                ", droppedBytes=" + droppedBytes +
+                ", amplification=" + getWriteAmplification() + '}';
+    }
+}
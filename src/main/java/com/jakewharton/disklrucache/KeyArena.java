@@ -0,0 +1,125 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append-only storage of UTF-8 keys, on the heap or off-heap. Every key is prefixed with its length.
+ * Removed keys stay in place until the owner copies the live keys into a fresh arena.
+ */
+class KeyArena {
+
+    static final int MAX_KEY_LENGTH = 0xFFFF;
+    private static final int HEADER_SIZE = 2;
+
+    private final boolean direct;
+    @NotNull
+    private ByteBuffer buffer;
+    private int position;
+    private int garbage;
+
+    KeyArena(boolean direct, int capacity) {
+        this.direct = direct;
+        this.buffer = allocate(direct, Math.max(capacity, 64));
+    }
+
+    @NotNull
+    static byte[] encode(@NotNull String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Key is too long: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    int append(@NotNull byte[] key) {
+        ensureCapacity(HEADER_SIZE + key.length);
+        int offset = position;
+        buffer.putShort(offset, (short) key.length);
+        for (int i = 0; i < key.length; i++) {
+            buffer.put(offset + HEADER_SIZE + i, key[i]);
+        }
+        position += HEADER_SIZE + key.length;
+        return offset;
+    }
+
+    int copyFrom(@NotNull KeyArena arena, int offset) {
+        int length = arena.length(offset);
+        ensureCapacity(HEADER_SIZE + length);
+        int newOffset = position;
+        buffer.putShort(newOffset, (short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(newOffset + HEADER_SIZE + i, arena.buffer.get(offset + HEADER_SIZE + i));
+        }
+        position += HEADER_SIZE + length;
+        return newOffset;
+    }
+
+    boolean equals(int offset, @NotNull byte[] key) {
+        if (length(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + HEADER_SIZE + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    String read(int offset) {
+        byte[] bytes = new byte[length(offset)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + HEADER_SIZE + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void release(int offset) {
+        garbage += HEADER_SIZE + length(offset);
+    }
+
+    // worth copying the live keys, when most of the arena is taken by removed ones
+    boolean isFragmented() {
+        return garbage > 4096 && garbage > position / 2;
+    }
+
+    @NotNull
+    KeyArena createCompacted() {
+        return new KeyArena(direct, (position - garbage) * 2);
+    }
+
+    int getUsedBytes() {
+        return position;
+    }
+
+    private int length(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra <= buffer.capacity()) {
+            return;
+        }
+        long capacity = Math.max(buffer.capacity() + (buffer.capacity() >> 1), (long) position + extra);
+        if (capacity > Integer.MAX_VALUE) {
+            if ((long) position + extra > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Key arena is full");
+            }
+            capacity = Integer.MAX_VALUE;
+        }
+        ByteBuffer newBuffer = allocate(direct, (int) capacity);
+        ByteBuffer source = buffer.duplicate();
+        source.position(0).limit(position);
+        newBuffer.put(source);
+        buffer = newBuffer;
+    }
+
+    @NotNull
+    private static ByteBuffer allocate(boolean direct, int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,49 @@
+package com.jakewharton.disklrucache;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The codec of the journal, when none is configured. A meta of exactly the {@link SimpleMeta} class is stored
+ * as its weight, any other one is serialized by kryo together with its class. Kryo keeps state between the
+ * objects, so every journal and compaction uses its own instance.
+ */
+class KryoMetaCodec implements MetaCodec<Object> {
+
+    private static final byte SIMPLE_META = 0;
+    private static final byte KRYO_META = 1;
+
+    private final Kryo kryo = new Kryo();
+
+    KryoMetaCodec() {
+        // the state is reset after every meta, so that a record doesn't depend on the previous ones
+        kryo.setDefaultSerializer(CompatibleFieldSerializer.class);
+        kryo.setReferences(false);
+    }
+
+    @Override
+    public void write(@NotNull Output output, @NotNull Object meta) {
+        if (meta.getClass() == SimpleMeta.class) {
+            output.writeByte(SIMPLE_META);
+            output.writeVarLong(((SimpleMeta) meta).weight(), true);
+        } else {
+            output.writeByte(KRYO_META);
+            kryo.writeClassAndObject(output, meta);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Object read(@NotNull Input input) {
+        byte type = input.readByte();
+        if (type == SIMPLE_META) {
+            return new SimpleMeta(input.readVarLong(true));
+        } else if (type == KRYO_META) {
+            return kryo.readClassAndObject(input);
+        }
+        throw new IllegalStateException("Wrong meta type: " + type);
+    }
+}
@@ -30,6 +30,11 @@ class LinkedMapLruCache<Meta> implements CacheInternalAccess<Meta> {
         return map.entrySet().iterator();
     }
 
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEvictionIterator() {
+        return map.entrySet().iterator();
+    }
+
     @Override
     public int getEntitiesCount() {
         return map.size();
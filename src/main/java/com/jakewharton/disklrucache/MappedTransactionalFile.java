@@ -0,0 +1,108 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+class MappedTransactionalFile extends PolicyTransactionalFile {
+
+    @NotNull
+    private final RandomAccessFile file;
+    @NotNull
+    private final FileChannel channel;
+    private final long chunkSize;
+    private MappedByteBuffer buffer;
+    private ByteBuffer view;
+    private long size;
+
+    public MappedTransactionalFile(@NotNull File file, @NotNull DurabilityPolicy policy, long chunkSize)
+            throws IOException {
+        super(policy);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Wrong chunk size: " + chunkSize);
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        this.chunkSize = chunkSize;
+        try {
+            size = channel.size();
+            map(size);
+        } catch (IOException e) {
+            Util.closeQuietly(this.file);
+            throw e;
+        }
+    }
+
+    private void map(long required) throws IOException {
+        long capacity = Math.max(chunkSize, (required + chunkSize - 1) / chunkSize * chunkSize);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("File is too big to be mapped: " + required);
+        }
+        MappedByteBuffer old = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        view = buffer.duplicate();
+        if (old != null) {
+            Util.unmapQuietly(old);
+        }
+    }
+
+    @Override
+    protected int read(long position, @NotNull byte[] b, int off, int len) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        int count = (int) Math.min(len, size - position);
+        view.position((int) position);
+        view.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    protected void write(long position, @NotNull byte[] b, int off, int len) throws IOException {
+        long end = position + len;
+        if (end > buffer.capacity()) {
+            map(end);
+        }
+        view.position((int) position);
+        view.put(b, off, len);
+        if (end > size) {
+            size = end;
+        }
+    }
+
+    @Override
+    protected void forceFile() throws IOException {
+        buffer.force();
+    }
+
+    @Override
+    protected void closeFile() {
+        Util.unmapQuietly(buffer);
+        try {
+            // drops the preallocated tail
+            file.setLength(size);
+        } catch (IOException ignored) {
+            //TODO log
+        }
+        Util.closeQuietly(file);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return size;
+    }
+
+    @Override
+    protected void setLength(long length) throws IOException {
+        if (length > buffer.capacity()) {
+            map(length);
+        }
+        size = length;
+        super.setLength(length);
+    }
+}
@@ -0,0 +1,130 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded LRU memory copy of small entries, which were read at least twice recently. The contents are softly
+ * referenced, so the GC may drop them under memory pressure. A content read before an invalidation isn't
+ * admitted after it, as it may belong to the replaced version.
+ */
+class MemoryTier {
+
+    static final int MIN_FREQUENCY = 2;
+
+    private final long maxBytes;
+    private final int maxEntrySize;
+    private final boolean direct;
+    @NotNull
+    private final FrequencySketch sketch;
+    @NotNull
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, .75f, true);
+    @NotNull
+    private final ReferenceQueue<ByteBuffer> cleared = new ReferenceQueue<>();
+    private long bytes;
+    private long generation;
+
+    MemoryTier(long maxBytes, int maxEntrySize, boolean direct) {
+        this.maxBytes = maxBytes;
+        this.maxEntrySize = maxEntrySize;
+        this.direct = direct;
+        // twice as many candidates as the entries of the half of the max size fit
+        sketch = new FrequencySketch((int) Math.min(maxBytes * 4 / maxEntrySize, 1 << 24));
+    }
+
+    // counts the read, returns a read-only view of the content
+    @Nullable
+    synchronized ByteBuffer get(@NotNull String key) {
+        pollCleared();
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer content = entry.get();
+        if (content == null) {
+            remove(key);
+            return null;
+        }
+        return content.asReadOnlyBuffer();
+    }
+
+    // the generation should be taken before the entry is looked up and its content is read
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void put(@NotNull String key, @NotNull ByteBuffer content, long generation) {
+        int size = content.remaining();
+        if (generation != this.generation || size > maxEntrySize || size > maxBytes
+                || sketch.frequency(key) < MIN_FREQUENCY) {
+            return;
+        }
+        pollCleared();
+        if (direct) {
+            ByteBuffer copy = ByteBuffer.allocateDirect(size);
+            copy.put(content.duplicate()).flip();
+            content = copy;
+        }
+        remove(key);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes + size > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().size;
+            iterator.remove();
+        }
+        entries.put(key, new Entry(key, content, cleared));
+        bytes += size;
+    }
+
+    synchronized void invalidate(@NotNull String key) {
+        generation++;
+        remove(key);
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized long getBytes() {
+        pollCleared();
+        return bytes;
+    }
+
+    private void remove(@NotNull String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    private void pollCleared() {
+        Entry entry;
+        while ((entry = (Entry) cleared.poll()) != null) {
+            // the entry may have been replaced already
+            if (entries.get(entry.key) == entry) {
+                remove(entry.key);
+            }
+        }
+    }
+
+    private static class Entry extends SoftReference<ByteBuffer> {
+
+        @NotNull
+        final String key;
+        final int size;
+
+        Entry(@NotNull String key, @NotNull ByteBuffer content, @NotNull ReferenceQueue<ByteBuffer> queue) {
+            super(content, queue);
+            this.key = key;
+            this.size = content.remaining();
+        }
+    }
+}
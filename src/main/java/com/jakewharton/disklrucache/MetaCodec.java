@@ -0,0 +1,18 @@
+package com.jakewharton.disklrucache;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Encodes the metas of the journal records. A record is decoded with nothing but the codec, so the encoding
+ * mustn't depend on the previous records. The journal compaction may use the codec from a background thread
+ * concurrently with the cache operations.
+ */
+public interface MetaCodec<Meta> {
+
+    void write(@NotNull Output output, @NotNull Meta meta);
+
+    @NotNull
+    Meta read(@NotNull Input input);
+}
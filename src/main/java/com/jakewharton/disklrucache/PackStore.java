@@ -0,0 +1,406 @@
+package com.jakewharton.disklrucache;
+
+import com.jakewharton.disklrucache.PackedMeta.Location;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.jakewharton.disklrucache.Util.closeQuietly;
+import static com.jakewharton.disklrucache.Util.ensureExists;
+
+/**
+ * Append-only segment files with the contents of small entries, so that they don't take a file and a file
+ * system block each. The entries are located by their {@link PackedMeta}, which the journal stores. A sealed
+ * segment, whose dead share crosses the limit, is compacted: its live entries are appended to the active
+ * segment, and it is deleted, once no reader uses it. The changes are made under the cache lock, the reads
+ * only acquire the segment.
+ */
+class PackStore {
+
+    static final String SEGMENT_PREFIX = "pack-";
+
+    @NotNull
+    private final File dir;
+    private final int maxEntrySize;
+    private final long segmentSize;
+    private final double maxDeadShare;
+
+    // the readers locate the entries without the cache lock
+    private final Map<String, PackedMeta> entries = new ConcurrentHashMap<>();
+    // guarded by the store
+    private final Map<Integer, Segment> segments = new HashMap<>();
+    private final Queue<Integer> compactions = new ArrayDeque<>();
+    @Nullable
+    private Segment active;
+
+    PackStore(@NotNull File dir, int maxEntrySize, long segmentSize, double maxDeadShare) {
+        this.dir = dir;
+        this.maxEntrySize = maxEntrySize;
+        this.segmentSize = segmentSize;
+        this.maxDeadShare = maxDeadShare;
+    }
+
+    int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    // opens the segments and registers the packed entries of the replayed index, returns the entries whose
+    // contents are lost, e.g. the segment is missing or truncated
+    @NotNull
+    synchronized List<String> init(@NotNull Iterator<? extends Map.Entry<String, ?>> iterator) throws IOException {
+        close();
+        ensureExists(dir);
+        int lastId = -1;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().startsWith(SEGMENT_PREFIX)) {
+                    continue;
+                }
+                int id = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length()));
+                segments.put(id, new Segment(id, file));
+                lastId = Math.max(lastId, id);
+            }
+        }
+        List<String> lost = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ?> entry = iterator.next();
+            if (!(entry.getValue() instanceof PackedMeta)) {
+                continue;
+            }
+            PackedMeta meta = (PackedMeta) entry.getValue();
+            Location location = meta.location;
+            Segment segment = segments.get(location.segment);
+            if (segment == null || location.offset + location.length > segment.size) {
+                lost.add(entry.getKey());
+            } else {
+                entries.put(entry.getKey(), meta);
+                segment.live += location.length;
+            }
+        }
+        Iterator<Segment> segmentIterator = segments.values().iterator();
+        while (segmentIterator.hasNext()) {
+            Segment segment = segmentIterator.next();
+            if (segment.live == 0) {
+                // e.g. the last one was compacted, but not deleted
+                segment.delete();
+                segmentIterator.remove();
+            } else {
+                checkGarbage(segment);
+            }
+        }
+        // the tail of the last segment may be torn, so the appends go to a new one
+        active = openSegment(lastId + 1);
+        return lost;
+    }
+
+    @Nullable
+    PackedMeta get(@NotNull String key) {
+        return entries.get(key);
+    }
+
+    // appends the content of the file and replaces the previous version of the entry
+    @NotNull
+    synchronized PackedMeta append(@NotNull String key, @NotNull File file, @NotNull FileMeta meta)
+            throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel source = input.getChannel();
+            int length = (int) source.size();
+            Segment segment = activeFor(length);
+            long offset = segment.size;
+            long position = 0;
+            while (position < length) {
+                long transferred = segment.channel.transferFrom(source, offset + position, length - position);
+                if (transferred <= 0) {
+                    throw new IOException("Can't append the entry to the pack: " + key);
+                }
+                position += transferred;
+            }
+            PackedMeta packed = new PackedMeta(meta, new Location(segment.id, offset, length));
+            segment.size += length;
+            segment.live += length;
+            kill(entries.put(key, packed));
+            return packed;
+        } finally {
+            input.close();
+        }
+    }
+
+    synchronized void remove(@NotNull String key) {
+        kill(entries.remove(key));
+    }
+
+    // the renewed meta keeps the location of the entry
+    @NotNull
+    synchronized PackedMeta renew(@NotNull String key, @NotNull FileMeta meta) {
+        PackedMeta renewed = new PackedMeta(meta, entries.get(key).location);
+        entries.put(key, renewed);
+        return renewed;
+    }
+
+    // returns a sealed segment with too much dead space, or -1
+    synchronized int pollCompaction() {
+        Integer id = compactions.poll();
+        return id != null ? id : -1;
+    }
+
+    // the keys and the locations of the live entries of the segment
+    @NotNull
+    synchronized List<Map.Entry<String, Location>> liveEntries(int segmentId) {
+        List<Map.Entry<String, Location>> live = new ArrayList<>();
+        for (Map.Entry<String, PackedMeta> entry : entries.entrySet()) {
+            Location location = entry.getValue().location;
+            if (location.segment == segmentId) {
+                live.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), location));
+            }
+        }
+        return live;
+    }
+
+    // moves the entry to the active segment, unless it was replaced or removed meanwhile
+    @Nullable
+    synchronized PackedMeta relocate(@NotNull String key, @NotNull Location location, @NotNull ByteBuffer content)
+            throws IOException {
+        PackedMeta meta = entries.get(key);
+        if (meta == null || meta.location != location) {
+            return null;
+        }
+        int length = content.remaining();
+        Segment segment = activeFor(length);
+        long offset = segment.size;
+        while (content.hasRemaining()) {
+            segment.channel.write(content, offset + length - content.remaining());
+        }
+        segment.size += length;
+        segment.live += length;
+        meta.location = new Location(segment.id, offset, length);
+        return meta;
+    }
+
+    // the compacted segment is deleted, once no reader uses it
+    synchronized void retire(int segmentId) throws IOException {
+        Segment segment = segments.get(segmentId);
+        segment.retired = true;
+        if (segment.readers == 0) {
+            segments.remove(segmentId);
+            segment.delete();
+        }
+    }
+
+    // the segment is queued again on the next removal of its entries, not at once, so a failing disk isn't
+    // retried in a loop
+    synchronized void abortCompaction(int segmentId) {
+        Segment segment = segments.get(segmentId);
+        if (segment != null) {
+            segment.compacting = false;
+        }
+    }
+
+    @NotNull
+    ByteBuffer read(@NotNull PackedMeta meta) throws IOException {
+        Location location;
+        FileChannel channel;
+        synchronized (this) {
+            location = meta.location;
+            channel = acquire(location).channel;
+        }
+        try {
+            return read(channel, location);
+        } finally {
+            release(location);
+        }
+    }
+
+    // reads an entry of the compacted segment
+    @NotNull
+    ByteBuffer read(@NotNull Location location) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            channel = acquire(location).channel;
+        }
+        try {
+            return read(channel, location);
+        } finally {
+            release(location);
+        }
+    }
+
+    long transferTo(@NotNull PackedMeta meta, @NotNull WritableByteChannel target, long offset, long count)
+            throws IOException {
+        Location location;
+        FileChannel channel;
+        synchronized (this) {
+            location = meta.location;
+            channel = acquire(location).channel;
+        }
+        try {
+            long end = offset + Math.min(count, Math.max(location.length - offset, 0));
+            long position = offset;
+            while (position < end) {
+                long transferred = channel.transferTo(location.offset + position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position - offset;
+        } finally {
+            release(location);
+        }
+    }
+
+    @NotNull
+    MappedByteBuffer map(@NotNull PackedMeta meta) throws IOException {
+        Location location;
+        FileChannel channel;
+        synchronized (this) {
+            location = meta.location;
+            channel = acquire(location).channel;
+        }
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, location.offset, location.length);
+        } finally {
+            release(location);
+        }
+    }
+
+    synchronized long getSegmentBytes() {
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.size;
+        }
+        return bytes;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    synchronized void close() {
+        for (Segment segment : segments.values()) {
+            closeQuietly(segment.file);
+        }
+        segments.clear();
+        compactions.clear();
+        entries.clear();
+        active = null;
+    }
+
+    @NotNull
+    private static ByteBuffer read(@NotNull FileChannel channel, @NotNull Location location) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(location.length);
+        while (content.hasRemaining()) {
+            if (channel.read(content, location.offset + content.position()) < 0) {
+                throw new IOException("Pack segment is truncated: " + location.segment);
+            }
+        }
+        content.flip();
+        return content;
+    }
+
+    @NotNull
+    private Segment acquire(@NotNull Location location) throws FileNotFoundException {
+        Segment segment = segments.get(location.segment);
+        // the entry was removed and its segment compacted
+        if (segment == null || segment.retired) {
+            throw new FileNotFoundException("Pack segment is deleted: " + location.segment);
+        }
+        segment.readers++;
+        return segment;
+    }
+
+    private synchronized void release(@NotNull Location location) throws IOException {
+        Segment segment = segments.get(location.segment);
+        if (--segment.readers == 0 && segment.retired) {
+            segments.remove(location.segment);
+            segment.delete();
+        }
+    }
+
+    @NotNull
+    private Segment activeFor(int length) throws IOException {
+        if (active == null) {
+            throw new IOException("Pack store is closed");
+        }
+        if (active.size > 0 && active.size + length > segmentSize) {
+            Segment sealed = active;
+            active = openSegment(sealed.id + 1);
+            checkGarbage(sealed);
+        }
+        return active;
+    }
+
+    @NotNull
+    private Segment openSegment(int id) throws IOException {
+        Segment segment = new Segment(id, new File(dir, SEGMENT_PREFIX + id));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void kill(@Nullable PackedMeta meta) {
+        if (meta == null) {
+            return;
+        }
+        Segment segment = segments.get(meta.location.segment);
+        if (segment != null) {
+            segment.live -= meta.location.length;
+            checkGarbage(segment);
+        }
+    }
+
+    private void checkGarbage(@NotNull Segment segment) {
+        if (segment != active && !segment.compacting && !segment.retired
+                && segment.size - segment.live >= maxDeadShare * segment.size) {
+            segment.compacting = true;
+            compactions.add(segment.id);
+        }
+    }
+
+    private static class Segment {
+
+        final int id;
+        @NotNull
+        final File path;
+        @NotNull
+        final RandomAccessFile file;
+        @NotNull
+        final FileChannel channel;
+        long size;
+        long live;
+        int readers;
+        boolean compacting;
+        boolean retired;
+
+        Segment(int id, @NotNull File path) throws IOException {
+            this.id = id;
+            this.path = path;
+            file = new RandomAccessFile(path, "rw");
+            channel = file.getChannel();
+            size = channel.size();
+        }
+
+        void delete() throws IOException {
+            closeQuietly(file);
+            RealFile.deleteIfExists(path);
+        }
+    }
+}
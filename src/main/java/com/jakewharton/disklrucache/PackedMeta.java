@@ -0,0 +1,51 @@
+package com.jakewharton.disklrucache;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The meta of an entry stored in a pack segment: the meta of the user and the location of the content.
+ * The location is replaced, when the segment is compacted, so it is written to the journal again.
+ */
+class PackedMeta implements FileMeta {
+
+    @NotNull
+    final FileMeta meta;
+    @NotNull
+    volatile Location location;
+
+    PackedMeta(@NotNull FileMeta meta, @NotNull Location location) {
+        this.meta = meta;
+        this.location = location;
+    }
+
+    @Override
+    public long weight() {
+        return meta.weight();
+    }
+
+    void writeLocation(@NotNull Output output) {
+        Location location = this.location;
+        output.writeVarInt(location.segment, true);
+        output.writeVarLong(location.offset, true);
+        output.writeVarInt(location.length, true);
+    }
+
+    @NotNull
+    static Location readLocation(@NotNull Input input) {
+        return new Location(input.readVarInt(true), input.readVarLong(true), input.readVarInt(true));
+    }
+
+    static final class Location {
+        final int segment;
+        final long offset;
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
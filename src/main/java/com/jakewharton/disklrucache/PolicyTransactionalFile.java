@@ -0,0 +1,149 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+abstract class PolicyTransactionalFile extends StreamTransactionalFile {
+
+    @NotNull
+    private final DurabilityPolicy policy;
+
+    private long position;
+    private long committedSize = -1;
+    private long headerSize = -1;
+    private long forcedSize;
+    private long lastForceTime = System.nanoTime();
+    // guarded by this, the data isn't touched after the file is closed, e.g. a mapping would be gone
+    private boolean closed;
+
+    protected PolicyTransactionalFile(@NotNull DurabilityPolicy policy) {
+        this.policy = policy;
+    }
+
+    protected abstract int read(long position, @NotNull byte[] b, int off, int len) throws IOException;
+
+    protected abstract void write(long position, @NotNull byte[] b, int off, int len) throws IOException;
+
+    protected abstract void forceFile() throws IOException;
+
+    protected abstract void closeFile();
+
+    @Override
+    public void init() throws IOException {
+        super.init();
+        headerSize = committedSize = forcedSize = length();
+    }
+
+    @Override
+    public void createEmpty() throws IOException {
+        super.createEmpty();
+        headerSize = 0;
+        committedSize = forcedSize = length();
+    }
+
+    @Override
+    public synchronized void commit() throws IOException {
+        ensureOpen();
+        committedSize = pos();
+        // the first commit of a new file is always forced, a crash shouldn't leave it without valid header
+        if (headerSize < HEADER_SIZE
+                || policy.shouldForce(System.nanoTime() - lastForceTime, committedSize - forcedSize)) {
+            force();
+            super.commit();
+            force();
+            headerSize = forcedSize = committedSize;
+        } else if (policy.isCommitWithoutForce()) {
+            super.commit();
+            headerSize = committedSize;
+        }
+    }
+
+    @Override
+    public synchronized void force() throws IOException {
+        ensureOpen();
+        forceFile();
+        lastForceTime = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void sync() throws IOException {
+        ensureOpen();
+        long size = length();
+        if (policy.shouldForce(System.nanoTime() - lastForceTime, size - forcedSize)) {
+            force();
+            forcedSize = size;
+        }
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        if (headerSize != committedSize && committedSize >= 0) {
+            try {
+                force();
+                seek(committedSize);
+                super.commit();
+                force();
+            } catch (IOException ignored) {
+                //TODO log
+            }
+        }
+        closed = true;
+        closeStreams();
+        closeFile();
+    }
+
+    @Override
+    protected synchronized int readData(@NotNull byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        int read = read(position, b, off, len);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    protected synchronized void writeData(@NotNull byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        write(position, b, off, len);
+        position += len;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("File is closed");
+        }
+    }
+
+    @Override
+    protected long availableData() throws IOException {
+        return length() - position;
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        int skip = (int) Math.max(0, Math.min(n, length() - position));
+        position += skip;
+        return skip;
+    }
+
+    @Override
+    protected void seek(long pos) throws IOException {
+        position = pos;
+    }
+
+    @Override
+    protected long pos() throws IOException {
+        return position;
+    }
+
+    @Override
+    protected void setLength(long length) throws IOException {
+        if (position > length) {
+            position = length;
+        }
+    }
+}
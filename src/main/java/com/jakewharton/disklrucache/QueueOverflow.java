@@ -0,0 +1,25 @@
+package com.jakewharton.disklrucache;
+
+/**
+ * What {@link AsyncDiskLruCache} does with a journal task, when its bounded queue is full.
+ *
+ * @see CacheOptions#setJournalQueue(int, QueueOverflow)
+ */
+public enum QueueOverflow {
+    /**
+     * The caller waits for a free slot. An access is logged under the cache lock, so it is queued over the
+     * capacity instead, and its caller waits once the lock is released.
+     */
+    Block,
+    /**
+     * The access records are dropped, they only lose the recency of the entries, the caller of the other
+     * operations waits for a free slot.
+     */
+    DropAccess,
+    /**
+     * The access records are dropped, the puts, removes and renewals fail with an {@link java.io.IOException}
+     * before they change anything. The task completing the future of an async variant is queued over the
+     * capacity, because its operation is done by then.
+     */
+    FailFast
+}
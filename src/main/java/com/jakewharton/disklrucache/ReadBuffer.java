@@ -0,0 +1,82 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Striped buffer of accessed keys. Readers add keys without locking and drop them when their stripe
+ * is full or contended, so some accesses may be lost. Draining must be done by one thread at a time.
+ */
+class ReadBuffer {
+
+    static final int STRIPE_SIZE = 16;
+
+    @NotNull
+    private final Stripe[] stripes;
+    private final int mask;
+
+    ReadBuffer() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    ReadBuffer(int stripeCount) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        mask = count - 1;
+    }
+
+    // returns true if the stripe is full and the buffer should be drained
+    boolean offer(@NotNull String key) {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & mask].offer(key);
+    }
+
+    void drainTo(@NotNull Collection<String> target) {
+        for (Stripe stripe : stripes) {
+            stripe.drainTo(target);
+        }
+    }
+
+    private static class Stripe {
+
+        private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        boolean offer(@NotNull String key) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= STRIPE_SIZE) {
+                return true;
+            }
+            if (!writeCounter.compareAndSet(tail, tail + 1)) {
+                return false;
+            }
+            slots.lazySet((int) (tail & (STRIPE_SIZE - 1)), key);
+            return tail + 1 - head >= STRIPE_SIZE;
+        }
+
+        void drainTo(@NotNull Collection<String> target) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & (STRIPE_SIZE - 1));
+                String key = slots.get(index);
+                if (key == null) {
+                    // the slot is claimed, but not written yet
+                    break;
+                }
+                slots.lazySet(index, null);
+                target.add(key);
+            }
+            readCounter = head;
+        }
+    }
+}
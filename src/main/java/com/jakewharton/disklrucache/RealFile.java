@@ -10,9 +10,16 @@ class RealFile implements VirtualFile {
 
     @NotNull
     private final File file;
+    @NotNull
+    private final CacheOptions options;
 
     public RealFile(@NotNull File file) {
+        this(file, new CacheOptions());
+    }
+
+    public RealFile(@NotNull File file, @NotNull CacheOptions options) {
         this.file = file;
+        this.options = options;
     }
 
     @Override
@@ -48,7 +55,17 @@ class RealFile implements VirtualFile {
     }
 
     @Override
-    public @NotNull TransactionalFile createTransactionalFile() throws IOException {
+    public @NotNull TransactionalVirtualFile createTransactionalFile() throws IOException {
+        DurabilityPolicy policy = options.getJournalDurability();
+        if (options.isMappedJournal()) {
+            if (policy == null) {
+                policy = DurabilityPolicy.forceOnCommit();
+            }
+            return new MappedTransactionalFile(file, policy, options.getMappedJournalChunkSize());
+        }
+        if (policy != null) {
+            return new ChannelTransactionalFile(file, policy);
+        }
         return new TransactionalFile(file);
     }
 
@@ -0,0 +1,155 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ShardedDiskLruCache<Meta extends FileMeta> {
+
+    static final String SEGMENT_DIR_PREFIX = "segment-";
+    static final int REBALANCE_INTERVAL = 1024;
+
+    @NotNull
+    private final DiskLruCache<Meta>[] segments;
+    @NotNull
+    private final WeightBalancer balancer;
+    private final long maxWeight;
+
+    private final AtomicLong putCount = new AtomicLong();
+    @NotNull
+    private final AtomicLongArray insertedWeights;
+    @NotNull
+    private final long[] demands;
+    @NotNull
+    private final long[] budgets;
+
+    public ShardedDiskLruCache(@NotNull File cacheDir, long maxWeight, int segmentCount) {
+        this(cacheDir, maxWeight, segmentCount, new CacheOptions(), WeightBalancer.byDemand(0.25));
+    }
+
+    @SuppressWarnings("unchecked")
+    public ShardedDiskLruCache(@NotNull File cacheDir, long maxWeight, int segmentCount,
+                               @NotNull CacheOptions options, @NotNull WeightBalancer balancer) {
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("There should be at least one segment: " + segmentCount);
+        }
+        this.maxWeight = maxWeight;
+        this.balancer = balancer;
+        this.segments = (DiskLruCache<Meta>[]) new DiskLruCache<?>[segmentCount];
+        this.insertedWeights = new AtomicLongArray(segmentCount);
+        this.demands = new long[segmentCount];
+        this.budgets = new long[segmentCount];
+
+        WeightBalancer.equal().balance(maxWeight, demands, budgets);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new DiskLruCache<>(new File(cacheDir, SEGMENT_DIR_PREFIX + i), budgets[i], options);
+        }
+    }
+
+    public void init() throws IOException {
+        for (DiskLruCache<Meta> segment : segments) {
+            segment.init();
+        }
+        synchronized (budgets) {
+            for (int i = 0; i < segments.length; i++) {
+                demands[i] = segments[i].getWeight();
+            }
+        }
+        rebalance();
+    }
+
+    public void close() {
+        for (DiskLruCache<Meta> segment : segments) {
+            segment.close();
+        }
+    }
+
+    public boolean put(@NotNull File file, @NotNull String newName, @NotNull Meta meta) throws IOException {
+        int index = segmentIndex(newName);
+        // rejected entries count as the demand too
+        boolean admitted = segments[index].put(file, newName, meta);
+        insertedWeights.addAndGet(index, meta.weight());
+        if (putCount.incrementAndGet() % REBALANCE_INTERVAL == 0) {
+            rebalance();
+        }
+        return admitted;
+    }
+
+    public void renewMeta(@NotNull String fileName, @NotNull Meta meta) throws IOException {
+        segmentFor(fileName).renewMeta(fileName, meta);
+    }
+
+    @Nullable
+    public File find(@NotNull String fileName) throws IOException {
+        return segmentFor(fileName).find(fileName);
+    }
+
+    public boolean remove(@NotNull String fileName) throws IOException {
+        return segmentFor(fileName).remove(fileName);
+    }
+
+    public boolean contains(@NotNull String fileName) {
+        return segmentFor(fileName).contains(fileName);
+    }
+
+    public long getWeight() {
+        long weight = 0;
+        for (DiskLruCache<Meta> segment : segments) {
+            weight += segment.getWeight();
+        }
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    @NotNull
+    DiskLruCache<Meta> getSegment(int index) {
+        return segments[index];
+    }
+
+    // the budgets are computed and applied under one lock, so concurrent rebalances can't interleave and leave
+    // segments with the budgets of different rounds
+    public void rebalance() throws IOException {
+        synchronized (budgets) {
+            for (int i = 0; i < segments.length; i++) {
+                // exponential decay keeps some memory of the previous periods
+                demands[i] = demands[i] / 2 + insertedWeights.getAndSet(i, 0);
+            }
+            balancer.balance(maxWeight, demands, budgets);
+            // shrinking segments first keeps the total weight under the limit
+            for (int i = 0; i < segments.length; i++) {
+                if (budgets[i] < segments[i].getMaxWeight()) {
+                    segments[i].setMaxWeight(budgets[i]);
+                }
+            }
+            for (int i = 0; i < segments.length; i++) {
+                if (budgets[i] > segments[i].getMaxWeight()) {
+                    segments[i].setMaxWeight(budgets[i]);
+                }
+            }
+        }
+    }
+
+    @NotNull
+    private DiskLruCache<Meta> segmentFor(@NotNull String fileName) {
+        return segments[segmentIndex(fileName)];
+    }
+
+    int segmentIndex(@NotNull String fileName) {
+        int h = fileName.hashCode();
+        // spreads the higher bits, the same way HashMap does
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return (h & 0x7FFFFFFF) % segments.length;
+    }
+}
@@ -0,0 +1,22 @@
+package com.jakewharton.disklrucache;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Stores {@link SimpleMeta} as its weight only, a single varint.
+ */
+public class SimpleMetaCodec implements MetaCodec<SimpleMeta> {
+
+    @Override
+    public void write(@NotNull Output output, @NotNull SimpleMeta meta) {
+        output.writeVarLong(meta.weight(), true);
+    }
+
+    @NotNull
+    @Override
+    public SimpleMeta read(@NotNull Input input) {
+        return new SimpleMeta(input.readVarLong(true));
+    }
+}
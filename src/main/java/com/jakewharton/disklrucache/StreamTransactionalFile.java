@@ -0,0 +1,235 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+
+abstract class StreamTransactionalFile extends TransactionalVirtualFile {
+
+    @NotNull
+    private final DataInputStream inputStream = new DataInputStream(new DataStream());
+    @NotNull
+    private final DataOutputStream outputStream = new DataOutputStream(new DataSink());
+    private final byte[] single = new byte[1];
+
+    protected abstract int readData(@NotNull byte[] b, int off, int len) throws IOException;
+
+    protected abstract void writeData(@NotNull byte[] b, int off, int len) throws IOException;
+
+    protected abstract long availableData() throws IOException;
+
+    protected void closeStreams() {
+        Util.closeQuietly(inputStream);
+        Util.closeQuietly(outputStream);
+    }
+
+    @NotNull
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @NotNull
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public void readFully(@NotNull byte[] b) throws IOException {
+        inputStream.readFully(b);
+    }
+
+    @Override
+    public void readFully(@NotNull byte[] b, int off, int len) throws IOException {
+        inputStream.readFully(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        return inputStream.skipBytes(n);
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return inputStream.readBoolean();
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        return inputStream.readByte();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return inputStream.readUnsignedByte();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return inputStream.readShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return inputStream.readUnsignedShort();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return inputStream.readChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        return inputStream.readInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        return inputStream.readLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return inputStream.readFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return inputStream.readDouble();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    @Deprecated
+    public String readLine() throws IOException {
+        return inputStream.readLine();
+    }
+
+    @NotNull
+    @Override
+    public String readUTF() throws IOException {
+        return inputStream.readUTF();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        outputStream.write(b);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b) throws IOException {
+        outputStream.write(b);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        outputStream.write(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException {
+        outputStream.writeBoolean(v);
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException {
+        outputStream.writeByte(v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+        outputStream.writeShort(v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+        outputStream.writeChar(v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        outputStream.writeInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        outputStream.writeLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+        outputStream.writeFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+        outputStream.writeDouble(v);
+    }
+
+    @Override
+    public void writeBytes(@NotNull String s) throws IOException {
+        outputStream.writeBytes(s);
+    }
+
+    @Override
+    public void writeChars(@NotNull String s) throws IOException {
+        outputStream.writeChars(s);
+    }
+
+    @Override
+    public void writeUTF(@NotNull String str) throws IOException {
+        outputStream.writeUTF(str);
+    }
+
+    private class DataStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            if (readData(single, 0, 1) <= 0) {
+                return -1;
+            }
+            return single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return readData(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.max(0, Math.min(n, 4096))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = readData(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read <= 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, availableData()));
+        }
+    }
+
+    private class DataSink extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            writeData(single, 0, 1);
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            writeData(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * W-TinyLFU on top of another eviction policy. Every put and access is counted in a frequency sketch.
+ * Recently admitted entries stay in a small window, which is evicted only after the rest of the cache. A new
+ * entry is admitted only if it is requested more often than the entries it would evict.
+ * <p>
+ * The sketch isn't persisted. The replayed journal counts the logged puts, accesses and rejects again, but
+ * not the misses, and a compacted journal keeps only the entries, so the decisions after a restart may
+ * differ.
+ */
+class TinyLfuCache<Meta extends FileMeta> implements CacheInternalAccess<Meta> {
+
+    @NotNull
+    private final CacheInternalAccess<Meta> delegate;
+    @NotNull
+    private final FrequencySketch sketch;
+    private final double windowShare;
+
+    private final LinkedHashMap<String, Meta> window = new LinkedHashMap<>();
+    private long windowWeight;
+    private long maxWindowWeight;
+
+    TinyLfuCache(@NotNull CacheInternalAccess<Meta> delegate, int expectedEntries, double windowShare) {
+        this.delegate = delegate;
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.windowShare = windowShare;
+    }
+
+    void setMaxWeight(long maxWeight) {
+        maxWindowWeight = (long) (maxWeight * windowShare);
+        trimWindow();
+    }
+
+    int frequency(@NotNull String fileName) {
+        return sketch.frequency(fileName);
+    }
+
+    // decides whether the new entry is worth evicting the entries, which free the given weight
+    boolean admit(@NotNull String fileName, long weightToFree) {
+        if (weightToFree <= 0) {
+            return true;
+        }
+        // the current request is counted only after the decision
+        int candidateFrequency = sketch.frequency(fileName) + 1;
+        Iterator<Map.Entry<String, Meta>> iterator = delegate.getEvictionIterator();
+        while (iterator.hasNext() && weightToFree > 0) {
+            Map.Entry<String, Meta> victim = iterator.next();
+            if (window.containsKey(victim.getKey())) {
+                continue;
+            }
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            weightToFree -= victim.getValue().weight();
+        }
+        return true;
+    }
+
+    @Override
+    public Meta putMetaInternal(@NotNull String fileName, @NotNull Meta meta) {
+        sketch.increment(fileName);
+        removeFromWindow(fileName);
+        window.put(fileName, meta);
+        windowWeight += meta.weight();
+        trimWindow();
+        return delegate.putMetaInternal(fileName, meta);
+    }
+
+    @Override
+    public Meta accessInternal(@NotNull String fileName) {
+        sketch.increment(fileName);
+        return delegate.accessInternal(fileName);
+    }
+
+    @Override
+    public Meta removeInternal(@NotNull String fileName) {
+        removeFromWindow(fileName);
+        return delegate.removeInternal(fileName);
+    }
+
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEntriesIterator() {
+        final Iterator<Map.Entry<String, Meta>> iterator = delegate.getEntriesIterator();
+        return new Iterator<Map.Entry<String, Meta>>() {
+            @Nullable
+            private Map.Entry<String, Meta> current;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, Meta> next() {
+                current = iterator.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                removeFromWindow(current.getKey());
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Iterator<Map.Entry<String, Meta>> getEvictionIterator() {
+        return new EvictionIterator();
+    }
+
+    @Override
+    public int getEntitiesCount() {
+        return delegate.getEntitiesCount();
+    }
+
+    @Override
+    public boolean containsInternal(String fileName) {
+        return delegate.containsInternal(fileName);
+    }
+
+    private void removeFromWindow(@NotNull String fileName) {
+        Meta meta = window.remove(fileName);
+        if (meta != null) {
+            windowWeight -= meta.weight();
+        }
+    }
+
+    private void trimWindow() {
+        Iterator<Meta> iterator = window.values().iterator();
+        // the newest entry stays in the window, even if it is heavier than the window
+        while (windowWeight > maxWindowWeight && window.size() > 1) {
+            windowWeight -= iterator.next().weight();
+            iterator.remove();
+        }
+    }
+
+    // the entries outside of the window in the order of the policy, then the window from the oldest
+    private class EvictionIterator implements Iterator<Map.Entry<String, Meta>> {
+
+        @NotNull
+        private final Iterator<Map.Entry<String, Meta>> main = delegate.getEvictionIterator();
+        @Nullable
+        private Iterator<Map.Entry<String, Meta>> windowIterator;
+        @Nullable
+        private Map.Entry<String, Meta> next;
+        @Nullable
+        private Map.Entry<String, Meta> current;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (windowIterator == null) {
+                while (main.hasNext()) {
+                    Map.Entry<String, Meta> entry = main.next();
+                    if (!window.containsKey(entry.getKey())) {
+                        next = entry;
+                        return true;
+                    }
+                }
+                windowIterator = window.entrySet().iterator();
+            }
+            if (windowIterator.hasNext()) {
+                next = windowIterator.next();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Map.Entry<String, Meta> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = null;
+            return current;
+        }
+
+        // the underlying iterators are a step ahead after hasNext(), so remove() goes right after next()
+        @Override
+        public void remove() {
+            if (current == null || next != null) {
+                throw new IllegalStateException();
+            }
+            if (windowIterator == null) {
+                main.remove();
+            } else {
+                windowIterator.remove();
+                windowWeight -= current.getValue().weight();
+                delegate.removeInternal(current.getKey());
+            }
+            current = null;
+        }
+    }
+}
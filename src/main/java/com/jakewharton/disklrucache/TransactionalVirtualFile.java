@@ -16,6 +16,18 @@ abstract class TransactionalVirtualFile implements DataInput, DataOutput {
 
     public abstract void close();
 
+    // forces everything written so far to the device
+    public void force() throws IOException {
+    }
+
+    // forces everything written so far if the durability policy of the file asks for it
+    public void sync() throws IOException {
+    }
+
+    public void seekToEnd() throws IOException {
+        seek(length());
+    }
+
     private long saveFileSize(boolean usePointer) throws IOException {
         long pos = usePointer ? pos() : -1;
         seek(0);
@@ -21,6 +21,8 @@ import org.jetbrains.annotations.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
 
 /**
  * Junk drawer of utility methods.
@@ -45,4 +47,21 @@ class Util {
             }
         }
     }
+
+    // there is no public API to unmap a buffer, so it is the best effort: otherwise the file stays mapped
+    // until the buffer is collected, which matters on platforms that can't truncate, rename or delete mapped files
+    static void unmapQuietly(@Nullable MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception | LinkageError ignored) {
+        }
+    }
 }
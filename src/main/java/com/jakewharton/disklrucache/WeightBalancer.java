@@ -0,0 +1,76 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+public abstract class WeightBalancer {
+
+    /**
+     * Every segment gets the same share of the weight.
+     */
+    @NotNull
+    public static WeightBalancer equal() {
+        return new Equal();
+    }
+
+    /**
+     * Segments get the weight in proportion to the weight recently put into them, but never less than
+     * the given fraction of an equal share.
+     */
+    @NotNull
+    public static WeightBalancer byDemand(double minShare) {
+        if (minShare < 0 || minShare > 1) {
+            throw new IllegalArgumentException("Wrong min share: " + minShare);
+        }
+        return new ByDemand(minShare);
+    }
+
+    // called under a lock, so implementations don't have to be thread safe
+    abstract void balance(long maxWeight, @NotNull long[] demands, @NotNull long[] budgets);
+
+    private static class Equal extends WeightBalancer {
+        @Override
+        void balance(long maxWeight, @NotNull long[] demands, @NotNull long[] budgets) {
+            int count = budgets.length;
+            for (int i = 0; i < count; i++) {
+                budgets[i] = maxWeight / count + (i < maxWeight % count ? 1 : 0);
+            }
+        }
+    }
+
+    private static class ByDemand extends WeightBalancer {
+
+        private final double minShare;
+
+        ByDemand(double minShare) {
+            this.minShare = minShare;
+        }
+
+        @Override
+        void balance(long maxWeight, @NotNull long[] demands, @NotNull long[] budgets) {
+            int count = budgets.length;
+            double totalDemand = 0;
+            for (long demand : demands) {
+                totalDemand += demand;
+            }
+            if (totalDemand == 0) {
+                new Equal().balance(maxWeight, demands, budgets);
+                return;
+            }
+            long floor = (long) (maxWeight / count * minShare);
+            long distributed = maxWeight - floor * count;
+            long assigned = 0;
+            for (int i = 0; i < count; i++) {
+                budgets[i] = floor + (long) (distributed * (demands[i] / totalDemand));
+                assigned += budgets[i];
+            }
+            // rounding leftovers go to the most demanding segment
+            int max = 0;
+            for (int i = 1; i < count; i++) {
+                if (demands[i] > demands[max]) {
+                    max = i;
+                }
+            }
+            budgets[max] += maxWeight - assigned;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal bytes and throughput of cache hits, logged one by one and coalesced into recency lines.
+ * The hits are skewed towards the first entries.
+ */
+public class AccessCoalescingBenchmark {
+
+    private static final int ENTRIES = 10000;
+    private static final int HITS = 500000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("mode\thits/s\tjournal bytes/hit\tcompactions");
+        run("per hit", new CacheOptions());
+        run("coalesced 100ms", new CacheOptions().setAccessCoalescing(100, TimeUnit.MILLISECONDS));
+        run("coalesced 1s", new CacheOptions().setAccessCoalescing(1, TimeUnit.SECONDS));
+    }
+
+    private static void run(String name, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("coalescing");
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE,
+                    options.setJournalDurability(DurabilityPolicy.osOnly()));
+            cache.init();
+            try {
+                Benchmarks.fill(cache, dir, ENTRIES, 1);
+                JournalStats before = cache.getJournalStats();
+                Random random = new Random(1);
+                long start = System.nanoTime();
+                for (int i = 0; i < HITS; i++) {
+                    cache.find(Benchmarks.key(random.nextInt(random.nextInt(ENTRIES) + 1)));
+                }
+                long elapsed = System.nanoTime() - start;
+                JournalStats stats = cache.getJournalStats();
+                System.out.printf("%s\t%.0f\t%.3f\t%d%n", name, HITS * 1e9 / elapsed,
+                        (double) (stats.getAppendedBytes() - before.getAppendedBytes()) / HITS,
+                        stats.getCompactionCount() - before.getCompactionCount());
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
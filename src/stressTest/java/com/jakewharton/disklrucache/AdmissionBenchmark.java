@@ -0,0 +1,81 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Byte hit ratio and written files for a Zipf workload interleaved with scans, with and without
+ * the admission filter. Every miss is followed by a put of the requested entry.
+ */
+public class AdmissionBenchmark {
+
+    private static final int KEYS = 20000;
+    private static final int REQUESTS = 100000;
+    private static final int SCAN_EVERY = 5000;
+    private static final int SCAN_LENGTH = 1000;
+    private static final long MAX_WEIGHT = 1000 * 100;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("policy\tbyte hit ratio\tfiles written");
+        run("lru", new CacheOptions());
+        run("lru+tinylfu", new CacheOptions().setAdmissionFilter(1000, 0.01));
+        run("clock", new CacheOptions().setEvictionPolicy(EvictionPolicy.clock()));
+        run("clock+tinylfu", new CacheOptions().setEvictionPolicy(EvictionPolicy.clock())
+                .setAdmissionFilter(1000, 0.01));
+    }
+
+    private static void run(String name, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("admission");
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, MAX_WEIGHT,
+                    options.setJournalDurability(DurabilityPolicy.osOnly()));
+            cache.init();
+            try {
+                Random random = new Random(42);
+                double[] zipf = zipf(KEYS);
+                long requestedBytes = 0;
+                long hitBytes = 0;
+                int written = 0;
+                int scan = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    String key;
+                    if (i % SCAN_EVERY < SCAN_LENGTH) {
+                        key = "scan" + scan++;
+                    } else {
+                        int index = Arrays.binarySearch(zipf, random.nextDouble());
+                        key = Benchmarks.key(index < 0 ? -index - 1 : index);
+                    }
+                    int size = 50 + (key.hashCode() & 0x7F);
+                    requestedBytes += size;
+                    if (cache.find(key) != null) {
+                        hitBytes += size;
+                    } else {
+                        File file = Benchmarks.writeFile(dir, "tmp", 0);
+                        if (cache.put(file, key, new SimpleMeta(size))) {
+                            written++;
+                        }
+                    }
+                }
+                System.out.printf("%s\t%.3f\t%d%n", name, (double) hitBytes / requestedBytes, written);
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static double[] zipf(int count) {
+        double[] cumulative = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,71 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk ingest and removal throughput with the single-entry calls and with the batches, which take the lock
+ * once and commit the journal once.
+ */
+public class BatchBenchmark {
+
+    private static final int ENTRIES = 5000;
+    private static final int[] BATCH_SIZES = {1, 10, 100, 1000};
+    private static final int SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("batch\tputs/s\tremoves/s");
+        for (int batchSize : BATCH_SIZES) {
+            run(batchSize);
+        }
+    }
+
+    private static void run(int batchSize) throws Exception {
+        File dir = Benchmarks.createTempDir("batch");
+        File input = new File(dir, "input");
+        input.mkdirs();
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE);
+            cache.init();
+            try {
+                List<File> files = new ArrayList<>(ENTRIES);
+                for (int i = 0; i < ENTRIES; i++) {
+                    files.add(Benchmarks.writeFile(input, "tmp" + i, SIZE));
+                }
+                long start = System.nanoTime();
+                for (int from = 0; from < ENTRIES; from += batchSize) {
+                    if (batchSize == 1) {
+                        cache.put(files.get(from), Benchmarks.key(from), new SimpleMeta(SIZE));
+                        continue;
+                    }
+                    DiskLruCache.PutBatch<SimpleMeta> batch = new DiskLruCache.PutBatch<>();
+                    for (int i = from; i < Math.min(from + batchSize, ENTRIES); i++) {
+                        batch.add(files.get(i), Benchmarks.key(i), new SimpleMeta(SIZE));
+                    }
+                    cache.putAll(batch, true);
+                }
+                double puts = ENTRIES * 1e9 / (System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int from = 0; from < ENTRIES; from += batchSize) {
+                    if (batchSize == 1) {
+                        cache.remove(Benchmarks.key(from));
+                        continue;
+                    }
+                    List<String> keys = new ArrayList<>(batchSize);
+                    for (int i = from; i < Math.min(from + batchSize, ENTRIES); i++) {
+                        keys.add(Benchmarks.key(i));
+                    }
+                    cache.removeAll(keys, true);
+                }
+                double removes = ENTRIES * 1e9 / (System.nanoTime() - start);
+                System.out.printf("%d\t%.0f\t%.0f%n", batchSize, puts, removes);
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+class Benchmarks {
+
+    static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    interface Operation {
+        void run(int thread, long iteration) throws IOException;
+    }
+
+    static double opsPerSecond(int threadCount, long durationMillis, @NotNull final Operation operation)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong total = new AtomicLong();
+        final List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    try {
+                        start.await();
+                        while (!stop.get()) {
+                            operation.run(thread, count++);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                    total.addAndGet(count);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        Thread.sleep(durationMillis);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Benchmark failed: " + errors.get(0), errors.get(0));
+        }
+        return total.get() * 1e9 / elapsed;
+    }
+
+    @NotNull
+    static File createTempDir(@NotNull String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        RealFile.delete(dir);
+        Util.ensureExists(dir);
+        return dir;
+    }
+
+    static void deleteRecursively(@NotNull File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @NotNull
+    static File writeFile(@NotNull File dir, @NotNull String name, int size) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(new byte[size]);
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    static void fill(@NotNull DiskLruCache<SimpleMeta> cache, @NotNull File tmpDir, int count, int size)
+            throws IOException {
+        for (int i = 0; i < count; i++) {
+            cache.put(writeFile(tmpDir, "tmp", size), key(i), new SimpleMeta(size));
+        }
+    }
+
+    @NotNull
+    static String key(long i) {
+        return "k" + i;
+    }
+}
@@ -0,0 +1,69 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Latency percentiles of puts on a big cache, when the journal is compacted inline and in the background.
+ * Every put replaces an existing entry, so the journal is compacted every
+ * {@link Journal#MAX_REDUNDANT_OPERATION_COUNT} operations.
+ */
+public class CompactionLatencyBenchmark {
+
+    private static final int ENTRIES = 200000;
+    private static final int OPERATIONS = 50000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("compaction\tp50 us\tp99 us\tp99.9 us\tp99.99 us\tmax us\t> 1 ms");
+        run("inline", null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            run("background", executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void run(String name, ExecutorService executor) throws Exception {
+        File dir = Benchmarks.createTempDir("compaction");
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, new CacheOptions()
+                    .setJournalDurability(DurabilityPolicy.osOnly())
+                    .setCompactionExecutor(executor));
+            cache.init();
+            try {
+                Benchmarks.fill(cache, dir, ENTRIES, 1);
+                Random random = new Random(1);
+                long[] latencies = new long[OPERATIONS];
+                for (int i = 0; i < OPERATIONS; i++) {
+                    String key = Benchmarks.key(random.nextInt(ENTRIES));
+                    File file = Benchmarks.writeFile(dir, "tmp", 1);
+                    long start = System.nanoTime();
+                    cache.put(file, key, new SimpleMeta(1));
+                    latencies[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(latencies);
+                int slow = 0;
+                for (long latency : latencies) {
+                    if (latency > 1000000) {
+                        slow++;
+                    }
+                }
+                System.out.printf("%s\t%d\t%d\t%d\t%d\t%d\t%d%n", name,
+                        percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                        percentile(latencies, 0.9999), latencies[OPERATIONS - 1] / 1000, slow);
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) (sorted.length * percentile)] / 1000;
+    }
+}
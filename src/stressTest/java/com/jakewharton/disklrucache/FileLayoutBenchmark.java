@@ -0,0 +1,65 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Latency of puts, replacing puts and opening reads as the number of the entry files grows, in the flat
+ * directory and with one and two levels of 256 shard directories. The journal isn't forced, so the file
+ * system dominates.
+ */
+public class FileLayoutBenchmark {
+
+    private static final int[] ENTRY_COUNTS = {10000, 100000, 300000};
+    private static final int OPERATIONS = 20000;
+    private static final int SIZE = 64;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("layout\tentries\tput us\treplace us\tget us");
+        for (int entries : ENTRY_COUNTS) {
+            run("flat", entries, options());
+            run("1x256", entries, options().setFileLayout(1, 256));
+            run("2x256", entries, options().setFileLayout(2, 256));
+        }
+    }
+
+    private static CacheOptions options() {
+        return new CacheOptions().setJournalDurability(DurabilityPolicy.osOnly())
+                .setAdaptiveCompaction(2, 1024 * 1024, Long.MAX_VALUE);
+    }
+
+    private static void run(String name, int entries, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("layout");
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, options);
+            cache.init();
+            try {
+                Benchmarks.fill(cache, dir, entries - OPERATIONS, SIZE);
+                long start = System.nanoTime();
+                for (int i = entries - OPERATIONS; i < entries; i++) {
+                    put(cache, dir, i);
+                }
+                double put = (System.nanoTime() - start) / 1e3 / OPERATIONS;
+                start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    put(cache, dir, (i * 7919L) % entries);
+                }
+                double replace = (System.nanoTime() - start) / 1e3 / OPERATIONS;
+                start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    cache.get(Benchmarks.key((i * 104729L) % entries)).close();
+                }
+                double get = (System.nanoTime() - start) / 1e3 / OPERATIONS;
+                System.out.printf("%s\t%d\t%.1f\t%.1f\t%.1f%n", name, entries, put, replace, get);
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static void put(DiskLruCache<SimpleMeta> cache, File dir, long i) throws IOException {
+        cache.put(Benchmarks.writeFile(dir, "tmp", SIZE), Benchmarks.key(i), new SimpleMeta(SIZE));
+    }
+}
@@ -0,0 +1,49 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal operations per second against the number of threads, with and without group commit.
+ */
+public class GroupCommitBenchmark {
+
+    private static final int ENTRIES = 1000;
+    private static final long DURATION_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("threads\tper-operation commit\tgroup commit");
+        for (int threads : Benchmarks.THREAD_COUNTS) {
+            double plain = run(threads, new CacheOptions());
+            double group = run(threads, new CacheOptions().setGroupCommit(1, TimeUnit.MILLISECONDS, 256));
+            System.out.printf("%d\t%.0f ops/s\t%.0f ops/s%n", threads, plain, group);
+        }
+    }
+
+    private static double run(int threads, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("group-commit");
+        try {
+            final DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, options);
+            cache.init();
+            Benchmarks.fill(cache, dir, ENTRIES, 1);
+            try {
+                return Benchmarks.opsPerSecond(threads, DURATION_MILLIS, new Benchmarks.Operation() {
+                    @Override
+                    public void run(int thread, long iteration) throws IOException {
+                        String key = Benchmarks.key((thread * 7919 + iteration) % ENTRIES);
+                        if (iteration % 2 == 0) {
+                            cache.renewMeta(key, new SimpleMeta(1));
+                        } else {
+                            cache.find(key);
+                        }
+                    }
+                });
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Append latency and replay time of the journal for the different journal file implementations.
+ */
+public class JournalFileBenchmark {
+
+    private static final int APPENDS = 5000;
+    private static final int REPLAY_LINES = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        Object[][] variants = {
+                {"rwd file", new CacheOptions()},
+                {"channel, force on commit", new CacheOptions().setJournalDurability(DurabilityPolicy.forceOnCommit())},
+                {"channel, os only", new CacheOptions().setJournalDurability(DurabilityPolicy.osOnly())},
+                {"mapped, force on commit", new CacheOptions().setMappedJournal(16 * 1024 * 1024)},
+                {"mapped, os only", new CacheOptions().setMappedJournal(16 * 1024 * 1024)
+                        .setJournalDurability(DurabilityPolicy.osOnly())},
+        };
+        System.out.println("journal file\tappend latency\treplay of " + REPLAY_LINES + " lines");
+        for (Object[] variant : variants) {
+            CacheOptions options = (CacheOptions) variant[1];
+            System.out.printf("%s\t%.1f us\t%d ms%n", variant[0], appendMicros(options), replayMillis(options));
+        }
+    }
+
+    private static double appendMicros(CacheOptions options) throws IOException {
+        File dir = Benchmarks.createTempDir("journal-append");
+        try {
+            Journal<SimpleMeta> journal = new Journal<>(new LinkedMapLruCache<SimpleMeta>(),
+                    new DirectoryFileSystem(dir, options), options);
+            journal.initJournal();
+            SimpleMeta meta = new SimpleMeta(1);
+            long start = System.nanoTime();
+            for (int i = 0; i < APPENDS; i++) {
+                journal.put(Benchmarks.key(i), meta, false);
+            }
+            long elapsed = System.nanoTime() - start;
+            journal.close();
+            return elapsed / 1000.0 / APPENDS;
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static long replayMillis(CacheOptions options) throws IOException {
+        File dir = Benchmarks.createTempDir("journal-replay");
+        try {
+            CacheOptions fastWrite = new CacheOptions().setJournalDurability(DurabilityPolicy.osOnly());
+            Journal<SimpleMeta> journal = new Journal<>(new LinkedMapLruCache<SimpleMeta>(),
+                    new DirectoryFileSystem(dir, fastWrite), fastWrite);
+            journal.initJournal();
+            for (int i = 0; i < REPLAY_LINES; i++) {
+                journal.put(Benchmarks.key(i), new SimpleMeta(i), false);
+            }
+            journal.close();
+
+            long start = System.nanoTime();
+            journal = new Journal<>(new LinkedMapLruCache<SimpleMeta>(), new DirectoryFileSystem(dir, options), options);
+            journal.initJournal();
+            long elapsed = System.nanoTime() - start;
+            journal.close();
+            return elapsed / 1000000;
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
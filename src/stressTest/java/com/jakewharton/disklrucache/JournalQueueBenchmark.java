@@ -0,0 +1,101 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads with every tenth operation a put against a stalled disk, which takes 100us per journal task: the peak
+ * depth of the journal queue, the mean time from queueing a task to its end and the throughput with the
+ * unbounded queue and with each overflow of the bounded one.
+ */
+public class JournalQueueBenchmark {
+
+    private static final int THREADS = 4;
+    private static final long DURATION_MILLIS = 3000;
+    private static final int ENTRIES = 1000;
+    private static final int SIZE = 512;
+    private static final int CAPACITY = 1024;
+    private static final long STALL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("queue\tops/s\tpeak\tmeanMs\tdropped\trejected\tfailedPuts");
+        run("unbounded", new CacheOptions());
+        for (QueueOverflow overflow : QueueOverflow.values()) {
+            run(overflow.name(), new CacheOptions().setJournalQueue(CAPACITY, overflow));
+        }
+    }
+
+    private static void run(String name, CacheOptions options) throws Exception {
+        final File dir = Benchmarks.createTempDir("queue");
+        final File input = new File(dir, "input");
+        input.mkdirs();
+        try {
+            final AsyncDiskLruCache<SimpleMeta> cache = new AsyncDiskLruCache<SimpleMeta>(dir, Long.MAX_VALUE,
+                    AsyncDiskLruCache.SyncMode.Async, options) {
+                @Override
+                Executor createExecutor() {
+                    final Executor executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    return new Executor() {
+                        @Override
+                        public void execute(final Runnable command) {
+                            executor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    LockSupport.parkNanos(STALL_NANOS);
+                                    command.run();
+                                }
+                            });
+                        }
+                    };
+                }
+            };
+            cache.initAsync().get();
+            Benchmarks.fill(cache, input, ENTRIES, SIZE);
+            awaitEmptyQueue(cache);
+            final AtomicLong failedPuts = new AtomicLong();
+            double ops = Benchmarks.opsPerSecond(THREADS, DURATION_MILLIS, new Benchmarks.Operation() {
+                @Override
+                public void run(int thread, long iteration) throws IOException {
+                    String key = Benchmarks.key((iteration * 31 + thread) % ENTRIES);
+                    if (iteration % 10 != 0) {
+                        cache.find(key);
+                        return;
+                    }
+                    File file = Benchmarks.writeFile(input, "tmp" + thread, SIZE);
+                    try {
+                        cache.put(file, key, new SimpleMeta(SIZE));
+                    } catch (IOException e) {
+                        failedPuts.incrementAndGet();
+                    }
+                }
+            });
+            JournalQueueStats stats = cache.getJournalQueueStats();
+            System.out.printf("%s\t%.0f\t%d\t%.1f\t%d\t%d\t%d%n", name, ops, stats.getPeakDepth(),
+                    stats.getMeanLatencyNanos() / 1e6, stats.getDroppedAccesses(), stats.getRejectedWrites(),
+                    failedPuts.get());
+            cache.close();
+            awaitEmptyQueue(cache);
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static void awaitEmptyQueue(AsyncDiskLruCache<SimpleMeta> cache) throws InterruptedException {
+        while (cache.getJournalQueueStats().getDepth() > 0) {
+            Thread.sleep(10);
+        }
+    }
+}
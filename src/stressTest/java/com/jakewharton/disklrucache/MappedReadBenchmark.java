@@ -0,0 +1,77 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of small hot entries: opening and reading the found file against the mapped handles. The accesses
+ * are coalesced, so the journal doesn't dominate.
+ */
+public class MappedReadBenchmark {
+
+    private static final int ENTRIES = 100;
+    private static final int SIZE = 1024;
+    private static final long DURATION_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("threads\tfile read\tmapped");
+        for (int threads : new int[]{1, 4}) {
+            double read = run(threads, false);
+            double mapped = run(threads, true);
+            System.out.printf("%d\t%.0f ops/s\t%.0f ops/s%n", threads, read, mapped);
+        }
+    }
+
+    private static double run(int threads, final boolean map) throws Exception {
+        File dir = Benchmarks.createTempDir("mapped");
+        try {
+            final DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE,
+                    new CacheOptions().setLockFreeReads(true).setAccessCoalescing(1, TimeUnit.SECONDS));
+            cache.init();
+            Benchmarks.fill(cache, dir, ENTRIES, SIZE);
+            try {
+                return Benchmarks.opsPerSecond(threads, DURATION_MILLIS, new Benchmarks.Operation() {
+                    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+                        @Override
+                        protected byte[] initialValue() {
+                            return new byte[SIZE];
+                        }
+                    };
+
+                    @Override
+                    public void run(int thread, long iteration) throws IOException {
+                        String key = Benchmarks.key((thread * 7919 + iteration) % ENTRIES);
+                        byte[] bytes = buffers.get();
+                        if (map) {
+                            DiskLruCache<SimpleMeta>.MappedEntry entry = cache.map(key);
+                            try {
+                                ByteBuffer buffer = entry.getBuffer();
+                                buffer.get(bytes, 0, buffer.remaining());
+                            } finally {
+                                entry.close();
+                            }
+                        } else {
+                            FileInputStream input = new FileInputStream(cache.find(key));
+                            try {
+                                int offset = 0;
+                                int read;
+                                while ((read = input.read(bytes, offset, bytes.length - offset)) > 0) {
+                                    offset += read;
+                                }
+                            } finally {
+                                input.close();
+                            }
+                        }
+                    }
+                });
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
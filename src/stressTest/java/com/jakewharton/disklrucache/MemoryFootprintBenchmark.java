@@ -0,0 +1,60 @@
+package com.jakewharton.disklrucache;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap and off-heap bytes per entry of the cache index, filled with 32 character keys and
+ * {@link SimpleMeta}. Entry counts can be passed as arguments, 10M entries of {@link EvictionPolicy#lru()}
+ * need about 3 GB of heap.
+ */
+public class MemoryFootprintBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long[] counts = {1000000, 10000000};
+        if (args.length > 0) {
+            counts = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Long.parseLong(args[i]);
+            }
+        }
+        System.out.println("entries\tpolicy\theap bytes/entry\toff-heap bytes/entry");
+        for (long count : counts) {
+            run(count, "lru", EvictionPolicy.lru());
+            run(count, "compactLru", EvictionPolicy.compactLru(false));
+            run(count, "compactLru(off-heap)", EvictionPolicy.compactLru(true));
+        }
+    }
+
+    private static void run(long count, String name, EvictionPolicy policy) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+
+        CacheInternalAccess<SimpleMeta> cache = policy.createCache();
+        for (long i = 0; i < count; i++) {
+            cache.putMetaInternal(String.format("%032x", i * 0x9E3779B97F4A7C15L), new SimpleMeta(i));
+        }
+
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%d\t%s\t%.1f\t%.1f%n", cache.getEntitiesCount(), name,
+                (double) heap / count, (double) direct / count);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,51 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit latency of reading small entries with and without the memory tier. The accesses are coalesced, so
+ * the journal doesn't dominate.
+ */
+public class MemoryTierBenchmark {
+
+    private static final int ENTRIES = 200;
+    private static final int[] SIZES = {512, 4 * 1024, 16 * 1024};
+    private static final long DURATION_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("entry size\tdisk\theap tier\tdirect tier");
+        for (int size : SIZES) {
+            double disk = run(size, options());
+            double heap = run(size, options().setMemoryTier(16 * 1024 * 1024, 16 * 1024, false));
+            double direct = run(size, options().setMemoryTier(16 * 1024 * 1024, 16 * 1024, true));
+            System.out.printf("%d\t%.0f ns\t%.0f ns\t%.0f ns%n", size, 1e9 / disk, 1e9 / heap, 1e9 / direct);
+        }
+    }
+
+    private static CacheOptions options() {
+        return new CacheOptions().setLockFreeReads(true).setAccessCoalescing(1, TimeUnit.SECONDS);
+    }
+
+    private static double run(final int size, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("memory");
+        try {
+            final DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, options);
+            cache.init();
+            Benchmarks.fill(cache, dir, ENTRIES, size);
+            try {
+                return Benchmarks.opsPerSecond(1, DURATION_MILLIS, new Benchmarks.Operation() {
+                    @Override
+                    public void run(int thread, long iteration) throws IOException {
+                        cache.read(Benchmarks.key(iteration % ENTRIES)).get(size / 2);
+                    }
+                });
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files, allocated space, put and read rates of tiny entries with a file per entry and with the pack storage.
+ * The space is estimated with 4 KB file system blocks.
+ */
+public class PackBenchmark {
+
+    private static final int ENTRIES = 20000;
+    private static final int[] SIZES = {128, 1024};
+    private static final long BLOCK_SIZE = 4096;
+    private static final long DURATION_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("entry size\tstorage\tfiles\tallocated\tputs/s\treads/s");
+        for (int size : SIZES) {
+            run(size, "files", options());
+            run(size, "packs", options().setPackStorage(4096, 64 * 1024 * 1024, 0.5));
+        }
+    }
+
+    private static CacheOptions options() {
+        return new CacheOptions().setLockFreeReads(true).setAccessCoalescing(1, TimeUnit.SECONDS)
+                .setGroupCommit(0, TimeUnit.MILLISECONDS, 64);
+    }
+
+    private static void run(int size, String name, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("pack");
+        try {
+            final DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, options);
+            cache.init();
+            try {
+                long start = System.nanoTime();
+                Benchmarks.fill(cache, dir, ENTRIES, size);
+                double puts = ENTRIES * 1e9 / (System.nanoTime() - start);
+                double reads = Benchmarks.opsPerSecond(1, DURATION_MILLIS, new Benchmarks.Operation() {
+                    @Override
+                    public void run(int thread, long iteration) throws IOException {
+                        cache.read(Benchmarks.key(iteration % ENTRIES));
+                    }
+                });
+                long[] usage = new long[2];
+                usage(new File(dir, "files"), usage);
+                usage(new File(dir, "packs"), usage);
+                System.out.printf("%d\t%s\t%d\t%.1f MB\t%.0f\t%.0f%n", size, name, usage[0], usage[1] / 1e6,
+                        puts, reads);
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static void usage(File dir, long[] usage) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            usage[0]++;
+            usage[1] += (file.length() + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Read-heavy throughput (95% hits) against the number of threads, with locked and lock-free reads.
+ */
+public class ReadBenchmark {
+
+    private static final int ENTRIES = 1000;
+    private static final long DURATION_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("threads\tlocked\tlock-free");
+        for (int threads : Benchmarks.THREAD_COUNTS) {
+            double locked = run(threads, new CacheOptions());
+            double lockFree = run(threads, new CacheOptions().setLockFreeReads(true));
+            System.out.printf("%d\t%.0f ops/s\t%.0f ops/s%n", threads, locked, lockFree);
+        }
+    }
+
+    private static double run(int threads, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("read");
+        try {
+            final DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, options);
+            cache.init();
+            Benchmarks.fill(cache, dir, ENTRIES, 1);
+            try {
+                return Benchmarks.opsPerSecond(threads, DURATION_MILLIS, new Benchmarks.Operation() {
+                    @Override
+                    public void run(int thread, long iteration) throws IOException {
+                        long i = (thread * 7919 + iteration) % (ENTRIES * 20);
+                        // every 20th key is missing
+                        cache.find(Benchmarks.key(i % 20 == 0 ? ENTRIES + i : i % ENTRIES));
+                    }
+                });
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size, encoding and decoding time of the journal records. The lines are appended to the group commit batch,
+ * so the encoding is measured without the file writes, and decoded by the journal replay.
+ */
+public class RecordFormatBenchmark {
+
+    private static final int LINES = 1000000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("meta\tbytes/line\tencode ns/line\tdecode ns/line");
+        for (int round = 0; round < ROUNDS; round++) {
+            run("SimpleMeta, default codec", new CacheOptions());
+            run("SimpleMeta, SimpleMetaCodec", new CacheOptions().setMetaCodec(new SimpleMetaCodec()));
+        }
+    }
+
+    private static void run(String name, CacheOptions options) throws IOException {
+        File dir = Benchmarks.createTempDir("record-format");
+        try {
+            options.setJournalDurability(DurabilityPolicy.osOnly())
+                    .setGroupCommit(0, TimeUnit.NANOSECONDS, Integer.MAX_VALUE);
+            Journal<SimpleMeta> journal = new Journal<>(new LinkedMapLruCache<SimpleMeta>(),
+                    new DirectoryFileSystem(dir, options), options);
+            journal.initJournal();
+            long appended = journal.getStats().getAppendedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < LINES; i++) {
+                journal.put(Benchmarks.key(i), new SimpleMeta(i), false);
+            }
+            long encodeNanos = System.nanoTime() - start;
+            appended = journal.getStats().getAppendedBytes() - appended;
+            journal.close();
+
+            start = System.nanoTime();
+            journal = new Journal<>(new LinkedMapLruCache<SimpleMeta>(), new DirectoryFileSystem(dir, options), options);
+            journal.initJournal();
+            long decodeNanos = System.nanoTime() - start;
+            journal.close();
+
+            System.out.printf("%s\t%.1f\t%d\t%d%n", name, (double) appended / LINES, encodeNanos / LINES,
+                    decodeNanos / LINES);
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
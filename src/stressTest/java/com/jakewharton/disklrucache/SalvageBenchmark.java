@@ -0,0 +1,65 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Entries kept by the journal replay after random bytes of the journal are corrupted, and after a write torn
+ * in the middle of the journal.
+ */
+public class SalvageBenchmark {
+
+    private static final int ENTRIES = 100000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("damage\tentries kept\tdropped records\tdropped KB\treplay ms");
+        for (int flips : new int[]{1, 10, 100}) {
+            run(flips + " flipped bytes", flips, false);
+        }
+        run("zeroed half", 0, true);
+    }
+
+    private static void run(String name, int flips, boolean zeroHalf) throws IOException {
+        File dir = Benchmarks.createTempDir("salvage");
+        try {
+            CacheOptions options = new CacheOptions().setJournalDurability(DurabilityPolicy.osOnly());
+            Journal<SimpleMeta> journal = new Journal<>(new LinkedMapLruCache<SimpleMeta>(),
+                    new DirectoryFileSystem(dir, options), options);
+            journal.initJournal();
+            for (int i = 0; i < ENTRIES; i++) {
+                journal.put(Benchmarks.key(i), new SimpleMeta(i), false);
+            }
+            journal.close();
+
+            try (RandomAccessFile file = new RandomAccessFile(new File(dir, Journal.JOURNAL_FILE_NAME), "rw")) {
+                // skips the header and the magic line
+                long from = 64;
+                Random random = new Random(1);
+                for (int i = 0; i < flips; i++) {
+                    file.seek(from + (long) (random.nextDouble() * (file.length() - from)));
+                    int b = file.read();
+                    file.seek(file.getFilePointer() - 1);
+                    file.write(b ^ (1 << random.nextInt(8)));
+                }
+                if (zeroHalf) {
+                    file.seek(file.length() / 2);
+                    file.write(new byte[4096]);
+                }
+            }
+
+            LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+            long start = System.nanoTime();
+            journal = new Journal<>(cache, new DirectoryFileSystem(dir, options), options);
+            journal.initJournal();
+            long elapsed = System.nanoTime() - start;
+            JournalStats stats = journal.getStats();
+            journal.close();
+            System.out.printf("%s\t%d\t%d\t%.1f\t%d%n", name, cache.getEntitiesCount(), stats.getDroppedRecords(),
+                    stats.getDroppedBytes() / 1024.0, elapsed / 1000000);
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
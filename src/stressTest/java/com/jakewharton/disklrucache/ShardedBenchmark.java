@@ -0,0 +1,103 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Mixed find/renewMeta throughput against the number of threads, for a single cache and a sharded one.
+ * The journal is not forced, so the numbers show lock contention rather than the disk.
+ */
+public class ShardedBenchmark {
+
+    private static final int ENTRIES = 1000;
+    private static final int SEGMENTS = 16;
+    private static final long DURATION_MILLIS = 2000;
+
+    private interface Cache {
+        void renewMeta(String key, SimpleMeta meta) throws IOException;
+
+        void find(String key) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("threads\tsingle\tsharded(" + SEGMENTS + ")");
+        for (int threads : Benchmarks.THREAD_COUNTS) {
+            double single = runSingle(threads);
+            double sharded = runSharded(threads);
+            System.out.printf("%d\t%.0f ops/s\t%.0f ops/s%n", threads, single, sharded);
+        }
+    }
+
+    private static CacheOptions options() {
+        return new CacheOptions().setJournalDurability(DurabilityPolicy.osOnly());
+    }
+
+    private static double runSingle(int threads) throws Exception {
+        File dir = Benchmarks.createTempDir("single");
+        try {
+            final DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE, options());
+            cache.init();
+            Benchmarks.fill(cache, dir, ENTRIES, 1);
+            try {
+                return run(threads, new Cache() {
+                    @Override
+                    public void renewMeta(String key, SimpleMeta meta) throws IOException {
+                        cache.renewMeta(key, meta);
+                    }
+
+                    @Override
+                    public void find(String key) throws IOException {
+                        cache.find(key);
+                    }
+                });
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static double runSharded(int threads) throws Exception {
+        File dir = Benchmarks.createTempDir("sharded");
+        try {
+            final ShardedDiskLruCache<SimpleMeta> cache = new ShardedDiskLruCache<>(dir, Long.MAX_VALUE, SEGMENTS,
+                    options(), WeightBalancer.equal());
+            cache.init();
+            for (int i = 0; i < ENTRIES; i++) {
+                cache.put(Benchmarks.writeFile(dir, "tmp", 1), Benchmarks.key(i), new SimpleMeta(1));
+            }
+            try {
+                return run(threads, new Cache() {
+                    @Override
+                    public void renewMeta(String key, SimpleMeta meta) throws IOException {
+                        cache.renewMeta(key, meta);
+                    }
+
+                    @Override
+                    public void find(String key) throws IOException {
+                        cache.find(key);
+                    }
+                });
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+
+    private static double run(int threads, final Cache cache) throws Exception {
+        return Benchmarks.opsPerSecond(threads, DURATION_MILLIS, new Benchmarks.Operation() {
+            @Override
+            public void run(int thread, long iteration) throws IOException {
+                String key = Benchmarks.key((thread * 7919 + iteration) % ENTRIES);
+                if (iteration % 4 == 0) {
+                    cache.renewMeta(key, new SimpleMeta(1));
+                } else {
+                    cache.find(key);
+                }
+            }
+        });
+    }
+}
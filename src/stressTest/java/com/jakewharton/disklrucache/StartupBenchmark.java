@@ -0,0 +1,78 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Time to open the journal of a big cache with and without the checkpoint. The journal gets the entries and
+ * then some history of replaced entries, it is compacted by the adaptive trigger.
+ */
+public class StartupBenchmark {
+
+    private static final int ENTRIES = 5000000;
+    private static final int HISTORY = 1000000;
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : ENTRIES;
+        System.out.println("journal\tpolicy\tentries\tjournal MB\tcheckpoint MB\tstartup ms");
+        run("full", "lru", entries, options());
+        run("checkpoint", "lru", entries, options().setCheckpoint(0.1));
+        run("full", "compactLru", entries, options().setEvictionPolicy(EvictionPolicy.compactLru(false)));
+        run("checkpoint", "compactLru", entries, options().setCheckpoint(0.1)
+                .setEvictionPolicy(EvictionPolicy.compactLru(false)));
+    }
+
+    private static CacheOptions options() {
+        return new CacheOptions()
+                .setJournalDurability(DurabilityPolicy.osOnly())
+                .setAdaptiveCompaction(2, 1024 * 1024, Long.MAX_VALUE);
+    }
+
+    private static void run(String name, String policy, int entries, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("startup");
+        try {
+            DirectoryFileSystem fileSystem = new DirectoryFileSystem(dir, options);
+            CacheInternalAccess<SimpleMeta> cache = options.getEvictionPolicy().createCache();
+            Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem, options);
+            journal.initJournal();
+            Random random = new Random(1);
+            for (int i = 0; i < entries + HISTORY; i++) {
+                String key = Benchmarks.key(i < entries ? i : random.nextInt(entries));
+                SimpleMeta meta = new SimpleMeta(random.nextInt(1 << 20));
+                boolean exists = cache.putMetaInternal(key, meta) != null;
+                journal.put(key, meta, exists);
+            }
+            journal.close();
+            cache = null;
+            journal = null;
+
+            long checkpointBytes = 0;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().startsWith(Journal.CHECKPOINT_FILE_PREFIX)) {
+                        checkpointBytes += file.length();
+                    }
+                }
+            }
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                System.gc();
+                CacheInternalAccess<SimpleMeta> restored = options.getEvictionPolicy().createCache();
+                long start = System.nanoTime();
+                Journal<SimpleMeta> restoredJournal = new Journal<>(restored, fileSystem, options);
+                restoredJournal.initJournal();
+                best = Math.min(best, System.nanoTime() - start);
+                if (restored.getEntitiesCount() != entries) {
+                    throw new IllegalStateException("Restored " + restored.getEntitiesCount() + " entries");
+                }
+                restoredJournal.close();
+            }
+            System.out.printf("%s\t%s\t%d\t%.1f\t%.1f\t%d%n", name, policy, entries,
+                    new File(dir, Journal.JOURNAL_FILE_NAME).length() / 1e6, checkpointBytes / 1e6, best / 1000000);
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Serving entries to a loopback socket: copying the found file through a heap buffer against transferTo.
+ * The CPU time is the time of the sending thread only.
+ */
+public class TransferBenchmark {
+
+    private static final int ENTRIES = 64;
+    private static final int[] SIZES = {16 * 1024, 1024 * 1024};
+    private static final long DURATION_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("entry KB\tmethod\tMB/s\tCPU ns/KB");
+        for (int size : SIZES) {
+            run(size, false);
+            run(size, true);
+        }
+    }
+
+    private static void run(int size, boolean transfer) throws Exception {
+        File dir = Benchmarks.createTempDir("transfer");
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE);
+            cache.init();
+            Benchmarks.fill(cache, dir, ENTRIES, size);
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            final SocketChannel accepted = server.accept();
+            Thread drain = new Thread() {
+                @Override
+                public void run() {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+                    try {
+                        while (accepted.read(buffer) >= 0) {
+                            buffer.clear();
+                        }
+                    } catch (IOException ignored) {
+                    }
+                }
+            };
+            drain.start();
+            try {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                OutputStream output = Channels.newOutputStream(client);
+                byte[] buffer = new byte[8192];
+                long bytes = 0;
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                long start = System.nanoTime();
+                for (long i = 0; System.nanoTime() - start < DURATION_MILLIS * 1000000; i++) {
+                    String key = Benchmarks.key(i % ENTRIES);
+                    if (transfer) {
+                        bytes += cache.transferTo(key, client, 0, Long.MAX_VALUE);
+                    } else {
+                        InputStream input = new FileInputStream(cache.find(key));
+                        try {
+                            int read;
+                            while ((read = input.read(buffer)) > 0) {
+                                output.write(buffer, 0, read);
+                                bytes += read;
+                            }
+                        } finally {
+                            input.close();
+                        }
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+                System.out.printf("%d\t%s\t%.0f\t%.0f%n", size / 1024, transfer ? "transferTo" : "heap copy",
+                        bytes * 1e9 / elapsed / (1024 * 1024), cpu * 1024.0 / bytes);
+            } finally {
+                client.close();
+                drain.join();
+                accepted.close();
+                cache.close();
+            }
+        } finally {
+            server.close();
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+/**
+ * Time until a restarted cache answers the first request, with the blocking init and with the asynchronous
+ * warm-up, and the time until the warm-up is done.
+ */
+public class WarmUpBenchmark {
+
+    private static final int ENTRIES = 1000000;
+    private static final int FILES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        File dir = Benchmarks.createTempDir("warmup");
+        try {
+            fill(dir);
+            System.out.println("init\tfirst find ms\tready ms");
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE);
+                cache.init();
+                find(cache, run);
+                long found = System.nanoTime() - start;
+                cache.close();
+                System.out.printf("blocking\t%d\t%d%n", found / 1000000, found / 1000000);
+
+                start = System.nanoTime();
+                AsyncDiskLruCache<SimpleMeta> asyncCache =
+                        new AsyncDiskLruCache<>(dir, Long.MAX_VALUE, AsyncDiskLruCache.SyncMode.SyncForModify);
+                Future<Void> ready = asyncCache.initAsync();
+                find(asyncCache, run);
+                found = System.nanoTime() - start;
+                ready.get();
+                long done = System.nanoTime() - start;
+                asyncCache.close();
+                System.out.printf("warm-up\t%d\t%d%n", found / 1000000, done / 1000000);
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+        // the executors of the async caches are never shut down
+        System.exit(0);
+    }
+
+    private static void find(DiskLruCache<SimpleMeta> cache, int run) throws Exception {
+        // the last entries are replayed last
+        if (cache.find(Benchmarks.key(ENTRIES - 1 - run)) == null) {
+            throw new IllegalStateException("Entry not found");
+        }
+    }
+
+    // writes the journal directly, only the last entries get their files
+    private static void fill(File dir) throws Exception {
+        File filesDir = new File(dir, "files");
+        Util.ensureExists(filesDir);
+        CacheOptions options = new CacheOptions().setJournalDurability(DurabilityPolicy.osOnly());
+        LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+        Journal<SimpleMeta> journal = new Journal<>(cache, new DirectoryFileSystem(new File(dir, "journal"), options),
+                options);
+        Util.ensureExists(new File(dir, "journal"));
+        journal.initJournal();
+        for (int i = 0; i < ENTRIES; i++) {
+            SimpleMeta meta = new SimpleMeta(1);
+            cache.putMetaInternal(Benchmarks.key(i), meta);
+            journal.put(Benchmarks.key(i), meta, false);
+            if (i >= ENTRIES - FILES) {
+                Benchmarks.writeFile(filesDir, Benchmarks.key(i), 1);
+            }
+        }
+        journal.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.jakewharton.disklrucache;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Journal write amplification and compaction count of the fixed redundant operation limit and of the adaptive
+ * trigger, for a small and a big cache. Every put replaces an existing entry.
+ */
+public class WriteAmplificationBenchmark {
+
+    private static final int OPERATIONS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("entries\ttrigger\tops/s\tcompactions\tamplification\tjournal KB\tlive KB");
+        for (int entries : new int[]{100, 100000}) {
+            run(entries, "fixed", new CacheOptions());
+            run(entries, "adaptive", new CacheOptions().setAdaptiveCompaction(2, 64 * 1024, 64 * 1024 * 1024));
+        }
+    }
+
+    private static void run(int entries, String name, CacheOptions options) throws Exception {
+        File dir = Benchmarks.createTempDir("amplification");
+        try {
+            DiskLruCache<SimpleMeta> cache = new DiskLruCache<>(dir, Long.MAX_VALUE,
+                    options.setJournalDurability(DurabilityPolicy.osOnly()));
+            cache.init();
+            try {
+                Benchmarks.fill(cache, dir, entries, 1);
+                JournalStats before = cache.getJournalStats();
+                Random random = new Random(1);
+                long start = System.nanoTime();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    cache.put(Benchmarks.writeFile(dir, "tmp", 1), Benchmarks.key(random.nextInt(entries)),
+                            new SimpleMeta(1));
+                }
+                long elapsed = System.nanoTime() - start;
+                JournalStats stats = cache.getJournalStats();
+                System.out.printf("%d\t%s\t%.0f\t%d\t%.2f\t%d\t%d%n", entries, name, OPERATIONS * 1e9 / elapsed,
+                        stats.getCompactionCount() - before.getCompactionCount(), stats.getWriteAmplification(),
+                        stats.getJournalBytes() / 1024, stats.getLiveBytes() / 1024);
+            } finally {
+                cache.close();
+            }
+        } finally {
+            Benchmarks.deleteRecursively(dir);
+        }
+    }
+}
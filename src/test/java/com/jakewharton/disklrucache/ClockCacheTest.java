@@ -0,0 +1,108 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ClockCacheTest {
+
+    private ClockCache<String> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ClockCache<>();
+        for (String key : Arrays.asList("a", "b", "c", "d")) {
+            cache.putMetaInternal(key, key + "-meta");
+        }
+    }
+
+    @Test
+    public void testInsertionOrder() throws Exception {
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys(cache.getEntriesIterator()));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys(cache.getEvictionIterator()));
+    }
+
+    @Test
+    public void testSecondChance() throws Exception {
+        assertEquals("a-meta", cache.accessInternal("a"));
+        cache.accessInternal("c");
+
+        Iterator<Map.Entry<String, String>> iterator = cache.getEvictionIterator();
+        assertEquals("b", iterator.next().getKey());
+        iterator.remove();
+        assertEquals("d", iterator.next().getKey());
+        iterator.remove();
+
+        assertFalse(cache.containsInternal("b"));
+        assertFalse(cache.containsInternal("d"));
+        assertEquals(2, cache.getEntitiesCount());
+        // the marks are used up, so the hand goes around once more
+        assertEquals(Arrays.asList("a", "c"), keys(cache.getEvictionIterator()));
+    }
+
+    @Test
+    public void testLookingAtVictimsKeepsMarks() throws Exception {
+        cache.accessInternal("a");
+        cache.accessInternal("c");
+
+        assertEquals(Arrays.asList("b", "d", "a", "c"), keys(cache.getEvictionIterator()));
+        // nothing was removed, so the hand and the marks are where they were
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys(cache.getEntriesIterator()));
+        assertEquals(Arrays.asList("b", "d", "a", "c"), keys(cache.getEvictionIterator()));
+    }
+
+    @Test
+    public void testEvictAll() throws Exception {
+        cache.accessInternal("a");
+        cache.accessInternal("b");
+        cache.accessInternal("c");
+        cache.accessInternal("d");
+
+        Iterator<Map.Entry<String, String>> iterator = cache.getEvictionIterator();
+        List<String> evicted = new ArrayList<>();
+        while (iterator.hasNext()) {
+            evicted.add(iterator.next().getKey());
+            iterator.remove();
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), evicted);
+        assertEquals(0, cache.getEntitiesCount());
+        assertFalse(cache.getEntriesIterator().hasNext());
+    }
+
+    @Test
+    public void testNewEntriesGoBehindTheHand() throws Exception {
+        Iterator<Map.Entry<String, String>> iterator = cache.getEvictionIterator();
+        iterator.next();
+        iterator.remove();
+
+        cache.putMetaInternal("e", "e-meta");
+
+        assertEquals(Arrays.asList("b", "c", "d", "e"), keys(cache.getEntriesIterator()));
+    }
+
+    @Test
+    public void testReplaceAndRemove() throws Exception {
+        assertEquals("b-meta", cache.putMetaInternal("b", "new"));
+        assertEquals("new", cache.removeInternal("b"));
+        assertNull(cache.removeInternal("b"));
+        assertNull(cache.accessInternal("b"));
+
+        assertEquals(Arrays.asList("a", "c", "d"), keys(cache.getEvictionIterator()));
+    }
+
+    private static List<String> keys(Iterator<Map.Entry<String, String>> iterator) {
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,100 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompactLruCacheTest {
+
+    @Test
+    public void testSameOrderAsLinkedMap() throws Exception {
+        testSameOrderAsLinkedMap(false);
+    }
+
+    @Test
+    public void testSameOrderAsLinkedMapOffHeap() throws Exception {
+        testSameOrderAsLinkedMap(true);
+    }
+
+    @Test
+    public void testSimpleMetaIsPacked() throws Exception {
+        CompactLruCache<SimpleMeta> cache = new CompactLruCache<>(false);
+        cache.putMetaInternal("a", new SimpleMeta(10));
+
+        assertEquals(10, cache.putMetaInternal("a", new SimpleMeta(20)).weight());
+        assertEquals(20, cache.accessInternal("a").weight());
+        assertEquals(20, cache.removeInternal("a").weight());
+        assertNull(cache.accessInternal("a"));
+    }
+
+    @Test
+    public void testUnicodeKeys() throws Exception {
+        CompactLruCache<String> cache = new CompactLruCache<>(true);
+        cache.putMetaInternal("ключ", "m1");
+        cache.putMetaInternal("鍵", "m2");
+
+        assertTrue(cache.containsInternal("ключ"));
+        assertEquals("m2", cache.accessInternal("鍵"));
+        assertEquals("ключ", cache.getEntriesIterator().next().getKey());
+    }
+
+    @Test
+    public void testEvictionIteratorRemove() throws Exception {
+        CompactLruCache<String> cache = new CompactLruCache<>(false);
+        for (int i = 0; i < 100; i++) {
+            cache.putMetaInternal("k" + i, "m" + i);
+        }
+
+        Iterator<Map.Entry<String, String>> iterator = cache.getEvictionIterator();
+        for (int i = 0; i < 50; i++) {
+            assertEquals("k" + i, iterator.next().getKey());
+            iterator.remove();
+        }
+
+        assertEquals(50, cache.getEntitiesCount());
+        assertFalse(cache.containsInternal("k49"));
+        assertTrue(cache.containsInternal("k50"));
+        assertEquals("k50", cache.getEntriesIterator().next().getKey());
+    }
+
+    // random operations over a small key space, so the table deletes and the arena compaction are exercised
+    private void testSameOrderAsLinkedMap(boolean offHeap) {
+        CompactLruCache<String> compact = new CompactLruCache<>(offHeap);
+        LinkedMapLruCache<String> expected = new LinkedMapLruCache<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            String key = "key-" + random.nextInt(500);
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.putMetaInternal(key, "m" + i), compact.putMetaInternal(key, "m" + i));
+                    break;
+                case 1:
+                    assertEquals(expected.accessInternal(key), compact.accessInternal(key));
+                    break;
+                case 2:
+                    assertEquals(expected.removeInternal(key), compact.removeInternal(key));
+                    break;
+                default:
+                    assertEquals(expected.containsInternal(key), compact.containsInternal(key));
+            }
+        }
+
+        assertEquals(expected.getEntitiesCount(), compact.getEntitiesCount());
+        assertEquals(entries(expected.getEntriesIterator()), entries(compact.getEntriesIterator()));
+    }
+
+    private static List<String> entries(Iterator<Map.Entry<String, String>> iterator) {
+        List<String> entries = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return entries;
+    }
+}
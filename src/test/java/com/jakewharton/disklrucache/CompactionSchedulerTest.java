@@ -0,0 +1,68 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactionSchedulerTest {
+
+    @Test
+    public void testAmplificationThreshold() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(3, 0, Long.MAX_VALUE);
+        scheduler.onOpen(1000, 100);
+
+        // 100 entries of 10 bytes are live, 500 bytes of garbage are needed for the amplification of 3
+        assertFalse(scheduler.shouldCompact(100));
+        scheduler.onAppend(499);
+        assertFalse(scheduler.shouldCompact(100));
+        scheduler.onAppend(1);
+        assertTrue(scheduler.shouldCompact(100));
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(1.5, 100, 200);
+        scheduler.onOpen(10, 1);
+
+        scheduler.onAppend(50);
+        assertFalse("Less garbage than the lower bound", scheduler.shouldCompact(1));
+        scheduler.onAppend(50);
+        assertTrue(scheduler.shouldCompact(1));
+
+        scheduler.onCompaction(10000, 10000, 1000, 0);
+        scheduler.onAppend(199);
+        assertFalse(scheduler.shouldCompact(1000));
+        scheduler.onAppend(1);
+        assertTrue("More garbage than the upper bound", scheduler.shouldCompact(1000));
+    }
+
+    @Test
+    public void testCompactionCostDefersNext() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(2, 0, 1000000);
+        scheduler.onCompaction(100, 100, 10, 3600L * 1000000000L);
+        scheduler.onAppend(1000);
+
+        assertFalse(scheduler.shouldCompact(10));
+        scheduler.onAppend(1000000);
+        assertTrue(scheduler.shouldCompact(10));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(2, 0, Long.MAX_VALUE);
+        scheduler.onOpen(10, 0);
+        scheduler.onPut(10);
+        scheduler.onAppend(10);
+        scheduler.onAppend(90);
+        scheduler.onCompaction(20, 50, 2, 1000);
+
+        JournalStats stats = scheduler.getStats(2);
+        assertEquals(100, stats.getAppendedBytes());
+        assertEquals(50, stats.getCompactionBytes());
+        assertEquals(1, stats.getCompactionCount());
+        assertEquals(1000, stats.getCompactionNanos());
+        assertEquals(50, stats.getJournalBytes());
+        assertEquals(20, stats.getLiveBytes());
+        assertEquals(1.5, stats.getWriteAmplification(), 1e-9);
+    }
+}
@@ -0,0 +1,61 @@
+package com.jakewharton.disklrucache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class CountingInMemoryFile extends TransactionalInMemoryFile {
+
+    private final OutputStream countingStream = new FilterOutputStream(super.getOutputStream()) {
+        @Override
+        public void write(int b) throws IOException {
+            writes++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            writes++;
+            out.write(b, off, len);
+        }
+    };
+
+    int writes;
+
+    @Override
+    public OutputStream getOutputStream() {
+        return countingStream;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        writes++;
+        super.write(b, off, len);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        writes++;
+        super.write(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        writes++;
+        super.write(b);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        writes++;
+        super.writeInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        writes++;
+        super.writeLong(v);
+    }
+}
@@ -0,0 +1,53 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Crc32cTest {
+
+    @Test
+    public void testKnownValues() throws Exception {
+        assertEquals(0, Crc32c.compute(new byte[0], 0, 0));
+        assertEquals(0xE3069283, Crc32c.compute(bytes("123456789"), 0, 9));
+        assertEquals(0x8A9136AA, Crc32c.compute(new byte[32], 0, 32));
+        byte[] ones = new byte[32];
+        Arrays.fill(ones, (byte) 0xFF);
+        assertEquals(0x62A8AB43, Crc32c.compute(ones, 0, 32));
+    }
+
+    @Test
+    public void testSlicesMatchBytes() throws Exception {
+        byte[] bytes = new byte[1000];
+        new Random(1).nextBytes(bytes);
+        for (int length = 0; length < 40; length++) {
+            Crc32c crc = new Crc32c();
+            for (int i = 0; i < length; i++) {
+                crc.update(bytes[3 + i]);
+            }
+            assertEquals((int) crc.getValue(), Crc32c.compute(bytes, 3, length));
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        byte[] bytes = new byte[1000];
+        new Random(2).nextBytes(bytes);
+        Crc32c crc = new Crc32c();
+        crc.update(bytes, 0, 13);
+        crc.update(bytes, 13, 987);
+        assertEquals(Crc32c.compute(bytes, 0, 1000), (int) crc.getValue());
+
+        crc.reset();
+        crc.update(bytes, 0, 1000);
+        assertEquals(Crc32c.compute(bytes, 0, 1000), (int) crc.getValue());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
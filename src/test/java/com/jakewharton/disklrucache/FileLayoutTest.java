@@ -0,0 +1,60 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FileLayoutTest {
+
+    private static final File DIR = new File("files");
+
+    @Test
+    public void testFlat() throws Exception {
+        assertSame(FileLayout.FLAT, FileLayout.of(0, 256));
+        assertEquals(new File(DIR, "key"), FileLayout.FLAT.file(DIR, "key"));
+    }
+
+    @Test
+    public void testShardPaths() throws Exception {
+        FileLayout layout = FileLayout.of(2, 256);
+        int hash = FileLayout.hash("key");
+        String expected = String.format("%02x%s%02x%skey", hash & 0xff, File.separator, (hash >>> 8) & 0xff,
+                File.separator);
+        assertEquals(new File(DIR, expected), layout.file(DIR, "key"));
+        assertEquals(new File(DIR, expected), FileLayout.of(2, 256).file(DIR, "key"));
+
+        String path = FileLayout.of(2, 4096).file(DIR, "key").getPath();
+        assertTrue(path, path.matches("files/[0-9a-f]{3}/[0-9a-f]{3}/key".replace("/", File.separator)));
+    }
+
+    @Test
+    public void testSpread() throws Exception {
+        FileLayout layout = FileLayout.of(1, 16);
+        Set<File> shards = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            shards.add(layout.file(DIR, "k" + i).getParentFile());
+        }
+        assertEquals(16, shards.size());
+    }
+
+    @Test
+    public void testEquality() throws Exception {
+        assertEquals(FileLayout.of(2, 256), FileLayout.of(2, 256));
+        assertNotEquals(FileLayout.of(2, 256), FileLayout.of(1, 256));
+        assertNotEquals(FileLayout.of(2, 256), FileLayout.FLAT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFanOutPowerOfTwo() throws Exception {
+        FileLayout.of(2, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooDeep() throws Exception {
+        FileLayout.of(5, 256);
+    }
+}
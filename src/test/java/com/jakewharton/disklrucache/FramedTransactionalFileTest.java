@@ -0,0 +1,118 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class FramedTransactionalFileTest {
+
+    private CountingInMemoryFile raw;
+    private FramedTransactionalFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        raw = new CountingInMemoryFile();
+        file = new FramedTransactionalFile(raw);
+        file.createEmpty();
+    }
+
+    @Test
+    public void testCommitIsSingleWrite() throws Exception {
+        raw.writes = 0;
+        file.getOutputStream().write("First".getBytes());
+        file.getOutputStream().write("Second".getBytes());
+        file.commit();
+
+        assertEquals("Commit should be written at once", 1, raw.writes);
+        assertContent("FirstSecond");
+    }
+
+    @Test
+    public void testEmptyCommitWritesNothing() throws Exception {
+        raw.writes = 0;
+        file.commit();
+        assertEquals(0, raw.writes);
+    }
+
+    @Test
+    public void testTornFrameIsDropped() throws Exception {
+        file.write("Committed".getBytes());
+        file.commit();
+        file.write("Torn".getBytes());
+        file.commit();
+
+        raw.setLength(raw.length() - 2);
+
+        assertContent("Committed");
+        assertEquals("Torn tail should be truncated",
+                FramedTransactionalFile.MAGIC_SIZE + FramedTransactionalFile.FRAME_HEADER_SIZE + 9, raw.length());
+    }
+
+    @Test
+    public void testCorruptedFrameIsDropped() throws Exception {
+        file.write("Committed".getBytes());
+        file.commit();
+        long corrupted = raw.length() + FramedTransactionalFile.FRAME_HEADER_SIZE + 1;
+        file.write("Corrupted".getBytes());
+        file.commit();
+        file.write("Next".getBytes());
+        file.commit();
+
+        raw.seek(corrupted);
+        raw.write('X');
+
+        assertContent("Committed");
+    }
+
+    @Test
+    public void testLargeCommit() throws Exception {
+        byte[] bytes = new byte[FramedTransactionalFile.MAX_FRAME_SIZE * 2 + 10];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        file.write(bytes);
+        file.commit();
+
+        FramedTransactionalFile restored = reopen();
+        byte[] restoredBytes = new byte[bytes.length];
+        restored.readFully(restoredBytes);
+        assertArrayEquals(bytes, restoredBytes);
+        assertEquals(-1, restored.getInputStream().read());
+    }
+
+    @Test
+    public void testUnfinishedCommitIsDropped() throws Exception {
+        file.write("Committed".getBytes());
+        file.commit();
+        file.write(new byte[FramedTransactionalFile.MAX_FRAME_SIZE + 10]);
+
+        assertTrue("Full frames should be written before commit", raw.length() > FramedTransactionalFile.MAX_FRAME_SIZE);
+        assertContent("Committed");
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotFramed() throws Exception {
+        TransactionalInMemoryFile legacy = new TransactionalInMemoryFile();
+        legacy.createEmpty();
+        assertFalse(FramedTransactionalFile.isFramed(legacy));
+        new FramedTransactionalFile(legacy).init();
+    }
+
+    private void assertContent(String expected) throws IOException {
+        FramedTransactionalFile restored = reopen();
+        byte[] bytes = new byte[expected.length()];
+        restored.readFully(bytes);
+        assertEquals(expected, new String(bytes));
+        assertEquals("File has extra content", -1, restored.getInputStream().read());
+    }
+
+    private FramedTransactionalFile reopen() throws IOException {
+        raw.seek(0);
+        FramedTransactionalFile restored = new FramedTransactionalFile(raw);
+        restored.init();
+        return restored;
+    }
+}
@@ -0,0 +1,48 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(64);
+        assertEquals(0, sketch.frequency("a"));
+
+        sketch.increment("a");
+        sketch.increment("a");
+        sketch.increment("b");
+
+        assertEquals(2, sketch.frequency("a"));
+        assertEquals(1, sketch.frequency("b"));
+        assertEquals(0, sketch.frequency("c"));
+    }
+
+    @Test
+    public void testSaturation() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+
+        assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency("a"));
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("hot");
+        }
+        // the sample size is ten times the expected entries
+        for (int i = 0; i < 149; i++) {
+            sketch.increment("k" + i);
+        }
+        int frequency = sketch.frequency("hot");
+        sketch.increment("last");
+
+        assertEquals(frequency / 2, sketch.frequency("hot"));
+    }
+}
@@ -36,6 +36,10 @@ public class InMemoryFileSystem implements VirtualFileSystem {
         return new InMemoryFile(this, name);
     }
 
+    protected TransactionalInMemoryFile createTransactionalInMemoryFile() {
+        return new TransactionalInMemoryFile();
+    }
+
     public int count() {
         return files.size();
     }
@@ -58,7 +62,7 @@ public class InMemoryFileSystem implements VirtualFileSystem {
             record = files.get(name);
         }
         if (record.file == null) {
-            record.file = new TransactionalInMemoryFile();
+            record.file = createTransactionalInMemoryFile();
         }
         record.file.seek(0);
         return record.file;
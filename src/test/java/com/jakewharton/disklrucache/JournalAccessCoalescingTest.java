@@ -0,0 +1,171 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JournalAccessCoalescingTest {
+
+    private InMemoryFileSystem fileSystem;
+    private CacheMap<String> cache;
+    private Journal<String> journal;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+        journal = createJournal(TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Test
+    public void testAccessesLoggedOnClose() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            put("k" + i, "m" + i);
+        }
+        long appended = journal.getStats().getAppendedBytes();
+        access("k1");
+        access("k3");
+        access("k1");
+        assertEquals("Accesses shouldn't be logged before the interval", appended,
+                journal.getStats().getAppendedBytes());
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"k0", "m0"},
+                {"k2", "m2"},
+                {"k4", "m4"},
+                {"k3", "m3"},
+                {"k1", "m1"},
+        });
+    }
+
+    @Test
+    public void testPutAndRemoveAfterAccess() throws Exception {
+        put("a", "m1");
+        put("b", "m2");
+        put("c", "m3");
+        access("a");
+        put("a", "m4");
+        access("b");
+        access("c");
+        remove("c");
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"a", "m4"},
+                {"b", "m2"},
+        });
+    }
+
+    @Test
+    public void testFlushAccesses() throws Exception {
+        put("a", "m1");
+        put("b", "m2");
+        access("a");
+        journal.flushAccesses();
+        long appended = journal.getStats().getAppendedBytes();
+        journal.flushAccesses();
+        assertEquals("Nothing to flush", appended, journal.getStats().getAppendedBytes());
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"b", "m2"},
+                {"a", "m1"},
+        });
+    }
+
+    @Test
+    public void testZeroInterval() throws Exception {
+        journal.close();
+        journal = createJournal(0);
+        put("a", "m1");
+        put("b", "m2");
+        long appended = journal.getStats().getAppendedBytes();
+        access("a");
+        assertTrue("Access should be logged at once", journal.getStats().getAppendedBytes() > appended);
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"b", "m2"},
+                {"a", "m1"},
+        });
+    }
+
+    @Test
+    public void testBytesPerHit() throws Exception {
+        long coalesced = appendHits(journal);
+        journal.close();
+
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        long plain = appendHits(journal);
+
+        assertTrue("Coalesced " + coalesced + " vs plain " + plain, coalesced * 100 < plain);
+        journal.close();
+    }
+
+    @Test
+    public void testCompactionKeepsRecency() throws Exception {
+        put("a", "m1");
+        put("b", "m2");
+        access("a");
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT + 1; i++) {
+            put("k", "m");
+        }
+        assertEquals(0, journal.getRedundantOperations());
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"b", "m2"},
+                {"a", "m1"},
+                {"k", "m"},
+        });
+    }
+
+    private long appendHits(Journal<String> journal) throws Exception {
+        for (int i = 0; i < 10; i++) {
+            put("k" + i, "m" + i);
+        }
+        long appended = journal.getStats().getAppendedBytes();
+        for (int i = 0; i < 1000; i++) {
+            access("k" + i % 10);
+        }
+        journal.flushAccesses();
+        return journal.getStats().getAppendedBytes() - appended;
+    }
+
+    private Journal<String> createJournal(long intervalNanos) throws Exception {
+        Journal<String> journal = new Journal<>(cache, fileSystem,
+                new CacheOptions().setAccessCoalescing(intervalNanos, TimeUnit.NANOSECONDS));
+        journal.initJournal();
+        return journal;
+    }
+
+    private void assertRestored(String[][] expected) throws Exception {
+        CacheMap<String> restored = new CacheMap<>();
+        Journal<String> journal = new Journal<>(restored, fileSystem);
+        journal.initJournal();
+        restored.assertEquals(expected);
+        journal.close();
+    }
+
+    private void put(String key, String meta) throws Exception {
+        boolean exists = cache.putMetaInternal(key, meta) != null;
+        journal.put(key, meta, exists);
+    }
+
+    private void access(String key) throws Exception {
+        cache.accessInternal(key);
+        journal.access(key, false);
+    }
+
+    private void remove(String key) throws Exception {
+        cache.removeInternal(key);
+        journal.remove(key);
+    }
+}
@@ -0,0 +1,88 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JournalAdaptiveCompactionTest {
+
+    private InMemoryFileSystem fileSystem;
+    private CacheMap<String> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+    }
+
+    @Test
+    public void testWriteAmplification() throws Exception {
+        Journal<String> journal = open(new CacheOptions().setAdaptiveCompaction(2, 0, Long.MAX_VALUE));
+        for (int i = 0; i < 20000; i++) {
+            put(journal, "k" + i % 500, "m" + i);
+        }
+
+        JournalStats stats = journal.getStats();
+        assertTrue("No compactions: " + stats, stats.getCompactionCount() > 0);
+        assertTrue("Too big amplification: " + stats, stats.getWriteAmplification() <= 2.1);
+        journal.close();
+    }
+
+    @Test
+    public void testSmallCacheCompactsRarely() throws Exception {
+        Journal<String> journal = open(new CacheOptions().setAdaptiveCompaction(2, 64 * 1024, Long.MAX_VALUE));
+        for (int i = 0; i < 20000; i++) {
+            put(journal, "k" + i % 10, "m" + i);
+        }
+
+        JournalStats stats = journal.getStats();
+        assertTrue("No compactions: " + stats, stats.getCompactionCount() > 0);
+        assertTrue("Compacted too often: " + stats,
+                stats.getCompactionCount() <= stats.getAppendedBytes() / (64 * 1024));
+        journal.close();
+    }
+
+    @Test
+    public void testAccessesTriggerCompaction() throws Exception {
+        Journal<String> journal = open(new CacheOptions().setAdaptiveCompaction(2, 0, Long.MAX_VALUE));
+        for (int i = 0; i < 100; i++) {
+            put(journal, "k" + i, "m" + i);
+        }
+        for (int i = 0; i < 5000; i++) {
+            cache.accessInternal("k" + i % 100);
+            journal.access("k" + i % 100, false);
+        }
+
+        assertTrue(journal.getStats().getCompactionCount() > 0);
+        journal.close();
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        assertEquals(100, restored.getEntitiesCount());
+    }
+
+    @Test
+    public void testFixedLimitByDefault() throws Exception {
+        Journal<String> journal = open(new CacheOptions());
+        for (int i = 0; i < 5000; i++) {
+            cache.accessInternal("k");
+            journal.access("k", false);
+        }
+
+        assertEquals(0, journal.getStats().getCompactionCount());
+        assertTrue(journal.getStats().getAppendedBytes() > 0);
+        journal.close();
+    }
+
+    private Journal<String> open(CacheOptions options) throws Exception {
+        Journal<String> journal = new Journal<>(cache, fileSystem, options);
+        journal.initJournal();
+        return journal;
+    }
+
+    private void put(Journal<String> journal, String key, String meta) throws Exception {
+        boolean exists = cache.putMetaInternal(key, meta) != null;
+        journal.put(key, meta, exists);
+    }
+}
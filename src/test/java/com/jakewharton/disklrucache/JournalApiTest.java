@@ -108,6 +108,27 @@ public class JournalApiTest {
         cache.assertEquals(expected);
     }
 
+    @Test
+    public void testPutAfterCompaction() throws Exception {
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            cache.map.put("k", "m");
+            journal.put("k", "m", true);
+        }
+        Assert.assertEquals("Journal should be compacted", 0, journal.getRedundantOperations());
+
+        cache.map.put("a", "m1");
+        journal.put("a", "m1", false);
+        journal.close();
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+
+        restored.assertEquals(new String[][]{
+                {"k", "m"},
+                {"a", "m1"},
+        });
+    }
+
     @Test
     public void testAccess() throws Exception {
         for (int i = 0; i < 10; i++) {
@@ -137,6 +158,53 @@ public class JournalApiTest {
         cache.assertEquals(expected);
     }
 
+    @Test
+    public void testReplayInChunks() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            journal.put("k" + i, "m" + i, false);
+        }
+        journal.remove("k0");
+        journal.close();
+
+        CacheMap<String> restored = new CacheMap<>();
+        journal = new Journal<>(restored, fileSystem);
+        Assert.assertTrue(journal.startReplay());
+        Assert.assertFalse(journal.replay(4));
+        Assert.assertEquals("Only the first chunk should be replayed", 4, restored.getEntitiesCount());
+        Assert.assertFalse(journal.replay(4));
+        Assert.assertTrue(journal.replay(4));
+
+        journal.put("k10", "m10", false);
+        journal.close();
+
+        CacheMap<String> reloaded = new CacheMap<>();
+        new Journal<>(reloaded, fileSystem).initJournal();
+        Assert.assertEquals(10, reloaded.getEntitiesCount());
+    }
+
+    @Test
+    public void testAppendAfterReopen() throws Exception {
+        journal.close();
+        LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+        for (int session = 0; session < 3; session++) {
+            Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem);
+            journal.initJournal();
+            for (int i = 0; i < 3; i++) {
+                SimpleMeta meta = new SimpleMeta(session * 10 + i);
+                cache.putMetaInternal("k" + session + i, meta);
+                journal.put("k" + session + i, meta, false);
+            }
+            journal.remove("k" + session + 0);
+            cache.removeInternal("k" + session + 0);
+            journal.close();
+        }
+
+        LinkedMapLruCache<SimpleMeta> restored = new LinkedMapLruCache<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        Assert.assertEquals(cache.map.keySet(), restored.map.keySet());
+        Assert.assertEquals(22, restored.map.get("k22").weight());
+    }
+
     @Test
     public void testRemove() throws Exception {
         for (int i = 0; i < 10; i++) {
@@ -0,0 +1,189 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JournalBackgroundCompactionTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    };
+
+    private InMemoryFileSystem fileSystem;
+    private CacheMap<String> cache;
+    private Journal<String> journal;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem, new CacheOptions().setCompactionExecutor(executor));
+        journal.initJournal();
+    }
+
+    @Test
+    public void testCompactionInBackground() throws Exception {
+        fillRedundant();
+        assertEquals("Compaction should be scheduled", 1, tasks.size());
+
+        put("late", "m-late");
+        remove("k1");
+        access("k2");
+
+        tasks.poll().run();
+        assertTrue(fileSystem.get(Journal.JOURNAL_TMP_FILE_NAME).exists());
+
+        put("after", "m-after");
+
+        assertFalse(fileSystem.get(Journal.JOURNAL_TMP_FILE_NAME).exists());
+        assertTrue(journal.getRedundantOperations() < 10);
+        assertReplayedState();
+        // the in-memory file system rewinds the shared file, so it's measured after the close
+        assertTrue("Journal should be compacted", journalLength() < 512);
+    }
+
+    @Test
+    public void testOperationsAfterSwitch() throws Exception {
+        fillRedundant();
+        put("late", "m-late");
+        tasks.poll().run();
+        put("after", "m-after");
+
+        for (int i = 0; i < 10; i++) {
+            put("more" + i, "m" + i);
+        }
+        remove("late");
+
+        assertReplayedState();
+    }
+
+    @Test
+    public void testCatchUpWithBacklog() throws Exception {
+        fillRedundant();
+        for (int i = 0; i < Journal.COMPACTION_BACKLOG_THRESHOLD * 3; i++) {
+            put("late" + i, "m" + i);
+            if (i % 3 == 0) {
+                remove("late" + i);
+            }
+        }
+        tasks.poll().run();
+        put("after", "m-after");
+
+        assertFalse(fileSystem.get(Journal.JOURNAL_TMP_FILE_NAME).exists());
+        assertReplayedState();
+    }
+
+    @Test
+    public void testCloseBeforeCompactionStarts() throws Exception {
+        fillRedundant();
+        put("late", "m-late");
+
+        journal.close();
+        tasks.poll().run();
+
+        assertFalse(fileSystem.get(Journal.JOURNAL_TMP_FILE_NAME).exists());
+        assertReplayedState();
+    }
+
+    @Test
+    public void testCloseAfterSnapshot() throws Exception {
+        fillRedundant();
+        tasks.poll().run();
+        put("late", "m-late");
+
+        journal.close();
+
+        assertFalse(fileSystem.get(Journal.JOURNAL_TMP_FILE_NAME).exists());
+        assertReplayedState();
+    }
+
+    @Test
+    public void testRejectedCompaction() throws Exception {
+        journal.close();
+        journal = new Journal<>(cache, fileSystem, new CacheOptions().setCompactionExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }));
+        journal.initJournal();
+
+        fillRedundant();
+        put("late", "m-late");
+
+        assertReplayedState();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        journal.close();
+        journal = new Journal<>(cache, fileSystem, new CacheOptions()
+                .setGroupCommit(0, TimeUnit.MILLISECONDS, 16)
+                .setCompactionExecutor(executor));
+        journal.initJournal();
+
+        fillRedundant();
+        journal.awaitCommit();
+        put("late", "m-late");
+        tasks.poll().run();
+        put("after", "m-after");
+        journal.awaitCommit();
+        put("more", "m-more");
+
+        assertReplayedState();
+    }
+
+    private void fillRedundant() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            put("k" + i, "m" + i);
+        }
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            put("k" + i % 10, "m" + i);
+        }
+    }
+
+    private void put(String key, String meta) throws Exception {
+        boolean exists = cache.putMetaInternal(key, meta) != null;
+        journal.put(key, meta, exists);
+    }
+
+    private void remove(String key) throws Exception {
+        cache.removeInternal(key);
+        journal.remove(key);
+    }
+
+    private void access(String key) throws Exception {
+        cache.accessInternal(key);
+        journal.access(key, true);
+    }
+
+    private long journalLength() throws Exception {
+        return fileSystem.get(Journal.JOURNAL_FILE_NAME).length();
+    }
+
+    private void assertReplayedState() throws Exception {
+        journal.close();
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+
+        Object[][] expected = new Object[cache.getEntitiesCount()][];
+        int i = 0;
+        for (Map.Entry<String, String> entry : cache.map.entrySet()) {
+            expected[i++] = new Object[]{entry.getKey(), entry.getValue()};
+        }
+        restored.assertEquals(expected);
+    }
+}
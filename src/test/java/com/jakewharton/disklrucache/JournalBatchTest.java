@@ -0,0 +1,90 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JournalBatchTest {
+
+    private InMemoryFileSystem fileSystem;
+    private CacheMap<String> cache;
+    private Journal<String> journal;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+    }
+
+    @Test
+    public void testBatchReplay() throws Exception {
+        put("a", "m1");
+        journal.beginBatch(true);
+        put("b", "m2");
+        put("c", "m3");
+        remove("a");
+        put("b", "m4");
+        journal.commitBatch();
+        journal.beginBatch(false);
+        put("d", "m5");
+        journal.commitBatch();
+        journal.close();
+
+        assertRestored(new String[][]{{"c", "m3"}, {"b", "m4"}, {"d", "m5"}});
+    }
+
+    @Test
+    public void testLinesCommittedTogether() throws Exception {
+        long appended = journal.getStats().getAppendedBytes();
+        journal.beginBatch(false);
+        put("a", "m1");
+        put("b", "m2");
+        assertEquals("Lines shouldn't be written before the commit", appended,
+                journal.getStats().getAppendedBytes());
+        journal.commitBatch();
+        assertTrue(journal.getStats().getAppendedBytes() > appended);
+        journal.close();
+    }
+
+    @Test
+    public void testCompactionAfterBatch() throws Exception {
+        journal.beginBatch(true);
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT + 1; i++) {
+            put("k", "m" + i);
+        }
+        assertTrue("Compaction should wait for the end of the batch",
+                journal.getRedundantOperations() > Journal.MAX_REDUNDANT_OPERATION_COUNT);
+        journal.commitBatch();
+        assertEquals(0, journal.getRedundantOperations());
+        journal.close();
+
+        assertRestored(new String[][]{{"k", "m" + (Journal.MAX_REDUNDANT_OPERATION_COUNT + 1)}});
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNestedBatch() throws Exception {
+        journal.beginBatch(false);
+        journal.beginBatch(true);
+    }
+
+    private void assertRestored(String[][] expected) throws Exception {
+        CacheMap<String> restored = new CacheMap<>();
+        Journal<String> journal = new Journal<>(restored, fileSystem);
+        journal.initJournal();
+        restored.assertEquals(expected);
+        journal.close();
+    }
+
+    private void put(String key, String meta) throws Exception {
+        boolean exists = cache.putMetaInternal(key, meta) != null;
+        journal.put(key, meta, exists);
+    }
+
+    private void remove(String key) throws Exception {
+        cache.removeInternal(key);
+        journal.remove(key);
+    }
+}
@@ -0,0 +1,226 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class JournalCheckpointTest {
+
+    private InMemoryFileSystem fileSystem;
+    private CacheMap<String> cache;
+    private Journal<String> journal;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem, new CacheOptions().setCheckpoint(0.5));
+        journal.initJournal();
+    }
+
+    @Test
+    public void testCompactionWritesCheckpoint() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            put("k" + i, "m" + i);
+        }
+        fillRedundant();
+        assertTrue(checkpointExists(1));
+
+        put("k1", "m12");
+        remove("k2");
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"k0", "m0"},
+                {"k3", "m3"},
+                {"k4", "m4"},
+                {"k", "m"},
+                {"k1", "m12"},
+        });
+    }
+
+    @Test
+    public void testLongTailTriggersCheckpoint() throws Exception {
+        int count = Journal.MAX_REDUNDANT_OPERATION_COUNT + 10;
+        for (int i = 0; i < count; i++) {
+            put("k" + i, "m" + i);
+        }
+        assertTrue(checkpointExists(1));
+        journal.close();
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        assertEquals(count, restored.getEntitiesCount());
+    }
+
+    @Test
+    public void testNextCheckpointReplacesPrevious() throws Exception {
+        fillRedundant();
+        fillRedundant();
+
+        assertFalse(checkpointExists(1));
+        assertTrue(checkpointExists(2));
+        journal.close();
+
+        assertRestored(new String[][]{{"k", "m"}});
+    }
+
+    @Test
+    public void testMissingCheckpoint() throws Exception {
+        put("a", "m1");
+        fillRedundant();
+        put("b", "m2");
+        remove("a");
+        journal.close();
+        fileSystem.get(Journal.CHECKPOINT_FILE_PREFIX + 1).delete();
+
+        CacheMap<String> restored = new CacheMap<>();
+        Journal<String> journal = new Journal<>(restored, fileSystem);
+        journal.initJournal();
+        assertTrue(journal.isSalvaged());
+        restored.assertEquals(new String[][]{{"k", "m"}, {"b", "m2"}});
+        journal.close();
+
+        assertRestored(new String[][]{{"k", "m"}, {"b", "m2"}});
+    }
+
+    @Test
+    public void testCheckpointDisabledAfterwards() throws Exception {
+        put("a", "m1");
+        fillRedundant();
+        journal.close();
+
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"a", "m1"}, {"k", "m"}});
+
+        fillRedundant();
+        assertFalse("Plain journal doesn't need the checkpoint", checkpointExists(1));
+        journal.close();
+
+        assertRestored(new String[][]{{"a", "m1"}, {"k", "m"}});
+    }
+
+    @Test
+    public void testSimpleMeta() throws Exception {
+        LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+        Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem, new CacheOptions().setCheckpoint(0.5));
+        journal.initJournal();
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            SimpleMeta meta = new SimpleMeta(i % 10);
+            boolean exists = cache.putMetaInternal("k" + i % 10, meta) != null;
+            journal.put("k" + i % 10, meta, exists);
+        }
+        assertTrue(checkpointExists(1));
+        journal.close();
+
+        LinkedMapLruCache<SimpleMeta> restored = new LinkedMapLruCache<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        Iterator<Map.Entry<String, SimpleMeta>> iterator = restored.getEntriesIterator();
+        for (int i = 0; i < 10; i++) {
+            int index = (Journal.MAX_REDUNDANT_OPERATION_COUNT + 1 + i) % 10;
+            Map.Entry<String, SimpleMeta> entry = iterator.next();
+            assertEquals("k" + index, entry.getKey());
+            assertEquals(index, entry.getValue().weight());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testPackedMeta() throws Exception {
+        LinkedMapLruCache<FileMeta> cache = new LinkedMapLruCache<>();
+        Journal<FileMeta> journal = new Journal<>(cache, fileSystem, new CacheOptions().setCheckpoint(0.5));
+        journal.initJournal();
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            FileMeta meta = new PackedMeta(new SimpleMeta(i % 10), new PackedMeta.Location(i % 3, i * 10L, i % 10));
+            boolean exists = cache.putMetaInternal("k" + i % 10, meta) != null;
+            journal.put("k" + i % 10, meta, exists);
+        }
+        assertTrue(checkpointExists(1));
+        // the tail record
+        journal.put("tail", new PackedMeta(new SimpleMeta(7), new PackedMeta.Location(5, 1L << 40, 7)), false);
+        journal.close();
+
+        LinkedMapLruCache<FileMeta> restored = new LinkedMapLruCache<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        Iterator<Map.Entry<String, FileMeta>> iterator = restored.getEntriesIterator();
+        for (int i = 0; i < 10; i++) {
+            int index = Journal.MAX_REDUNDANT_OPERATION_COUNT + 1 - 10 + i;
+            PackedMeta meta = (PackedMeta) iterator.next().getValue();
+            assertEquals(index % 10, meta.weight());
+            assertEquals(index % 3, meta.location.segment);
+            assertEquals(index * 10L, meta.location.offset);
+        }
+        PackedMeta tail = (PackedMeta) iterator.next().getValue();
+        assertEquals(1L << 40, tail.location.offset);
+        assertEquals(7, tail.location.length);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws Exception {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        journal.close();
+        fileSystem = new InMemoryFileSystem();
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem, new CacheOptions().setCheckpoint(0.5)
+                .setCompactionExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        tasks.add(command);
+                    }
+                }));
+        journal.initJournal();
+
+        put("a", "m1");
+        fillRedundant();
+        put("late", "m-late");
+        tasks.poll().run();
+        assertTrue(checkpointExists(1));
+        put("after", "m-after");
+        journal.close();
+
+        assertRestored(new String[][]{
+                {"a", "m1"},
+                {"k", "m"},
+                {"late", "m-late"},
+                {"after", "m-after"},
+        });
+    }
+
+    private void assertRestored(String[][] expected) throws Exception {
+        CacheMap<String> restored = new CacheMap<>();
+        Journal<String> journal = new Journal<>(restored, fileSystem);
+        journal.initJournal();
+        restored.assertEquals(expected);
+        journal.close();
+    }
+
+    private boolean checkpointExists(long generation) {
+        return fileSystem.fileExists(Journal.CHECKPOINT_FILE_PREFIX + generation);
+    }
+
+    private void fillRedundant() throws Exception {
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            put("k", "m");
+        }
+    }
+
+    private void put(String key, String meta) throws Exception {
+        boolean exists = cache.putMetaInternal(key, meta) != null;
+        journal.put(key, meta, exists);
+    }
+
+    private void remove(String key) throws Exception {
+        cache.removeInternal(key);
+        journal.remove(key);
+    }
+}
@@ -74,7 +74,7 @@ public class JournalCorruptionTest {
     @Test(expected = IllegalStateException.class)
     public void testWrongMagicVersion() throws Exception {
         Journal.MagicLine line = Journal.MagicLine.createLine();
-        line.version = 2;
+        line.version = Journal.MagicLine.VERSION + 1;
         testMagic(line);
     }
 
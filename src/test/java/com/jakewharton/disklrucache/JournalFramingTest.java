@@ -0,0 +1,104 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JournalFramingTest {
+
+    private static final int OPERATIONS = 100;
+
+    private InMemoryFileSystem fileSystem;
+    private CountingInMemoryFile lastFile;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem() {
+            @Override
+            protected TransactionalInMemoryFile createTransactionalInMemoryFile() {
+                lastFile = new CountingInMemoryFile();
+                return lastFile;
+            }
+        };
+    }
+
+    @Test
+    public void testWritesPerOperation() throws Exception {
+        double legacy = writesPerOperation(new CacheOptions());
+        double framed = writesPerOperation(new CacheOptions().setFramedJournal(true));
+
+        assertEquals("Framed journal should append every line with a single write", 1.0, framed, 0.0);
+        assertTrue("Legacy journal rewrites the header: " + legacy, legacy >= 3);
+    }
+
+    @Test
+    public void testMigrateToFramed() throws Exception {
+        Journal<String> journal = new Journal<>(new CacheMap<String>(), fileSystem);
+        journal.initJournal();
+        journal.put("k1", "m1", false);
+        journal.put("k2", "m2", false);
+        journal.close();
+
+        CacheMap<String> cache = new CacheMap<>();
+        CacheOptions options = new CacheOptions().setFramedJournal(true);
+        journal = new Journal<>(cache, fileSystem, options);
+        journal.initJournal();
+        assertTrue("Journal should be converted", FramedTransactionalFile.isFramed(lastFile));
+        journal.put("k3", "m3", false);
+        journal.close();
+
+        cache = new CacheMap<>();
+        new Journal<>(cache, fileSystem, options).initJournal();
+        cache.assertEquals(new String[][]{{"k1", "m1"}, {"k2", "m2"}, {"k3", "m3"}});
+    }
+
+    @Test
+    public void testMigrateFromFramed() throws Exception {
+        CacheOptions options = new CacheOptions().setFramedJournal(true);
+        Journal<String> journal = new Journal<>(new CacheMap<String>(), fileSystem, options);
+        journal.initJournal();
+        journal.put("k1", "m1", false);
+        journal.close();
+
+        CacheMap<String> cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        assertFalse("Journal should be converted", FramedTransactionalFile.isFramed(lastFile));
+        journal.close();
+
+        cache = new CacheMap<>();
+        new Journal<>(cache, fileSystem).initJournal();
+        cache.assertEquals(new String[][]{{"k1", "m1"}});
+    }
+
+    @Test
+    public void testTornLineIsDropped() throws Exception {
+        CacheOptions options = new CacheOptions().setFramedJournal(true);
+        Journal<String> journal = new Journal<>(new CacheMap<String>(), fileSystem, options);
+        journal.initJournal();
+        journal.put("k1", "m1", false);
+        journal.put("k2", "m2", false);
+        journal.close();
+
+        TransactionalVirtualFile raw = fileSystem.get(Journal.JOURNAL_FILE_NAME).createTransactionalFile();
+        raw.setLength(raw.length() - 1);
+
+        CacheMap<String> cache = new CacheMap<>();
+        new Journal<>(cache, fileSystem, options).initJournal();
+        cache.assertEquals(new String[][]{{"k1", "m1"}});
+    }
+
+    private double writesPerOperation(CacheOptions options) throws Exception {
+        fileSystem.clear();
+        Journal<String> journal = new Journal<>(new CacheMap<String>(), fileSystem, options);
+        journal.initJournal();
+        CountingInMemoryFile file = lastFile;
+        file.writes = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            journal.put("k" + i, "m" + i, false);
+        }
+        journal.close();
+        return file.writes / (double) OPERATIONS;
+    }
+}
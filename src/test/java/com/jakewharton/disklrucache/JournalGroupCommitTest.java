@@ -0,0 +1,141 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JournalGroupCommitTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 200;
+
+    private final AtomicInteger commits = new AtomicInteger();
+    private InMemoryFileSystem fileSystem;
+    private CacheMap<String> cache;
+    private Journal<String> journal;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem() {
+            @Override
+            protected TransactionalInMemoryFile createTransactionalInMemoryFile() {
+                return new TransactionalInMemoryFile() {
+                    @Override
+                    public void commit() throws IOException {
+                        commits.incrementAndGet();
+                        super.commit();
+                    }
+                };
+            }
+        };
+        cache = new CacheMap<>();
+        journal = new Journal<>(cache, fileSystem,
+                new CacheOptions().setGroupCommit(2, TimeUnit.MILLISECONDS, 64));
+        journal.initJournal();
+        commits.set(0);
+    }
+
+    @Test
+    public void testConcurrentPutsShareCommits() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS; i++) {
+                            String key = "k" + thread + "_" + i;
+                            synchronized (cache) {
+                                cache.map.put(key, "m" + i);
+                                journal.put(key, "m" + i, false);
+                            }
+                            journal.awaitCommit();
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("Unexpected errors: " + errors, errors.isEmpty());
+        assertTrue("Lines should share commits, but there were " + commits.get(),
+                commits.get() < THREADS * OPERATIONS);
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        assertEquals("Not all lines were committed", THREADS * OPERATIONS, restored.map.size());
+    }
+
+    @Test
+    public void testLinesAreCommittedOnlyByAwait() throws Exception {
+        journal.put("k", "m", false);
+        assertEquals("Line shouldn't be committed yet", 0, commits.get());
+
+        journal.awaitCommit();
+        assertEquals("Line should be committed exactly once", 1, commits.get());
+
+        journal.awaitCommit();
+        assertEquals("Nothing to commit", 1, commits.get());
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        restored.assertEquals(new String[][]{{"k", "m"}});
+    }
+
+    @Test
+    public void testCloseCommitsPendingLines() throws Exception {
+        journal.put("k1", "m1", false);
+        journal.put("k2", "m2", false);
+        journal.close();
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        restored.assertEquals(new String[][]{{"k1", "m1"}, {"k2", "m2"}});
+    }
+
+    @Test
+    public void testCompactionDropsPendingLines() throws Exception {
+        cache.map.put("a", "m1");
+        journal.put("a", "m1", false);
+        for (int i = 0; i <= Journal.MAX_REDUNDANT_OPERATION_COUNT; i++) {
+            cache.map.put("k", "m" + i);
+            journal.put("k", "m" + i, true);
+        }
+        assertEquals("Journal should be compacted", 0, journal.getRedundantOperations());
+        journal.awaitCommit();
+
+        cache.map.put("b", "m2");
+        journal.put("b", "m2", false);
+        journal.awaitCommit();
+
+        CacheMap<String> restored = new CacheMap<>();
+        new Journal<>(restored, fileSystem).initJournal();
+        restored.assertEquals(new String[][]{
+                {"a", "m1"},
+                {"k", "m" + Journal.MAX_REDUNDANT_OPERATION_COUNT},
+                {"b", "m2"},
+        });
+    }
+}
@@ -0,0 +1,147 @@
+package com.jakewharton.disklrucache;
+
+import com.esotericsoftware.kryo.io.Input;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JournalRecordFormatTest {
+
+    // written by the version 1 journal: puts of a, b, c, access of a, remove of b, put of c, then after
+    // reopening put of d and access of a
+    private static final byte[] LEGACY_JOURNAL = bytes(
+            0x01, 0x02, 0x6d, 0x61, 0x67, 0x69, 0xe3, 0x76, 0x65, 0x72, 0x73, 0x69, 0x6f, 0xee, 0x14, 0x01,
+            0x44, 0x69, 0x73, 0x6b, 0x4c, 0x72, 0x75, 0x43, 0x61, 0x63, 0x68, 0x65, 0x4a, 0x6f, 0x75, 0x72,
+            0x6e, 0x61, 0xec, 0x00, 0x01, 0x02, 0x00, 0x0f, 0x02, 0x66, 0x69, 0x6c, 0x65, 0x4e, 0x61, 0x6d,
+            0xe5, 0x6d, 0x65, 0x74, 0xe1, 0x03, 0x01, 0x82, 0x61, 0x00, 0x04, 0x03, 0x01, 0x6d, 0xb1, 0x00,
+            0x0f, 0x03, 0x01, 0x82, 0x62, 0x00, 0x04, 0x03, 0x01, 0x6d, 0xb2, 0x00, 0x0f, 0x03, 0x01, 0x82,
+            0x63, 0x00, 0x04, 0x03, 0x01, 0x6d, 0xb3, 0x00, 0x10, 0x01, 0x66, 0x69, 0x6c, 0x65, 0x4e, 0x61,
+            0x6d, 0xe5, 0x01, 0x04, 0x00, 0x0e, 0x01, 0x66, 0x69, 0x6c, 0x65, 0x4e, 0x61, 0x6d, 0xe5, 0x01,
+            0x06, 0x00, 0x0f, 0x01, 0x08, 0x00, 0x04, 0x03, 0x01, 0x6d, 0xb4, 0x00, 0x13, 0x01, 0x66, 0x69,
+            0x6c, 0x65, 0x4e, 0x61, 0x6d, 0xe5, 0x01, 0x00, 0x00, 0x0f, 0x02, 0x66, 0x69, 0x6c, 0x65, 0x4e,
+            0x61, 0x6d, 0xe5, 0x6d, 0x65, 0x74, 0xe1, 0x03, 0x01, 0x82, 0x64, 0x00, 0x04, 0x03, 0x01, 0x6d,
+            0xb5, 0x00, 0x10, 0x01, 0x66, 0x69, 0x6c, 0x65, 0x4e, 0x61, 0x6d, 0xe5, 0x03, 0x01, 0x82, 0x61,
+            0x00);
+
+    private InMemoryFileSystem fileSystem;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+    }
+
+    @Test
+    public void testMigrateLegacyJournal() throws Exception {
+        TransactionalVirtualFile file = fileSystem.get(Journal.JOURNAL_FILE_NAME).createTransactionalFile();
+        file.createEmpty();
+        file.getOutputStream().write(LEGACY_JOURNAL);
+        file.commit();
+        file.close();
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        String[][] expected = {{"c", "m4"}, {"d", "m5"}, {"a", "m1"}};
+        cache.assertEquals(expected);
+        assertEquals("Journal should be converted", Journal.MagicLine.VERSION, readVersion());
+
+        journal.put("e", "m6", false);
+        journal.close();
+
+        cache = new CacheMap<>();
+        new Journal<>(cache, fileSystem).initJournal();
+        cache.assertEquals(new String[][]{{"c", "m4"}, {"d", "m5"}, {"a", "m1"}, {"e", "m6"}});
+    }
+
+    @Test
+    public void testMetaCodec() throws Exception {
+        CacheOptions options = new CacheOptions().setMetaCodec(new SimpleMetaCodec());
+        LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+        Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem, options);
+        journal.initJournal();
+        long appended = journal.getStats().getAppendedBytes();
+        journal.put("k1", new SimpleMeta(5), false);
+        assertEquals("Length, opcode, key length, key, weight and checksum", 10, journal.getStats().getAppendedBytes() - appended);
+        journal.put("k2", new SimpleMeta(300), false);
+        journal.remove("k1");
+        journal.close();
+
+        cache = new LinkedMapLruCache<>();
+        new Journal<>(cache, fileSystem, options).initJournal();
+        assertEquals(1, cache.getEntitiesCount());
+        assertEquals(300, cache.accessInternal("k2").weight());
+    }
+
+    @Test
+    public void testDefaultCodec() throws Exception {
+        LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+        Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        long appended = journal.getStats().getAppendedBytes();
+        journal.put("k1", new SimpleMeta(5), false);
+        assertEquals("Length, opcode, key length, key, meta type, weight and checksum", 11,
+                journal.getStats().getAppendedBytes() - appended);
+        journal.close();
+
+        cache = new LinkedMapLruCache<>();
+        new Journal<>(cache, fileSystem).initJournal();
+        assertEquals(5, cache.accessInternal("k1").weight());
+    }
+
+    @Test
+    public void testMetaCodecMismatch() throws Exception {
+        LinkedMapLruCache<SimpleMeta> cache = new LinkedMapLruCache<>();
+        Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        journal.put("k1", new SimpleMeta(5), false);
+        journal.close();
+
+        // the records of the other codec would be decoded as garbage
+        CacheOptions options = new CacheOptions().setMetaCodec(new SimpleMetaCodec());
+        cache = new LinkedMapLruCache<>();
+        journal = new Journal<>(cache, fileSystem, options);
+        journal.initJournal();
+        assertEquals("Journal should be dropped", 0, cache.getEntitiesCount());
+        journal.put("k2", new SimpleMeta(7), false);
+        journal.close();
+
+        cache = new LinkedMapLruCache<>();
+        new Journal<>(cache, fileSystem, options).initJournal();
+        assertEquals(1, cache.getEntitiesCount());
+        assertEquals(7, cache.accessInternal("k2").weight());
+    }
+
+    @Test
+    public void testUnicodeKeys() throws Exception {
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        journal.put("ключ", "m1", false);
+        journal.put("鍵", "m2", false);
+        journal.access("ключ", false);
+        journal.close();
+
+        cache = new CacheMap<>();
+        new Journal<>(cache, fileSystem).initJournal();
+        cache.assertEquals(new String[][]{{"鍵", "m2"}, {"ключ", "m1"}});
+    }
+
+    private int readVersion() throws Exception {
+        TransactionalVirtualFile file = fileSystem.get(Journal.JOURNAL_FILE_NAME).createTransactionalFile();
+        try {
+            file.init();
+            return Journal.createKryo().readObject(new Input(file.getInputStream()), Journal.MagicLine.class).version;
+        } finally {
+            file.close();
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,197 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class JournalSalvageTest {
+
+    private InMemoryFileSystem fileSystem;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        Journal<String> journal = new Journal<>(new CacheMap<String>(), fileSystem);
+        journal.initJournal();
+        for (int i = 1; i <= 5; i++) {
+            journal.put("key" + i, "m" + i, false);
+        }
+        journal.close();
+    }
+
+    @Test
+    public void testSkipCorruptedRecord() throws Exception {
+        byte[] bytes = readJournal();
+        bytes[indexOf(bytes, "key3") + 3] = 'X';
+        writeJournal(bytes);
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key4", "m4"}, {"key5", "m5"}});
+        assertTrue(journal.isSalvaged());
+        assertEquals(1, journal.getStats().getDroppedRecords());
+        assertTrue(journal.getStats().getDroppedBytes() > 0);
+        journal.close();
+
+        assertRewritten(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key4", "m4"}, {"key5", "m5"}});
+    }
+
+    @Test
+    public void testResyncAfterBrokenFrame() throws Exception {
+        byte[] bytes = readJournal();
+        // the length of the record precedes its opcode and the key length
+        bytes[indexOf(bytes, "key4") - 3] = 0x7F;
+        writeJournal(bytes);
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key3", "m3"}, {"key5", "m5"}});
+        assertEquals(1, journal.getStats().getDroppedRecords());
+        journal.close();
+
+        assertRewritten(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key3", "m3"}, {"key5", "m5"}});
+    }
+
+    @Test
+    public void testStopAtDamagedTail() throws Exception {
+        byte[] bytes = readJournal();
+        Arrays.fill(bytes, indexOf(bytes, "key4") - 3, bytes.length, (byte) 0);
+        writeJournal(bytes);
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key3", "m3"}});
+        assertTrue(journal.isSalvaged());
+        assertTrue(journal.getStats().getDroppedBytes() > 0);
+        journal.close();
+
+        assertRewritten(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key3", "m3"}});
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Exception {
+        byte[] bytes = readJournal();
+        writeJournal(Arrays.copyOf(bytes, indexOf(bytes, "key5") + 2));
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key3", "m3"}, {"key4", "m4"}});
+        journal.put("key6", "m6", false);
+        journal.close();
+
+        assertRewritten(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key3", "m3"}, {"key4", "m4"},
+                {"key6", "m6"}});
+    }
+
+    @Test
+    public void testAtomicBatchDroppedWhole() throws Exception {
+        writeBatch(true);
+        byte[] bytes = readJournal();
+        bytes[indexOf(bytes, "key3") + 3] = 'X';
+        writeJournal(bytes);
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"key1", "m1"}, {"key5", "m5"}});
+        assertEquals(1, journal.getStats().getDroppedRecords());
+        journal.close();
+    }
+
+    @Test
+    public void testPlainBatchDroppedByRecord() throws Exception {
+        writeBatch(false);
+        byte[] bytes = readJournal();
+        bytes[indexOf(bytes, "key3") + 3] = 'X';
+        writeJournal(bytes);
+
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(new String[][]{{"key1", "m1"}, {"key2", "m2"}, {"key4", "m4"}, {"key5", "m5"}});
+        journal.close();
+    }
+
+    @Test
+    public void testIntactJournal() throws Exception {
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        assertFalse(journal.isSalvaged());
+        assertEquals(5, cache.getEntitiesCount());
+        journal.close();
+    }
+
+    // the salvaged journal is rewritten, so the next replay drops nothing
+    private void assertRewritten(String[][] expected) throws Exception {
+        CacheMap<String> cache = new CacheMap<>();
+        Journal<String> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        cache.assertEquals(expected);
+        assertFalse(journal.isSalvaged());
+        assertEquals(0, journal.getStats().getDroppedBytes());
+        journal.close();
+    }
+
+    // key2, key3 and key4 are put in a batch
+    private void writeBatch(boolean atomic) throws Exception {
+        fileSystem = new InMemoryFileSystem();
+        Journal<String> journal = new Journal<>(new CacheMap<String>(), fileSystem);
+        journal.initJournal();
+        journal.put("key1", "m1", false);
+        journal.beginBatch(atomic);
+        for (int i = 2; i <= 4; i++) {
+            journal.put("key" + i, "m" + i, false);
+        }
+        journal.commitBatch();
+        journal.put("key5", "m5", false);
+        journal.close();
+    }
+
+    private byte[] readJournal() throws Exception {
+        TransactionalVirtualFile file = fileSystem.get(Journal.JOURNAL_FILE_NAME).createTransactionalFile();
+        try {
+            file.init();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            InputStream input = file.getInputStream();
+            int b;
+            while ((b = input.read()) != -1) {
+                bytes.write(b);
+            }
+            return bytes.toByteArray();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeJournal(byte[] bytes) throws Exception {
+        TransactionalVirtualFile file = fileSystem.get(Journal.JOURNAL_FILE_NAME).createTransactionalFile();
+        try {
+            file.createEmpty();
+            file.getOutputStream().write(bytes);
+            file.commit();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, String key) {
+        byte[] pattern = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+        throw new AssertionError("No " + key + " in the journal");
+    }
+}
@@ -0,0 +1,76 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MemoryTierTest {
+
+    @Test
+    public void testAdmitsRepeatedReads() throws Exception {
+        MemoryTier tier = new MemoryTier(100, 10, false);
+        assertNull(tier.get("a"));
+        tier.put("a", content(5), tier.generation());
+        assertNull("Read once", tier.get("a"));
+        tier.put("a", content(5), tier.generation());
+        assertEquals(5, tier.get("a").remaining());
+        assertEquals(5, tier.getBytes());
+    }
+
+    @Test
+    public void testSizeLimits() throws Exception {
+        MemoryTier tier = new MemoryTier(20, 10, true);
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            tier.get(key);
+            tier.get(key);
+        }
+        tier.put("a", content(11), tier.generation());
+        assertEquals("Too big entry", 0, tier.getBytes());
+        tier.put("a", content(10), tier.generation());
+        tier.put("b", content(10), tier.generation());
+        tier.get("a");
+        tier.put("c", content(10), tier.generation());
+        assertEquals(20, tier.getBytes());
+        assertNull("Least recently read", tier.get("b"));
+        assertTrue(tier.get("a").isDirect());
+        assertNotNull(tier.get("c"));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        MemoryTier tier = new MemoryTier(100, 10, false);
+        tier.get("a");
+        tier.get("a");
+        tier.put("a", content(5), tier.generation());
+        tier.invalidate("a");
+        assertNull(tier.get("a"));
+        assertEquals(0, tier.getBytes());
+
+        long generation = tier.generation();
+        tier.invalidate("b");
+        tier.put("a", content(5), generation);
+        assertNull("Read before an invalidation", tier.get("a"));
+
+        tier.put("a", content(5), tier.generation());
+        tier.clear();
+        assertNull(tier.get("a"));
+    }
+
+    @Test
+    public void testReadOnlyViews() throws Exception {
+        MemoryTier tier = new MemoryTier(100, 10, false);
+        tier.get("a");
+        tier.get("a");
+        tier.put("a", content(5), tier.generation());
+        ByteBuffer first = tier.get("a");
+        first.get();
+        assertTrue(first.isReadOnly());
+        assertEquals("Views have own positions", 5, tier.get("a").remaining());
+    }
+
+    private static ByteBuffer content(int size) {
+        return ByteBuffer.wrap(new byte[size]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReadBufferTest {
+
+    @Test
+    public void testDrainInOrder() throws Exception {
+        ReadBuffer buffer = new ReadBuffer(1);
+        assertFalse(buffer.offer("a"));
+        assertFalse(buffer.offer("b"));
+        assertFalse(buffer.offer("a"));
+
+        List<String> drained = new ArrayList<>();
+        buffer.drainTo(drained);
+        assertEquals(Arrays.asList("a", "b", "a"), drained);
+
+        drained.clear();
+        buffer.drainTo(drained);
+        assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void testFullStripeIsLossy() throws Exception {
+        ReadBuffer buffer = new ReadBuffer(1);
+        for (int i = 0; i < ReadBuffer.STRIPE_SIZE - 1; i++) {
+            assertFalse(buffer.offer("k" + i));
+        }
+        assertTrue(buffer.offer("last"));
+        assertTrue(buffer.offer("lost"));
+
+        List<String> drained = new ArrayList<>();
+        buffer.drainTo(drained);
+        assertEquals(ReadBuffer.STRIPE_SIZE, drained.size());
+        assertEquals("last", drained.get(ReadBuffer.STRIPE_SIZE - 1));
+
+        assertFalse(buffer.offer("again"));
+    }
+
+    @Test
+    public void testConcurrentOffers() throws Exception {
+        final ReadBuffer buffer = new ReadBuffer(4);
+        final List<String> drained = new ArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String key = "t" + t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        if (buffer.offer(key)) {
+                            synchronized (drained) {
+                                buffer.drainTo(drained);
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        buffer.drainTo(drained);
+
+        assertFalse(drained.isEmpty());
+        for (String key : drained) {
+            assertNotNull(key);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TinyLfuCacheTest {
+
+    private TinyLfuCache<SimpleMeta> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new TinyLfuCache<>(new LinkedMapLruCache<SimpleMeta>(), 100, 0.2);
+        cache.setMaxWeight(10);
+        for (String key : Arrays.asList("a", "b", "c", "d", "e")) {
+            cache.putMetaInternal(key, new SimpleMeta(2));
+        }
+    }
+
+    @Test
+    public void testWindowIsEvictedLast() throws Exception {
+        // window holds 2 units, that is only "e"
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), evictAll());
+        assertEquals(0, cache.getEntitiesCount());
+    }
+
+    @Test
+    public void testAccessOrderOutsideWindow() throws Exception {
+        cache.accessInternal("a");
+
+        assertEquals(Arrays.asList("b", "c", "d", "a", "e"), evictAll());
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        assertTrue("Free space should be always admitted", cache.admit("x", 0));
+        assertFalse("Equal frequency shouldn't be admitted", cache.admit("x", 2));
+
+        cache.accessInternal("x");
+        assertTrue(cache.admit("x", 2));
+
+        cache.accessInternal("a");
+        cache.accessInternal("a");
+        assertTrue(cache.admit("x", 6));
+        assertFalse("One of the victims is used more often", cache.admit("x", 8));
+    }
+
+    @Test
+    public void testAdmissionSkipsWindow() throws Exception {
+        cache.accessInternal("x");
+        cache.accessInternal("x");
+        cache.accessInternal("e");
+        cache.accessInternal("e");
+        cache.accessInternal("e");
+
+        assertTrue(cache.admit("x", 8));
+    }
+
+    @Test
+    public void testAdmissionUsesEvictionOrder() throws Exception {
+        ClockCache<SimpleMeta> clock = new ClockCache<>();
+        cache = new TinyLfuCache<>(clock, 100, 0.2);
+        cache.setMaxWeight(10);
+        for (String key : Arrays.asList("a", "b", "c", "d", "e")) {
+            cache.putMetaInternal(key, new SimpleMeta(2));
+        }
+        // "a" is the first entry, but its mark gives it a second chance, so "b" is the victim
+        cache.accessInternal("a");
+        cache.accessInternal("a");
+        cache.accessInternal("x");
+
+        assertTrue(cache.admit("x", 2));
+        assertEquals("Looking at the victims shouldn't evict them", 5, cache.getEntitiesCount());
+        assertEquals("b", cache.getEvictionIterator().next().getKey());
+    }
+
+    @Test
+    public void testRemoveFromWindow() throws Exception {
+        cache.removeInternal("e");
+        cache.putMetaInternal("f", new SimpleMeta(1));
+        cache.putMetaInternal("g", new SimpleMeta(1));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "f", "g"), evictAll());
+    }
+
+    @Test
+    public void testReplayRestoresFrequencies() throws Exception {
+        InMemoryFileSystem fileSystem = new InMemoryFileSystem();
+        Journal<SimpleMeta> journal = new Journal<>(cache, fileSystem);
+        journal.initJournal();
+        journal.put("x", new SimpleMeta(1), false);
+        journal.access("x", false);
+        journal.reject("y");
+        journal.reject("y");
+        journal.close();
+
+        TinyLfuCache<SimpleMeta> restored =
+                new TinyLfuCache<>(new LinkedMapLruCache<SimpleMeta>(), 100, 0.2);
+        new Journal<>(restored, fileSystem).initJournal();
+
+        assertEquals(2, restored.frequency("x"));
+        assertEquals(2, restored.frequency("y"));
+        assertFalse(restored.containsInternal("y"));
+    }
+
+    private List<String> evictAll() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, SimpleMeta>> iterator = cache.getEvictionIterator();
+        while (iterator.hasNext()) {
+            evicted.add(iterator.next().getKey());
+            iterator.remove();
+        }
+        return evicted;
+    }
+}
@@ -0,0 +1,47 @@
+package com.jakewharton.disklrucache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeightBalancerTest {
+
+    @Test
+    public void testEqual() throws Exception {
+        long[] budgets = new long[3];
+        WeightBalancer.equal().balance(100, new long[]{50, 0, 0}, budgets);
+
+        assertArrayEquals(new long[]{34, 33, 33}, budgets);
+    }
+
+    @Test
+    public void testByDemand() throws Exception {
+        long[] budgets = new long[4];
+        WeightBalancer.byDemand(0.5).balance(1000, new long[]{300, 100, 0, 0}, budgets);
+
+        assertArrayEquals(new long[]{500, 250, 125, 125}, budgets);
+    }
+
+    @Test
+    public void testByDemandKeepsTotal() throws Exception {
+        long[] budgets = new long[3];
+        WeightBalancer.byDemand(0.1).balance(1000, new long[]{7, 5, 3}, budgets);
+
+        assertEquals(1000, budgets[0] + budgets[1] + budgets[2]);
+        assertTrue(budgets[0] > budgets[1]);
+        assertTrue(budgets[1] > budgets[2]);
+    }
+
+    @Test
+    public void testByDemandWithoutDemand() throws Exception {
+        long[] budgets = new long[2];
+        WeightBalancer.byDemand(0.5).balance(100, new long[2], budgets);
+
+        assertArrayEquals(new long[]{50, 50}, budgets);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongShare() throws Exception {
+        WeightBalancer.byDemand(2);
+    }
+}